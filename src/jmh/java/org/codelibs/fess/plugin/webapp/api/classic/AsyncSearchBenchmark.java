@@ -0,0 +1,103 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.classic;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.codelibs.fess.plugin.webapp.api.classic.BenchmarkFixtures.AsyncRequest;
+import org.codelibs.fess.plugin.webapp.api.classic.BenchmarkFixtures.CountingResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark for the throughput of async search requests on the platform thread pool and on virtual threads.
+ * Each invocation starts a burst of concurrent requests against a stubbed SearchHelper that blocks for a fixed latency,
+ * as a search engine round trip would, and waits until all of them are completed.
+ * The platform pool has its default size, and virtual threads are bounded by the default concurrency limit.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AsyncSearchBenchmark {
+
+    private static final int REQUESTS = 1000;
+
+    @Param({ "false", "true" })
+    public boolean virtualThreads;
+
+    @Param({ "10" })
+    public long latency;
+
+    private JsonApiManager manager;
+
+    private AsyncProcessor processor;
+
+    @Setup
+    public void setup() {
+        BenchmarkFixtures.initialize();
+        BenchmarkFixtures.prepareSearchResult(10, false);
+        BenchmarkFixtures.setSearchLatency(latency);
+        BenchmarkFixtures.SYSTEM_PROPERTIES.put("api.classic.async.enabled", "true");
+        BenchmarkFixtures.SYSTEM_PROPERTIES.put("api.classic.async.virtual_threads", Boolean.toString(virtualThreads));
+        manager = new JsonApiManager();
+        processor = new AsyncProcessor();
+    }
+
+    @TearDown
+    public void tearDown() {
+        processor.destroy();
+        manager.destroy();
+        BenchmarkFixtures.setSearchLatency(0);
+        BenchmarkFixtures.SYSTEM_PROPERTIES.remove("api.classic.async.enabled");
+        BenchmarkFixtures.SYSTEM_PROPERTIES.remove("api.classic.async.virtual_threads");
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(REQUESTS)
+    public long processSearchRequests() throws InterruptedException {
+        final CountDownLatch completed = new CountDownLatch(REQUESTS);
+        final CountingResponse[] responses = new CountingResponse[REQUESTS];
+        for (int i = 0; i < REQUESTS; i++) {
+            final AsyncRequest request = new AsyncRequest("fess", 10, completed);
+            responses[i] = new CountingResponse(request);
+            processor.start("search", request, responses[i], (req, res) -> manager.processSearchRequest(req, res, null),
+                    manager::writeAsyncTimeoutResponse, (req, res) -> manager.writeRejectedResponse(res), null);
+        }
+        if (!completed.await(1, TimeUnit.MINUTES)) {
+            throw new IllegalStateException("The requests did not complete.");
+        }
+        long bytes = 0;
+        for (final CountingResponse response : responses) {
+            bytes += response.takeByteCount();
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,527 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.classic;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+import org.codelibs.core.lang.StringUtil;
+import org.codelibs.core.misc.Pair;
+import org.codelibs.fess.Constants;
+import org.codelibs.fess.entity.SearchRenderData;
+import org.codelibs.fess.entity.SearchRequestParams;
+import org.codelibs.fess.entity.SearchRequestParams.SearchRequestType;
+import org.codelibs.fess.helper.RelatedContentHelper;
+import org.codelibs.fess.helper.RelatedQueryHelper;
+import org.codelibs.fess.helper.RoleQueryHelper;
+import org.codelibs.fess.helper.SearchHelper;
+import org.codelibs.fess.helper.SystemHelper;
+import org.codelibs.fess.helper.VirtualHostHelper;
+import org.codelibs.fess.mylasta.action.FessUserBean;
+import org.codelibs.fess.mylasta.direction.FessConfig;
+import org.codelibs.fess.query.QueryFieldConfig;
+import org.codelibs.fess.suggest.entity.SuggestItem;
+import org.codelibs.fess.suggest.request.suggest.SuggestResponse;
+import org.codelibs.fess.util.ComponentUtil;
+import org.codelibs.fess.util.FacetResponse;
+import org.dbflute.optional.OptionalThing;
+import org.dbflute.utflute.mocklet.MockletHttpServletRequestImpl;
+import org.dbflute.utflute.mocklet.MockletHttpServletResponseImpl;
+import org.dbflute.utflute.mocklet.MockletServletContextImpl;
+import org.lastaflute.di.core.external.GenericExternalContext;
+import org.lastaflute.di.core.factory.SingletonLaContainerFactory;
+import org.lastaflute.di.core.meta.impl.LaContainerImpl;
+import org.opensearch.search.aggregations.Aggregation;
+import org.opensearch.search.aggregations.Aggregations;
+import org.opensearch.search.aggregations.bucket.filter.Filter;
+import org.opensearch.search.aggregations.bucket.terms.Terms;
+
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletResponse;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Fixed fixtures and stubbed components for the API benchmarks.
+ * A bare Lasta Di container holding the stubbed components is installed in place of the Fess
+ * application, and the search backend is replaced by a SearchHelper returning pre-built hits.
+ */
+public final class BenchmarkFixtures {
+
+    /** The fields returned by the API, as configured by default in fess_config.properties. */
+    public static final String[] API_RESPONSE_FIELDS = { "id", "doc_id", "boost", "content_length", "host", "site", "last_modified",
+            "timestamp", "mimetype", "filetype", "filename", "created", "title", "digest", "url", "thumbnail", "click_count", "favorite_count",
+            "config_id", "lang", "has_cache", "content_title", "content_description", "url_link", "site_path" };
+
+    /**
+     * Output stream that discards everything written to it.
+     */
+    public static final OutputStream NULL_OUTPUT_STREAM = new OutputStream() {
+        @Override
+        public void write(final int b) throws IOException {
+            // nothing
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            // nothing
+        }
+    };
+
+    /** The Fess system properties seen by the plugin, e.g. to enable the response caches. */
+    public static final Map<String, String> SYSTEM_PROPERTIES = new ConcurrentHashMap<>();
+
+    private static final ThreadLocal<HttpServletResponse> responses = new ThreadLocal<>();
+
+    private static final StubSearchHelper searchHelper = new StubSearchHelper();
+
+    private static boolean initialized;
+
+    private BenchmarkFixtures() {
+        // nothing
+    }
+
+    /**
+     * Installs the container, the configuration and the stubbed components once per JVM.
+     * The components are registered in the container itself, because ComponentUtil falls back to its
+     * own map only after a lookup has failed with an exception.
+     */
+    public static synchronized void initialize() {
+        if (initialized) {
+            return;
+        }
+        final LaContainerImpl container = new LaContainerImpl();
+        SingletonLaContainerFactory.setContainer(container);
+        SingletonLaContainerFactory.setExternalContext(new GenericExternalContext() {
+            @Override
+            public Object getResponse() {
+                return responses.get();
+            }
+
+            @Override
+            public void setResponse(final Object response) {
+                responses.set((HttpServletResponse) response);
+            }
+        });
+        ComponentUtil.setFessConfig(new FessConfig.SimpleImpl() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public boolean isApiJsonpEnabled() {
+                return true;
+            }
+
+            @Override
+            public List<Pair<String, String>> getApiJsonResponseHeaderList() {
+                return List.of(new Pair<>("Cache-Control", "no-cache"));
+            }
+
+            @Override
+            public String getIndexFieldUrl() {
+                return "url";
+            }
+
+            @Override
+            public String getIndexFieldDocId() {
+                return "doc_id";
+            }
+
+            @Override
+            public Integer getPagingSearchPageStartAsInteger() {
+                return 0;
+            }
+
+            @Override
+            public Integer getPagingSearchPageSizeAsInteger() {
+                return 20;
+            }
+
+            @Override
+            public Integer getPagingSearchPageMaxSizeAsInteger() {
+                return 1000;
+            }
+
+            @Override
+            public String getSystemProperty(final String key) {
+                return SYSTEM_PROPERTIES.get(key);
+            }
+
+            @Override
+            public String getSystemProperty(final String key, final String defaultValue) {
+                return SYSTEM_PROPERTIES.getOrDefault(key, defaultValue);
+            }
+        });
+        container.register(new SystemHelper() {
+            @Override
+            public String getProductVersion() {
+                return "15.7.0";
+            }
+        }, "systemHelper");
+        final QueryFieldConfig queryFieldConfig = new QueryFieldConfig();
+        queryFieldConfig.setApiResponseFields(API_RESPONSE_FIELDS);
+        container.register(queryFieldConfig, "queryFieldConfig");
+        container.register(new RelatedQueryHelper() {
+            @Override
+            public String[] getRelatedQueries(final String query) {
+                return new String[] { query + " tutorial", query + " download", query + " 設定" };
+            }
+        }, "relatedQueryHelper");
+        container.register(new RelatedContentHelper() {
+            @Override
+            public String[] getRelatedContents(final String query) {
+                return new String[] { "<a href=\"https://fess.codelibs.org/\">" + query + "</a>" };
+            }
+        }, "relatedContentHelper");
+        container.register(searchHelper, "searchHelper");
+        container.register(new RoleQueryHelper() {
+            @Override
+            public Set<String> build(final SearchRequestType searchRequestType) {
+                return Set.of("Rguest");
+            }
+        }, "roleQueryHelper");
+        container.register(new VirtualHostHelper() {
+            @Override
+            public String getVirtualHostKey() {
+                return StringUtil.EMPTY;
+            }
+        }, "virtualHostHelper");
+        initialized = true;
+    }
+
+    /**
+     * Sets the result returned by the stubbed SearchHelper.
+     *
+     * @param hits the number of hits per search
+     * @param facets whether facet results are returned
+     */
+    public static void prepareSearchResult(final int hits, final boolean facets) {
+        searchHelper.documents = createDocuments(hits);
+        searchHelper.facetResponse = facets ? createFacetResponse() : null;
+    }
+
+    /**
+     * Sets the time the stubbed SearchHelper blocks in each search, to simulate the search engine round trip.
+     *
+     * @param millis the latency in milliseconds, or 0 to return immediately
+     */
+    public static void setSearchLatency(final long millis) {
+        searchHelper.latencyMillis = millis;
+    }
+
+    /**
+     * Creates realistic document maps as returned by the search engine.
+     *
+     * @param size the number of documents
+     * @return the documents
+     */
+    public static List<Map<String, Object>> createDocuments(final int size) {
+        final Random random = new Random(size);
+        final List<Map<String, Object>> documents = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            final Map<String, Object> doc = new LinkedHashMap<>();
+            final String docId = Long.toHexString(random.nextLong());
+            doc.put("doc_id", docId);
+            doc.put("boost", 1.0f + random.nextInt(10) / 10.0f);
+            doc.put("content_length", 1000L + random.nextInt(100000));
+            doc.put("host", "fess.codelibs.org");
+            doc.put("site", "fess.codelibs.org/ja/15.7/user/search-" + i + ".html");
+            doc.put("last_modified", new Date(1700000000000L + random.nextInt(1000000000)));
+            doc.put("timestamp", new Date(1710000000000L + random.nextInt(1000000000)));
+            doc.put("mimetype", "text/html");
+            doc.put("filetype", "html");
+            doc.put("filename", "search-" + i + ".html");
+            doc.put("created", new Date(1690000000000L + random.nextInt(1000000000)));
+            doc.put("title", "検索の使い方 " + i + " | Fess \"Enterprise Search Server\"");
+            doc.put("content_title", "検索の使い方 " + i + " | <strong>Fess</strong>");
+            doc.put("content_description", "...全文検索サーバー <strong>Fess</strong> は、Apache ライセンスで提供され、"
+                    + "Java 実行環境があればどの OS でも実行可能です。\nThe <strong>Fess</strong> server is easy to deploy...");
+            doc.put("digest", "Fess is very powerful and easily deployable Enterprise Search Server. 全文検索サーバー\t" + i);
+            doc.put("url", "https://fess.codelibs.org/ja/15.7/user/search-" + i + ".html?lang=ja&q=%E6%A4%9C%E7%B4%A2");
+            doc.put("url_link", "https://fess.codelibs.org/ja/15.7/user/search-" + i + ".html?lang=ja&q=%E6%A4%9C%E7%B4%A2");
+            doc.put("click_count", (long) random.nextInt(100));
+            doc.put("favorite_count", (long) random.nextInt(10));
+            doc.put("config_id", "WAbCdEfGhIjKlMnOp");
+            doc.put("lang", "ja");
+            doc.put("has_cache", "true");
+            doc.put("label", List.of("docs", "user"));
+            doc.put("role", new String[] { "Rguest", "Radmin" });
+            doc.put("id", docId + ";" + i);
+            doc.put("score", random.nextFloat() * 10);
+            documents.add(doc);
+        }
+        return documents;
+    }
+
+    /**
+     * Creates a facet response with two fields of ten values and three queries.
+     *
+     * @return the facet response
+     */
+    public static FacetResponse createFacetResponse() {
+        final List<Aggregation> aggregations = new ArrayList<>();
+        aggregations.add(createTerms("label", 10));
+        aggregations.add(createTerms("filetype", 10));
+        aggregations.add(createFilter("timestamp:[now/d-1d TO *]", 12));
+        aggregations.add(createFilter("timestamp:[now/d-7d TO *]", 345));
+        aggregations.add(createFilter("content_length:[0 TO 10000]", 6789));
+        return new FacetResponse(new Aggregations(aggregations));
+    }
+
+    /**
+     * Creates a suggest response with the specified number of items.
+     *
+     * @param size the number of items
+     * @return the suggest response
+     */
+    public static SuggestResponse createSuggestResponse(final int size) {
+        final List<SuggestItem> items = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            items.add(new SuggestItem(new String[] { "fess", "検索" + i }, new String[][] { { "fess" }, { "kensaku" } },
+                    new String[] { "content" }, 10L + i, 5L, 1.0f, new String[] { "docs", "user\"guide" }, new String[] { "Rguest" },
+                    new String[] { "ja" }, SuggestItem.Kind.DOCUMENT));
+        }
+        return new SuggestResponse("fess_suggest", 3, List.of("fess"), size * 10L, items);
+    }
+
+    /**
+     * Creates a search request for the JSON API.
+     *
+     * @param query the query
+     * @param size the page size
+     * @return the request
+     */
+    public static MockletHttpServletRequestImpl createRequest(final String query, final int size) {
+        final MockletHttpServletRequestImpl request = new MockletHttpServletRequestImpl(new MockletServletContextImpl("/fess"), "/json");
+        request.setParameter("q", query);
+        request.setParameter("num", Integer.toString(size));
+        request.setParameter("callback", "jQuery3510_1700000000000");
+        return request;
+    }
+
+    /**
+     * Creates a response that discards the body, and binds the request and response to the current thread.
+     *
+     * @param request the request
+     * @return the response
+     */
+    public static CountingResponse bind(final HttpServletRequest request) {
+        final CountingResponse response = new CountingResponse(request);
+        SingletonLaContainerFactory.getExternalContext().setRequest(request);
+        SingletonLaContainerFactory.getExternalContext().setResponse(response);
+        return response;
+    }
+
+    private static Terms createTerms(final String name, final int size) {
+        final List<Terms.Bucket> buckets = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            final String key = name + "-" + i;
+            final long count = 1000L - i * 10;
+            buckets.add((Terms.Bucket) Proxy.newProxyInstance(Terms.class.getClassLoader(), new Class<?>[] { Terms.Bucket.class },
+                    (proxy, method, args) -> switch (method.getName()) {
+                    case "getKeyAsString" -> key;
+                    case "getDocCount" -> count;
+                    default -> throw new UnsupportedOperationException(method.getName());
+                    }));
+        }
+        final String aggName = Constants.FACET_FIELD_PREFIX + encode(name);
+        return (Terms) Proxy.newProxyInstance(Terms.class.getClassLoader(), new Class<?>[] { Terms.class },
+                (proxy, method, args) -> switch (method.getName()) {
+                case "getName" -> aggName;
+                case "getBuckets" -> buckets;
+                default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    private static Filter createFilter(final String query, final long count) {
+        final String aggName = Constants.FACET_QUERY_PREFIX + encode(query);
+        return (Filter) Proxy.newProxyInstance(Filter.class.getClassLoader(), new Class<?>[] { Filter.class },
+                (proxy, method, args) -> switch (method.getName()) {
+                case "getName" -> aggName;
+                case "getDocCount" -> count;
+                default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    private static String encode(final String value) {
+        return Base64.getEncoder().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * SearchHelper that returns the prepared documents without a search engine.
+     */
+    public static class StubSearchHelper extends SearchHelper {
+
+        volatile List<Map<String, Object>> documents = List.of();
+
+        volatile FacetResponse facetResponse;
+
+        volatile long latencyMillis;
+
+        @Override
+        public void search(final SearchRequestParams params, final SearchRenderData data, final OptionalThing<FessUserBean> userBean) {
+            if (latencyMillis > 0) {
+                try {
+                    Thread.sleep(latencyMillis);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException(e);
+                }
+            }
+            final int hits = documents.size();
+            data.setDocumentItems(documents);
+            data.setFacetResponse(facetResponse);
+            data.setQueryId("b5e1a3a6d2a24b9c8f7e6d5c4b3a2918");
+            data.setAppendHighlightParams("&hq=fess");
+            data.setExecTime("0.12");
+            data.setQueryTime(37);
+            data.setPageSize(hits);
+            data.setCurrentPageNumber(1);
+            data.setAllRecordCount(12345);
+            data.setAllRecordCountRelation("eq");
+            data.setAllPageCount(12345 / Math.max(hits, 1) + 1);
+            data.setExistNextPage(true);
+            data.setExistPrevPage(false);
+            data.setCurrentStartRecordNumber(1);
+            data.setCurrentEndRecordNumber(hits);
+            data.setPageNumberList(List.of("1", "2", "3", "4", "5", "6"));
+            data.setPartialResults(false);
+            data.setSearchQuery("(content:fess OR title:fess)");
+            data.setRequestedTime(1700000000000L);
+        }
+    }
+
+    /**
+     * Request that supports servlet async mode and counts down a latch when its async processing completes.
+     */
+    public static class AsyncRequest extends MockletHttpServletRequestImpl {
+
+        private final CountDownLatch completed;
+
+        /**
+         * Constructs an AsyncRequest for the JSON API.
+         *
+         * @param query the query
+         * @param size the page size
+         * @param completed the latch counted down on completion
+         */
+        public AsyncRequest(final String query, final int size, final CountDownLatch completed) {
+            super(new MockletServletContextImpl("/fess"), "/json");
+            setParameter("q", query);
+            setParameter("num", Integer.toString(size));
+            this.completed = completed;
+        }
+
+        @Override
+        public boolean isAsyncSupported() {
+            return true;
+        }
+
+        @Override
+        public DispatcherType getDispatcherType() {
+            return DispatcherType.REQUEST;
+        }
+
+        @Override
+        public AsyncContext startAsync(final ServletRequest servletRequest, final ServletResponse servletResponse) {
+            return (AsyncContext) Proxy.newProxyInstance(AsyncContext.class.getClassLoader(), new Class<?>[] { AsyncContext.class },
+                    (proxy, method, args) -> {
+                        if ("complete".equals(method.getName())) {
+                            completed.countDown();
+                        }
+                        return null;
+                    });
+        }
+    }
+
+    /**
+     * Response that counts and discards the bytes written to its output stream.
+     */
+    public static class CountingResponse extends MockletHttpServletResponseImpl {
+
+        private final CountingOutputStream out = new CountingOutputStream();
+
+        /**
+         * Constructs a CountingResponse.
+         *
+         * @param request the request
+         */
+        public CountingResponse(final HttpServletRequest request) {
+            super(request);
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() {
+            return out;
+        }
+
+        /**
+         * Returns the number of bytes written and resets the counter.
+         *
+         * @return the number of bytes
+         */
+        public long takeByteCount() {
+            final long count = out.count;
+            out.count = 0;
+            return count;
+        }
+    }
+
+    private static class CountingOutputStream extends ServletOutputStream {
+
+        long count;
+
+        @Override
+        public void write(final int b) {
+            count++;
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) {
+            count += len;
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setWriteListener(final WriteListener writeListener) {
+            // nothing
+        }
+
+        @Override
+        public void close() {
+            // keep open for the next invocation
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.classic;
+
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.text.StringEscapeUtils;
+import org.codelibs.core.CoreLibConstants;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for escapeJson on a realistic document map and on dates.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EscapeJsonBenchmark {
+
+    private JsonApiManager manager;
+
+    private Map<String, Object> document;
+
+    private Date date;
+
+    private JsonResponseWriter writer;
+
+    @Setup
+    public void setup() {
+        manager = new JsonApiManager();
+        document = BenchmarkFixtures.createDocuments(1).get(0);
+        date = new Date(1700000000123L);
+        writer = new JsonResponseWriter(BenchmarkFixtures.NULL_OUTPUT_STREAM);
+    }
+
+    @Benchmark
+    public String escapeJsonDocument() {
+        return manager.escapeJson(document);
+    }
+
+    @Benchmark
+    public JsonResponseWriter encodeDocument() throws IOException {
+        manager.jsonEncoder.encode(document, writer);
+        writer.flushBuffer();
+        return writer;
+    }
+
+    @Benchmark
+    public String escapeJsonDate() {
+        return manager.escapeJson(date);
+    }
+
+    /**
+     * The date formatting used before IsoDateEncoder, as a baseline for escapeJsonDate.
+     *
+     * @return the quoted date
+     */
+    @Benchmark
+    public String simpleDateFormatDate() {
+        final SimpleDateFormat sdf = new SimpleDateFormat(CoreLibConstants.DATE_FORMAT_ISO_8601_EXTEND, Locale.ROOT);
+        return "\"" + StringEscapeUtils.escapeJson(sdf.format(date)) + "\"";
+    }
+}
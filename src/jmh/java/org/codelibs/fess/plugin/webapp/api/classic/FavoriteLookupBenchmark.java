@@ -0,0 +1,123 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.classic;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.codelibs.fess.mylasta.direction.FessConfig;
+import org.codelibs.fess.util.ComponentUtil;
+import org.codelibs.fess.util.DocumentUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for the lookups of favorite requests, at page sizes up to the maximum page size of the fixtures:
+ * the check that a document is in the results of a query, and the match of the favorite URLs against a page of documents.
+ * The methods with the "Scan" suffix are the previous linear scans, for comparison.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FavoriteLookupBenchmark {
+
+    @Param({ "10", "100", "1000" })
+    public int pageSize;
+
+    private JsonApiManager manager;
+
+    private FessConfig fessConfig;
+
+    private List<Map<String, Object>> docList;
+
+    private String[] docIds;
+
+    private List<String> favoriteUrlList;
+
+    private int position;
+
+    @Setup
+    public void setup() {
+        BenchmarkFixtures.initialize();
+        manager = new JsonApiManager();
+        fessConfig = ComponentUtil.getFessConfig();
+        docList = BenchmarkFixtures.createDocuments(pageSize);
+        docIds = new String[pageSize];
+        favoriteUrlList = new ArrayList<>();
+        for (int i = 0; i < pageSize; i++) {
+            final Map<String, Object> doc = docList.get(i);
+            docIds[i] = (String) doc.get("doc_id");
+            if (i % 4 == 0) {
+                favoriteUrlList.add((String) doc.get("url"));
+            }
+        }
+    }
+
+    @Benchmark
+    public boolean containsDocId() {
+        return manager.docIdSetCache.get("query", docIds).contains(nextDocId());
+    }
+
+    @Benchmark
+    public boolean containsDocIdScan() {
+        final String docId = nextDocId();
+        for (final String id : docIds) {
+            if (docId.equals(id)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Benchmark
+    public List<String> getFavoriteDocIds() {
+        return manager.getFavoriteDocIds(fessConfig, docList, favoriteUrlList);
+    }
+
+    @Benchmark
+    public List<String> getFavoriteDocIdsScan() {
+        final List<String> docIdList = new ArrayList<>(favoriteUrlList.size());
+        for (final Map<String, Object> doc : docList) {
+            final String urlObj = DocumentUtil.getValue(doc, fessConfig.getIndexFieldUrl(), String.class);
+            if (urlObj != null && favoriteUrlList.contains(urlObj)) {
+                final String docIdObj = DocumentUtil.getValue(doc, fessConfig.getIndexFieldDocId(), String.class);
+                if (docIdObj != null) {
+                    docIdList.add(docIdObj);
+                }
+            }
+        }
+        return docIdList;
+    }
+
+    private String nextDocId() {
+        position = (position + 1) % docIds.length;
+        return docIds[position];
+    }
+}
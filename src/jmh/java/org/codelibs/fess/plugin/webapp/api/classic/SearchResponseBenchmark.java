@@ -0,0 +1,74 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.classic;
+
+import java.util.concurrent.TimeUnit;
+
+import org.codelibs.fess.plugin.webapp.api.classic.BenchmarkFixtures.CountingResponse;
+import org.dbflute.utflute.mocklet.MockletHttpServletRequestImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark for building a full search response with facets in JsonApiManager.processSearchRequest.
+ * The search itself is stubbed, so the result measures request parsing and serialization only,
+ * or the cache lookup when the search response cache is enabled.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchResponseBenchmark {
+
+    @Param({ "10", "100", "1000" })
+    public int hits;
+
+    @Param({ "false", "true" })
+    public boolean cache;
+
+    private JsonApiManager manager;
+
+    private MockletHttpServletRequestImpl request;
+
+    private CountingResponse response;
+
+    @Setup
+    public void setup() {
+        BenchmarkFixtures.initialize();
+        BenchmarkFixtures.prepareSearchResult(hits, true);
+        BenchmarkFixtures.SYSTEM_PROPERTIES.put("api.classic.cache.search.enabled", Boolean.toString(cache));
+        manager = new JsonApiManager();
+        request = BenchmarkFixtures.createRequest("fess 検索", hits);
+        response = BenchmarkFixtures.bind(request);
+    }
+
+    @Benchmark
+    public long processSearchRequest() {
+        manager.processSearchRequest(request, response, null);
+        return response.takeByteCount();
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.classic;
+
+import java.util.concurrent.TimeUnit;
+
+import org.codelibs.fess.plugin.webapp.api.classic.BenchmarkFixtures.CountingResponse;
+import org.codelibs.fess.suggest.request.suggest.SuggestResponse;
+import org.dbflute.utflute.mocklet.MockletHttpServletRequestImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for the suggest response assembly of SuggestApiManager and for escapeCallbackName.
+ * The suggester needs a search engine, so the response is built from a fixed SuggestResponse.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SuggestResponseBenchmark {
+
+    @Param({ "10", "50" })
+    public int items;
+
+    private SuggestApiManager manager;
+
+    private SuggestResponse suggestResponse;
+
+    private CountingResponse response;
+
+    @Setup
+    public void setup() {
+        BenchmarkFixtures.initialize();
+        manager = new SuggestApiManager();
+        suggestResponse = BenchmarkFixtures.createSuggestResponse(items);
+        final MockletHttpServletRequestImpl request = BenchmarkFixtures.createRequest("fess", items);
+        response = BenchmarkFixtures.bind(request);
+    }
+
+    @Benchmark
+    public long writeSuggestResponse() {
+        manager.writeJsonResponse(0, buf -> manager.writeSuggestResponse(buf, suggestResponse), (String) null);
+        return response.takeByteCount();
+    }
+
+    @Benchmark
+    public String escapeCallbackName() {
+        return manager.escapeCallbackName("jQuery3510_1700000000000<script>");
+    }
+}
@@ -0,0 +1,410 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.classic;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.codelibs.fess.mylasta.direction.FessConfig;
+import org.codelibs.fess.util.ComponentUtil;
+
+/**
+ * Admission control of the classic API by request type.
+ * Each request type has its own limit of requests in progress and of requests waiting for one to finish,
+ * so that a slow type, e.g. search while the search engine is degraded, cannot take all threads from cheap types such as ping or label.
+ * A request beyond both limits is rejected immediately instead of waiting, and by default a request waits only briefly,
+ * so that excess load is shed at once rather than adding queueing delay to every request.
+ * In adaptive mode the concurrency limit of a type follows its observed latency, AIMD style: it is decreased
+ * multiplicatively when a request takes longer than the target latency, at most once per target latency so that
+ * the requests slowed down by the same congestion count as one signal, and increased by one when a request
+ * completes in time while the limit is in use, between 1 and the configured maximum.
+ * The limits are read from the system properties when a request type is first seen, and again after {@link #reset()}.
+ */
+public class AdmissionController {
+
+    /**
+     * The system property to enable admission control.
+     */
+    protected static final String ENABLED_PROPERTY = "api.classic.admission.enabled";
+
+    /**
+     * The system property for the maximum number of requests of one type in progress.
+     * This and the other limits can be set per request type by appending the type,
+     * e.g. {@code api.classic.admission.max_concurrency.search}.
+     */
+    protected static final String MAX_CONCURRENCY_PROPERTY = "api.classic.admission.max_concurrency";
+
+    /**
+     * The default maximum number of requests of one type in progress.
+     */
+    protected static final int DEFAULT_MAX_CONCURRENCY = 64;
+
+    /**
+     * The system property for the maximum number of requests of one type waiting for a request in progress to finish.
+     */
+    protected static final String MAX_QUEUE_PROPERTY = "api.classic.admission.max_queue";
+
+    /**
+     * The default maximum number of waiting requests of one type.
+     */
+    protected static final int DEFAULT_MAX_QUEUE = 64;
+
+    /**
+     * The system property for the time in milliseconds a request waits before it is rejected.
+     */
+    protected static final String QUEUE_TIMEOUT_PROPERTY = "api.classic.admission.queue_timeout";
+
+    /**
+     * The default time in milliseconds a request waits before it is rejected.
+     */
+    protected static final int DEFAULT_QUEUE_TIMEOUT = 10;
+
+    /**
+     * The system property to adapt the concurrency limits to the observed latency.
+     */
+    protected static final String ADAPTIVE_PROPERTY = "api.classic.admission.adaptive";
+
+    /**
+     * The system property for the target latency in milliseconds of the adaptive mode.
+     */
+    protected static final String TARGET_LATENCY_PROPERTY = "api.classic.admission.target_latency";
+
+    /**
+     * The default target latency in milliseconds of the adaptive mode.
+     */
+    protected static final int DEFAULT_TARGET_LATENCY = 1000;
+
+    /**
+     * The factor applied to the limit when a request exceeds the target latency, at most once per target latency.
+     */
+    protected static final double BACKOFF_RATIO = 0.9;
+
+    /**
+     * The limiters by request type.
+     */
+    protected final Map<String, Limiter> limiterMap = new ConcurrentHashMap<>();
+
+    /**
+     * Admission of a request, to be released when the request completes.
+     */
+    public interface Permit {
+        /** Permit of a request that is not limited. */
+        Permit NONE = () -> {};
+
+        /**
+         * Releases the permit. Only the first call has an effect.
+         */
+        void release();
+    }
+
+    /**
+     * Constructs an AdmissionController.
+     */
+    public AdmissionController() {
+        // nothing
+    }
+
+    /**
+     * Admits a request of a type, waiting within the queue limits if the type is at its concurrency limit.
+     *
+     * @param type the request type
+     * @return the permit of the request, or null if the request is rejected
+     */
+    public Permit acquire(final String type) {
+        final FessConfig fessConfig = ComponentUtil.getFessConfig();
+        if (!fessConfig.getSystemPropertyAsBoolean(ENABLED_PROPERTY, false)) {
+            return Permit.NONE;
+        }
+        return limiterMap.computeIfAbsent(type, k -> createLimiter(fessConfig, k)).acquire();
+    }
+
+    /**
+     * Creates the limiter of a request type from the system properties.
+     *
+     * @param fessConfig the Fess configuration
+     * @param type the request type
+     * @return the limiter
+     */
+    protected Limiter createLimiter(final FessConfig fessConfig, final String type) {
+        final int maxConcurrency = Math.max(1, getInt(fessConfig, MAX_CONCURRENCY_PROPERTY, type, DEFAULT_MAX_CONCURRENCY));
+        final int maxQueue = Math.max(0, getInt(fessConfig, MAX_QUEUE_PROPERTY, type, DEFAULT_MAX_QUEUE));
+        final long queueTimeout =
+                TimeUnit.MILLISECONDS.toNanos(Math.max(0, getInt(fessConfig, QUEUE_TIMEOUT_PROPERTY, type, DEFAULT_QUEUE_TIMEOUT)));
+        final boolean adaptive = fessConfig.getSystemPropertyAsBoolean(ADAPTIVE_PROPERTY + "." + type,
+                fessConfig.getSystemPropertyAsBoolean(ADAPTIVE_PROPERTY, false));
+        final long targetLatency = adaptive
+                ? TimeUnit.MILLISECONDS.toNanos(Math.max(1, getInt(fessConfig, TARGET_LATENCY_PROPERTY, type, DEFAULT_TARGET_LATENCY)))
+                : Long.MAX_VALUE;
+        return new Limiter(maxConcurrency, maxQueue, queueTimeout, targetLatency);
+    }
+
+    private static int getInt(final FessConfig fessConfig, final String key, final String type, final int defaultValue) {
+        return fessConfig.getSystemPropertyAsInt(key + "." + type, fessConfig.getSystemPropertyAsInt(key, defaultValue));
+    }
+
+    /**
+     * Gets the limiter of a request type.
+     *
+     * @param type the request type
+     * @return the limiter, or null if no request of the type was admitted since the last reset
+     */
+    public Limiter getLimiter(final String type) {
+        return limiterMap.get(type);
+    }
+
+    /**
+     * Discards the limiters so that the limits are read again.
+     * Requests in progress release their permits to the discarded limiters.
+     */
+    public void reset() {
+        limiterMap.clear();
+    }
+
+    /**
+     * Writes the state of the limiters as a JSON object, ordered by request type.
+     *
+     * @param out the sink to write to
+     * @throws IOException if an I/O error occurs
+     */
+    public void writeJson(final Appendable out) throws IOException {
+        out.append('{');
+        boolean first = true;
+        for (final Map.Entry<String, Limiter> entry : new TreeMap<>(limiterMap).entrySet()) {
+            if (!first) {
+                out.append(',');
+            } else {
+                first = false;
+            }
+            JsonEncoder.writeString(entry.getKey(), out);
+            out.append(':');
+            entry.getValue().writeJson(out);
+        }
+        out.append('}');
+    }
+
+    /**
+     * Concurrency and queue limits of one request type.
+     */
+    public static class Limiter {
+
+        /** The maximum concurrency limit. */
+        protected final int maxConcurrency;
+
+        /** The maximum number of waiting requests. */
+        protected final int maxQueue;
+
+        /** The time in nanoseconds a request waits before it is rejected. */
+        protected final long queueTimeout;
+
+        /** The target latency in nanoseconds, or Long.MAX_VALUE if the limit is fixed. */
+        protected final long targetLatency;
+
+        /** The lock guarding the counters. */
+        protected final ReentrantLock lock = new ReentrantLock();
+
+        /** Signalled when a request completes or the limit grows. */
+        protected final Condition available = lock.newCondition();
+
+        /** The number of rejected requests. */
+        protected final LongAdder rejected = new LongAdder();
+
+        /** The current concurrency limit, which is fractional in adaptive mode. */
+        protected volatile double limit;
+
+        /** The number of requests in progress. */
+        protected int inFlight;
+
+        /** The number of waiting requests. */
+        protected int queued;
+
+        /** Whether the limit was decreased. */
+        protected boolean decreased;
+
+        /** The time in nanoseconds of the last decrease of the limit. */
+        protected long lastDecreaseTime;
+
+        /**
+         * Constructs a Limiter.
+         *
+         * @param maxConcurrency the maximum concurrency limit
+         * @param maxQueue the maximum number of waiting requests
+         * @param queueTimeout the time in nanoseconds a request waits before it is rejected
+         * @param targetLatency the target latency in nanoseconds, or Long.MAX_VALUE for a fixed limit
+         */
+        public Limiter(final int maxConcurrency, final int maxQueue, final long queueTimeout, final long targetLatency) {
+            this.maxConcurrency = maxConcurrency;
+            this.maxQueue = maxQueue;
+            this.queueTimeout = queueTimeout;
+            this.targetLatency = targetLatency;
+            this.limit = maxConcurrency;
+        }
+
+        /**
+         * Admits a request, waiting for a request in progress to finish if the limit is reached and the queue is not full.
+         *
+         * @return the permit, or null if the request is rejected
+         */
+        public Permit acquire() {
+            lock.lock();
+            try {
+                if (inFlight >= getLimit()) {
+                    if (queued >= maxQueue || queueTimeout <= 0L) {
+                        rejected.increment();
+                        return null;
+                    }
+                    queued++;
+                    try {
+                        long nanos = queueTimeout;
+                        while (inFlight >= getLimit()) {
+                            if (nanos <= 0L) {
+                                rejected.increment();
+                                return null;
+                            }
+                            nanos = available.awaitNanos(nanos);
+                        }
+                    } catch (final InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        rejected.increment();
+                        return null;
+                    } finally {
+                        queued--;
+                    }
+                }
+                inFlight++;
+            } finally {
+                lock.unlock();
+            }
+            final long startTime = System.nanoTime();
+            return new Permit() {
+                private boolean released;
+
+                @Override
+                public void release() {
+                    if (released) {
+                        return;
+                    }
+                    released = true;
+                    Limiter.this.release(System.nanoTime() - startTime);
+                }
+            };
+        }
+
+        /**
+         * Releases a request and adapts the limit to its latency.
+         *
+         * @param latency the latency of the request in nanoseconds
+         */
+        protected void release(final long latency) {
+            release(latency, System.nanoTime());
+        }
+
+        /**
+         * Releases a request and adapts the limit to its latency.
+         * The limit is decreased at most once per target latency, since the requests completing within that window
+         * were slowed down by the same congestion and were admitted before the last decrease could take effect.
+         *
+         * @param latency the latency of the request in nanoseconds
+         * @param now the current time in nanoseconds
+         */
+        protected void release(final long latency, final long now) {
+            lock.lock();
+            try {
+                if (targetLatency != Long.MAX_VALUE) {
+                    if (latency > targetLatency) {
+                        if (!decreased || now - lastDecreaseTime >= targetLatency) {
+                            limit = Math.max(1.0, limit * BACKOFF_RATIO);
+                            decreased = true;
+                            lastDecreaseTime = now;
+                        }
+                    } else if (inFlight >= getLimit() / 2) {
+                        limit = Math.min(maxConcurrency, limit + 1.0);
+                    }
+                }
+                inFlight--;
+                available.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Returns the current concurrency limit.
+         *
+         * @return the limit
+         */
+        public int getLimit() {
+            return (int) limit;
+        }
+
+        /**
+         * Returns the number of requests in progress.
+         *
+         * @return the in-flight count
+         */
+        public int getInFlight() {
+            lock.lock();
+            try {
+                return inFlight;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Returns the number of rejected requests.
+         *
+         * @return the rejected count
+         */
+        public long getRejectedCount() {
+            return rejected.sum();
+        }
+
+        /**
+         * Writes the state of this limiter as a JSON object.
+         *
+         * @param out the sink to write to
+         * @throws IOException if an I/O error occurs
+         */
+        public void writeJson(final Appendable out) throws IOException {
+            final int currentLimit;
+            final int currentInFlight;
+            final int currentQueued;
+            lock.lock();
+            try {
+                currentLimit = getLimit();
+                currentInFlight = inFlight;
+                currentQueued = queued;
+            } finally {
+                lock.unlock();
+            }
+            out.append("{\"limit\":");
+            JsonEncoder.writeNumber(currentLimit, out);
+            out.append(",\"in_flight\":");
+            JsonEncoder.writeNumber(currentInFlight, out);
+            out.append(",\"queued\":");
+            JsonEncoder.writeNumber(currentQueued, out);
+            out.append(",\"rejected\":");
+            JsonEncoder.writeNumber(rejected.sum(), out);
+            out.append('}');
+        }
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.classic;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.codelibs.fess.mylasta.direction.FessConfig;
+import org.codelibs.fess.util.ComponentUtil;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+/**
+ * Opt-in cache of API results.
+ * Entries expire after a fixed time and the least recently used entries are evicted beyond the maximum size.
+ * The cache is configured by the system properties {@code api.classic.cache.<name>.enabled},
+ * {@code api.classic.cache.<name>.ttl} (seconds) and {@code api.classic.cache.<name>.max_entries},
+ * which are read when the cache is first used or after {@link #reset()}.
+ *
+ * @param <V> the cached value type
+ */
+public class ApiCache<V> {
+
+    /** The cache name. */
+    protected final String name;
+
+    /** The system property prefix of this cache. */
+    protected final String propertyPrefix;
+
+    /** The time to live in seconds if not configured. */
+    protected final int defaultTtl;
+
+    /** The maximum size if not configured. */
+    protected final int defaultMaxSize;
+
+    /** The number of requests answered from an entry cached for another key. */
+    protected final LongAdder derivedHits = new LongAdder();
+
+    /** The cache, created on first use. */
+    protected volatile Cache<String, V> cache;
+
+    /**
+     * Constructs an ApiCache.
+     *
+     * @param name the cache name used in the system property names
+     * @param defaultTtl the time to live in seconds if not configured
+     * @param defaultMaxSize the maximum number of entries if not configured
+     */
+    public ApiCache(final String name, final int defaultTtl, final int defaultMaxSize) {
+        this.name = name;
+        this.propertyPrefix = "api.classic.cache." + name + ".";
+        this.defaultTtl = defaultTtl;
+        this.defaultMaxSize = defaultMaxSize;
+    }
+
+    /**
+     * Returns the cache name.
+     *
+     * @return the name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Checks if this cache is enabled by its system property.
+     *
+     * @return true if enabled
+     */
+    public boolean isEnabled() {
+        return ComponentUtil.getFessConfig().getSystemPropertyAsBoolean(propertyPrefix + "enabled", false);
+    }
+
+    /**
+     * Gets a cached value and records a hit or a miss.
+     *
+     * @param key the cache key
+     * @return the value, or null if not cached
+     */
+    public V get(final String key) {
+        return getCache().getIfPresent(key);
+    }
+
+    /**
+     * Gets a cached value without recording a hit or a miss, e.g. to look for an entry a value can be derived from.
+     *
+     * @param key the cache key
+     * @return the value, or null if not cached
+     */
+    public V peek(final String key) {
+        return getCache().asMap().get(key);
+    }
+
+    /**
+     * Caches a value.
+     *
+     * @param key the cache key
+     * @param value the value
+     */
+    public void put(final String key, final V value) {
+        getCache().put(key, value);
+    }
+
+    /**
+     * Counts a request answered from an entry cached for another key.
+     */
+    public void recordDerivedHit() {
+        derivedHits.increment();
+    }
+
+    /**
+     * Removes all entries.
+     */
+    public void invalidate() {
+        final Cache<String, V> current = cache;
+        if (current != null) {
+            current.invalidateAll();
+        }
+    }
+
+    /**
+     * Discards the cache so that it is recreated with the current system properties on next use.
+     */
+    public void reset() {
+        final Cache<String, V> current = cache;
+        cache = null;
+        derivedHits.reset();
+        if (current != null) {
+            current.invalidateAll();
+        }
+    }
+
+    /**
+     * Returns the number of cached entries.
+     *
+     * @return the entry count
+     */
+    public long size() {
+        final Cache<String, V> current = cache;
+        return current == null ? 0L : current.size();
+    }
+
+    /**
+     * Returns the hit, miss and eviction statistics.
+     *
+     * @return the statistics
+     */
+    public CacheStats getStats() {
+        final Cache<String, V> current = cache;
+        return current == null ? new CacheStats(0, 0, 0, 0, 0, 0) : current.stats();
+    }
+
+    /**
+     * Writes the statistics as a JSON object.
+     *
+     * @param out the sink to write to
+     * @throws IOException if an I/O error occurs
+     */
+    public void writeJson(final Appendable out) throws IOException {
+        final CacheStats stats = getStats();
+        out.append("{\"entries\":");
+        JsonEncoder.writeNumber(size(), out);
+        out.append(",\"hits\":");
+        JsonEncoder.writeNumber(stats.hitCount(), out);
+        out.append(",\"derived_hits\":");
+        JsonEncoder.writeNumber(derivedHits.sum(), out);
+        out.append(",\"misses\":");
+        JsonEncoder.writeNumber(stats.missCount(), out);
+        out.append(",\"evictions\":");
+        JsonEncoder.writeNumber(stats.evictionCount(), out);
+        out.append('}');
+    }
+
+    /**
+     * Gets the cache, creating it if needed.
+     *
+     * @return the cache
+     */
+    protected Cache<String, V> getCache() {
+        Cache<String, V> current = cache;
+        if (current == null) {
+            synchronized (this) {
+                current = cache;
+                if (current == null) {
+                    current = createCache(ComponentUtil.getFessConfig());
+                    cache = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Creates the cache from the system properties.
+     *
+     * @param fessConfig the Fess configuration
+     * @return the cache
+     */
+    protected Cache<String, V> createCache(final FessConfig fessConfig) {
+        final int ttl = fessConfig.getSystemPropertyAsInt(propertyPrefix + "ttl", defaultTtl);
+        final int maxSize = fessConfig.getSystemPropertyAsInt(propertyPrefix + getMaxSizePropertyName(), defaultMaxSize);
+        return CacheBuilder.newBuilder()
+                .maximumWeight(maxSize)
+                .weigher((final String key, final V value) -> weigh(key, value))
+                .expireAfterWrite(ttl, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Returns the name of the system property for the maximum size, without the prefix.
+     *
+     * @return the property name
+     */
+    protected String getMaxSizePropertyName() {
+        return "max_entries";
+    }
+
+    /**
+     * Returns the size of an entry counted against the maximum size.
+     *
+     * @param key the cache key
+     * @param value the value
+     * @return the size, 1 by default
+     */
+    protected int weigh(final String key, final V value) {
+        return 1;
+    }
+}
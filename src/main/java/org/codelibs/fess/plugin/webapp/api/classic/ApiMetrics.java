@@ -0,0 +1,396 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.classic;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-endpoint request metrics of the classic API.
+ * Each endpoint keeps a request counter, error counters by response status, a counter of requests
+ * that shared the backend call of a concurrent identical request, and latency
+ * histograms for the whole request, the backend calls and the response serialization.
+ * A {@link Sample} collects the timings of one request and is recorded when it ends.
+ * The caches of the endpoints are registered here so that their statistics are reported together.
+ */
+public class ApiMetrics {
+
+    /** The percentiles reported for each histogram. */
+    protected static final double[] PERCENTILES = { 50.0, 90.0, 99.0, 99.9 };
+
+    /** The JSON names of {@link #PERCENTILES}. */
+    protected static final String[] PERCENTILE_NAMES = { "p50", "p90", "p99", "p999" };
+
+    /** The metrics by endpoint name. */
+    protected final Map<String, EndpointMetrics> endpointMap = new ConcurrentHashMap<>();
+
+    /** The registered caches by name. */
+    protected final Map<String, ApiCache<?>> cacheMap = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs an empty ApiMetrics.
+     */
+    public ApiMetrics() {
+        // nothing
+    }
+
+    /**
+     * Starts a sample for a request to the specified endpoint.
+     *
+     * @param endpoint the endpoint name
+     * @return the started sample
+     */
+    public Sample start(final String endpoint) {
+        return new Sample(getEndpoint(endpoint), System.nanoTime());
+    }
+
+    /**
+     * Gets the metrics of an endpoint, creating them if needed.
+     *
+     * @param endpoint the endpoint name
+     * @return the endpoint metrics
+     */
+    public EndpointMetrics getEndpoint(final String endpoint) {
+        return endpointMap.computeIfAbsent(endpoint, k -> new EndpointMetrics());
+    }
+
+    /**
+     * Registers a cache whose statistics are reported by {@link #writeCachesJson(Appendable)}.
+     *
+     * @param cache the cache
+     */
+    public void addCache(final ApiCache<?> cache) {
+        cacheMap.put(cache.getName(), cache);
+    }
+
+    /**
+     * Clears the metrics of all endpoints.
+     */
+    public void reset() {
+        endpointMap.values().forEach(EndpointMetrics::reset);
+    }
+
+    /**
+     * Writes the metrics of all endpoints as a JSON object, ordered by endpoint name.
+     *
+     * @param out the sink to write to
+     * @throws IOException if an I/O error occurs
+     */
+    public void writeJson(final Appendable out) throws IOException {
+        out.append('{');
+        boolean first = true;
+        for (final Map.Entry<String, EndpointMetrics> entry : new TreeMap<>(endpointMap).entrySet()) {
+            if (!first) {
+                out.append(',');
+            } else {
+                first = false;
+            }
+            JsonEncoder.writeString(entry.getKey(), out);
+            out.append(':');
+            entry.getValue().writeJson(out);
+        }
+        out.append('}');
+    }
+
+    /**
+     * Writes the statistics of the registered caches as a JSON object, ordered by cache name.
+     *
+     * @param out the sink to write to
+     * @throws IOException if an I/O error occurs
+     */
+    public void writeCachesJson(final Appendable out) throws IOException {
+        out.append('{');
+        boolean first = true;
+        for (final Map.Entry<String, ApiCache<?>> entry : new TreeMap<>(cacheMap).entrySet()) {
+            if (!first) {
+                out.append(',');
+            } else {
+                first = false;
+            }
+            JsonEncoder.writeString(entry.getKey(), out);
+            out.append(':');
+            entry.getValue().writeJson(out);
+        }
+        out.append('}');
+    }
+
+    /**
+     * Metrics of a single endpoint.
+     */
+    public static class EndpointMetrics {
+
+        /** The number of requests. */
+        protected final LongAdder requests = new LongAdder();
+
+        /** The number of requests that shared the backend call of another request. */
+        protected final LongAdder coalesced = new LongAdder();
+
+        /** The number of failed requests by response status. */
+        protected final Map<Integer, LongAdder> errorMap = new ConcurrentHashMap<>();
+
+        /** The latency of whole requests. */
+        protected final LatencyHistogram total = new LatencyHistogram();
+
+        /** The latency of backend calls. */
+        protected final LatencyHistogram backend = new LatencyHistogram();
+
+        /** The latency of response serialization. */
+        protected final LatencyHistogram serialization = new LatencyHistogram();
+
+        /**
+         * Constructs empty EndpointMetrics.
+         */
+        public EndpointMetrics() {
+            // nothing
+        }
+
+        /**
+         * Records a finished request.
+         *
+         * @param status the response status, 0 on success
+         * @param totalNanos the request latency
+         * @param backendNanos the backend latency, or -1 if the request made no backend call
+         * @param serializationNanos the serialization latency, or -1 if nothing was serialized
+         */
+        public void record(final int status, final long totalNanos, final long backendNanos, final long serializationNanos) {
+            requests.increment();
+            if (status != 0) {
+                errorMap.computeIfAbsent(status, k -> new LongAdder()).increment();
+            }
+            total.record(totalNanos);
+            if (backendNanos >= 0) {
+                backend.record(backendNanos);
+            }
+            if (serializationNanos >= 0) {
+                serialization.record(serializationNanos);
+            }
+        }
+
+        /**
+         * Returns the number of requests.
+         *
+         * @return the request count
+         */
+        public long getRequestCount() {
+            return requests.sum();
+        }
+
+        /**
+         * Counts a request that shared the backend call of another request.
+         */
+        public void recordCoalesced() {
+            coalesced.increment();
+        }
+
+        /**
+         * Returns the number of requests that shared the backend call of another request.
+         *
+         * @return the coalesced request count
+         */
+        public long getCoalescedCount() {
+            return coalesced.sum();
+        }
+
+        /**
+         * Returns the number of failed requests with the specified status.
+         *
+         * @param status the response status
+         * @return the error count
+         */
+        public long getErrorCount(final int status) {
+            final LongAdder adder = errorMap.get(status);
+            return adder == null ? 0L : adder.sum();
+        }
+
+        /**
+         * Returns the latency histogram of whole requests.
+         *
+         * @return the histogram
+         */
+        public LatencyHistogram getTotal() {
+            return total;
+        }
+
+        /**
+         * Returns the latency histogram of backend calls.
+         *
+         * @return the histogram
+         */
+        public LatencyHistogram getBackend() {
+            return backend;
+        }
+
+        /**
+         * Returns the latency histogram of response serialization.
+         *
+         * @return the histogram
+         */
+        public LatencyHistogram getSerialization() {
+            return serialization;
+        }
+
+        /**
+         * Clears all counters and histograms.
+         */
+        public void reset() {
+            requests.reset();
+            coalesced.reset();
+            errorMap.clear();
+            total.reset();
+            backend.reset();
+            serialization.reset();
+        }
+
+        /**
+         * Writes these metrics as a JSON object.
+         *
+         * @param out the sink to write to
+         * @throws IOException if an I/O error occurs
+         */
+        public void writeJson(final Appendable out) throws IOException {
+            out.append("{\"requests\":");
+            JsonEncoder.writeNumber(requests.sum(), out);
+            out.append(",\"coalesced\":");
+            JsonEncoder.writeNumber(coalesced.sum(), out);
+            out.append(",\"errors\":{");
+            boolean first = true;
+            for (final Map.Entry<Integer, LongAdder> entry : new TreeMap<>(errorMap).entrySet()) {
+                if (!first) {
+                    out.append(',');
+                } else {
+                    first = false;
+                }
+                out.append('"').append(entry.getKey().toString()).append("\":");
+                JsonEncoder.writeNumber(entry.getValue().sum(), out);
+            }
+            out.append("},\"total_us\":");
+            writeHistogram(total.snapshot(), out);
+            out.append(",\"backend_us\":");
+            writeHistogram(backend.snapshot(), out);
+            out.append(",\"serialization_us\":");
+            writeHistogram(serialization.snapshot(), out);
+            out.append('}');
+        }
+
+        private static void writeHistogram(final LatencyHistogram.Snapshot snapshot, final Appendable out) throws IOException {
+            out.append("{\"count\":");
+            JsonEncoder.writeNumber(snapshot.getCount(), out);
+            out.append(",\"mean\":");
+            JsonEncoder.writeNumber(snapshot.getMeanMicros(), out);
+            for (int i = 0; i < PERCENTILES.length; i++) {
+                out.append(",\"").append(PERCENTILE_NAMES[i]).append("\":");
+                JsonEncoder.writeNumber(snapshot.getPercentileMicros(PERCENTILES[i]), out);
+            }
+            out.append(",\"max\":");
+            JsonEncoder.writeNumber(snapshot.getMaxMicros(), out);
+            out.append('}');
+        }
+    }
+
+    /**
+     * Timings of a single request.
+     * A sample is used by one request thread at a time and is recorded once by {@link #end()}.
+     */
+    public static class Sample {
+
+        /** Sample that records nothing, used when a request is not measured. */
+        public static final Sample NONE = new Sample(null, 0L);
+
+        private final EndpointMetrics endpoint;
+
+        private final long startTime;
+
+        private long backendStartTime;
+
+        private long backendNanos = -1L;
+
+        private long serializationNanos = -1L;
+
+        private int status;
+
+        private boolean ended;
+
+        /**
+         * Constructs a Sample.
+         *
+         * @param endpoint the endpoint metrics to record to, or null to record nothing
+         * @param startTime the start time from System.nanoTime()
+         */
+        protected Sample(final EndpointMetrics endpoint, final long startTime) {
+            this.endpoint = endpoint;
+            this.startTime = startTime;
+        }
+
+        /**
+         * Marks the start of a backend call.
+         */
+        public void startBackend() {
+            backendStartTime = System.nanoTime();
+        }
+
+        /**
+         * Marks the end of a backend call started by {@link #startBackend()}.
+         * The time of several calls in one request is added up.
+         */
+        public void endBackend() {
+            final long elapsed = System.nanoTime() - backendStartTime;
+            backendNanos = backendNanos < 0 ? elapsed : backendNanos + elapsed;
+        }
+
+        /**
+         * Marks this request as having shared the backend call of a concurrent identical request.
+         */
+        public void coalesced() {
+            if (endpoint != null) {
+                endpoint.recordCoalesced();
+            }
+        }
+
+        /**
+         * Adds the time taken to serialize a response and sets its status.
+         *
+         * @param status the response status
+         * @param nanos the serialization time
+         */
+        public void serialized(final int status, final long nanos) {
+            this.status = status;
+            serializationNanos = serializationNanos < 0 ? nanos : serializationNanos + nanos;
+        }
+
+        /**
+         * Sets the response status of a request that does not write a JSON envelope.
+         *
+         * @param status the response status
+         */
+        public void setStatus(final int status) {
+            this.status = status;
+        }
+
+        /**
+         * Records this sample to its endpoint. Subsequent calls have no effect.
+         */
+        public void end() {
+            if (endpoint == null || ended) {
+                return;
+            }
+            ended = true;
+            endpoint.record(status, System.nanoTime() - startTime, backendNanos, serializationNanos);
+        }
+    }
+}
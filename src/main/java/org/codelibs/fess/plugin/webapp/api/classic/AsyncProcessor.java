@@ -0,0 +1,827 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.classic;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.codelibs.core.lang.StringUtil;
+import org.codelibs.fess.mylasta.direction.FessConfig;
+import org.codelibs.fess.util.ComponentUtil;
+import org.lastaflute.di.core.ExternalContext;
+import org.lastaflute.di.core.factory.SingletonLaContainerFactory;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * Runs API requests in servlet async mode, so that the container thread is released while the backend is called.
+ * The request is processed on a dedicated executor with a {@link StreamingResponse}, which acquires the response
+ * once its body is written and streams it to the client from then on. If processing does not acquire the response
+ * within {@value #TIMEOUT_PROPERTY} milliseconds, it is cancelled and a timeout response is written instead,
+ * so each request gets exactly one of the two. Requests that find the executor queue full are rejected at once.
+ * Requests are processed synchronously if async mode is disabled or not supported by the filter chain.
+ * With {@value #VIRTUAL_THREADS_PROPERTY}, each request runs on its own virtual thread instead of a fixed pool,
+ * and the number of requests of each type processed at the same time is bounded by a semaphore;
+ * the other requests wait for a permit, within their timeout, without holding a platform thread.
+ */
+public class AsyncProcessor {
+    private static final Logger logger = LogManager.getLogger(AsyncProcessor.class);
+
+    /**
+     * The system property to process requests in async mode.
+     */
+    protected static final String ENABLED_PROPERTY = "api.classic.async.enabled";
+
+    /**
+     * The system property for the time in milliseconds until an async request times out.
+     */
+    protected static final String TIMEOUT_PROPERTY = "api.classic.async.timeout";
+
+    /**
+     * The default time in milliseconds until an async request times out.
+     */
+    protected static final int DEFAULT_TIMEOUT = 30000;
+
+    /**
+     * The system property for the number of threads processing async requests.
+     */
+    protected static final String POOL_SIZE_PROPERTY = "api.classic.async.pool_size";
+
+    /**
+     * The default number of threads processing async requests.
+     */
+    protected static final int DEFAULT_POOL_SIZE = 64;
+
+    /**
+     * The system property for the number of async requests waiting for a thread of the pool.
+     */
+    protected static final String QUEUE_SIZE_PROPERTY = "api.classic.async.queue_size";
+
+    /**
+     * The default number of async requests waiting for a thread of the pool.
+     */
+    protected static final int DEFAULT_QUEUE_SIZE = 1000;
+
+    /**
+     * The system property to process async requests on virtual threads.
+     */
+    protected static final String VIRTUAL_THREADS_PROPERTY = "api.classic.async.virtual_threads";
+
+    /**
+     * The system property for the number of requests of one type processed at the same time on virtual threads.
+     * It can be set per request type by appending the type, e.g. {@code api.classic.async.max_concurrency.search}.
+     */
+    protected static final String MAX_CONCURRENCY_PROPERTY = "api.classic.async.max_concurrency";
+
+    /**
+     * The default number of requests of one type processed at the same time on virtual threads.
+     */
+    protected static final int DEFAULT_MAX_CONCURRENCY = 256;
+
+    /**
+     * The permits of the requests processed on virtual threads by request type.
+     */
+    protected final Map<String, Semaphore> semaphoreMap = new ConcurrentHashMap<>();
+
+    /**
+     * The executor processing async requests, created on first use.
+     */
+    private volatile ExecutorService executorService;
+
+    /**
+     * Whether the executor runs requests on virtual threads.
+     */
+    private volatile boolean virtualThreads;
+
+    /**
+     * Whether this processor is destroyed.
+     */
+    private volatile boolean destroyed;
+
+    /**
+     * Processing of a request.
+     */
+    @FunctionalInterface
+    public interface Task {
+        /**
+         * Processes a request.
+         *
+         * @param request the HTTP servlet request
+         * @param response the HTTP servlet response to write to
+         * @throws Exception if processing fails
+         */
+        void run(HttpServletRequest request, HttpServletResponse response) throws Exception;
+    }
+
+    /**
+     * Constructs an AsyncProcessor.
+     */
+    public AsyncProcessor() {
+        // nothing
+    }
+
+    /**
+     * Checks if a request is processed in async mode.
+     *
+     * @param request the HTTP servlet request
+     * @return true if async mode is enabled and supported for the request
+     */
+    public boolean isEnabled(final HttpServletRequest request) {
+        return !destroyed && ComponentUtil.getFessConfig().getSystemPropertyAsBoolean(ENABLED_PROPERTY, false)
+                && request.getDispatcherType() == DispatcherType.REQUEST && request.isAsyncSupported() && !request.isAsyncStarted();
+    }
+
+    /**
+     * Starts async processing of a request and returns without waiting for it.
+     *
+     * @param type the request type, which has its own concurrency limit on virtual threads
+     * @param request the HTTP servlet request
+     * @param response the HTTP servlet response
+     * @param task the processing of the request
+     * @param timeoutTask writes the response if processing times out
+     * @param rejectedTask writes the response if the request is rejected because the executor queue is full
+     * @param onEnd runs once when processing ends or will not run anymore, e.g. to release resources held for the request, or null
+     * @throws IllegalStateException if the request cannot be put into async mode; if this method throws, nothing is started
+     *             and onEnd does not run, so the request can still be processed synchronously
+     */
+    public void start(final String type, final HttpServletRequest request, final HttpServletResponse response, final Task task,
+            final Task timeoutTask, final Task rejectedTask, final Runnable onEnd) {
+        final int timeout = ComponentUtil.getFessConfig().getSystemPropertyAsInt(TIMEOUT_PROPERTY, DEFAULT_TIMEOUT);
+        final AsyncContext asyncContext = request.startAsync(request, response);
+        final AsyncRequest asyncRequest = new AsyncRequest(asyncContext, request, response, onEnd);
+        try {
+            asyncContext.setTimeout(timeout);
+            asyncContext.addListener(new AsyncListener() {
+                @Override
+                public void onTimeout(final AsyncEvent event) {
+                    asyncRequest.timeout(timeoutTask);
+                }
+
+                @Override
+                public void onError(final AsyncEvent event) {
+                    asyncRequest.cancel();
+                }
+
+                @Override
+                public void onComplete(final AsyncEvent event) {
+                    // nothing
+                }
+
+                @Override
+                public void onStartAsync(final AsyncEvent event) {
+                    // nothing
+                }
+            });
+            final ExecutorService executor = getExecutorService();
+            final Task limitedTask = virtualThreads ? limit(getSemaphore(type), task) : task;
+            asyncRequest.future = executor.submit(() -> asyncRequest.run(limitedTask));
+        } catch (final RejectedExecutionException e) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Rejected an async request: {}", request.getRequestURI(), e);
+            }
+            asyncRequest.reject(rejectedTask);
+        } catch (final RuntimeException e) {
+            // the request is in async mode already, so it is ended as rejected rather than processed synchronously
+            logger.warn("Failed to start an async request: {}", request.getRequestURI(), e);
+            asyncRequest.reject(rejectedTask);
+        }
+    }
+
+    /**
+     * Gets the semaphore bounding the requests of a type processed at the same time.
+     *
+     * @param type the request type
+     * @return the semaphore
+     */
+    protected Semaphore getSemaphore(final String type) {
+        return semaphoreMap.computeIfAbsent(type, k -> {
+            final FessConfig fessConfig = ComponentUtil.getFessConfig();
+            final int defaultPermits = fessConfig.getSystemPropertyAsInt(MAX_CONCURRENCY_PROPERTY, DEFAULT_MAX_CONCURRENCY);
+            return new Semaphore(Math.max(1, fessConfig.getSystemPropertyAsInt(MAX_CONCURRENCY_PROPERTY + "." + k, defaultPermits)));
+        });
+    }
+
+    /**
+     * Wraps a task so that it runs only while holding a permit of the semaphore.
+     *
+     * @param semaphore the semaphore
+     * @param task the task
+     * @return the wrapped task
+     */
+    protected static Task limit(final Semaphore semaphore, final Task task) {
+        return (request, response) -> {
+            semaphore.acquire();
+            try {
+                task.run(request, response);
+            } finally {
+                semaphore.release();
+            }
+        };
+    }
+
+    /**
+     * Returns the executor processing async requests, creating it if needed.
+     *
+     * @return the executor
+     */
+    protected ExecutorService getExecutorService() {
+        ExecutorService executor = executorService;
+        if (executor == null) {
+            synchronized (this) {
+                executor = executorService;
+                if (executor == null) {
+                    if (destroyed) {
+                        throw new RejectedExecutionException("AsyncProcessor is destroyed.");
+                    }
+                    executor = createExecutorService(ComponentUtil.getFessConfig());
+                    executorService = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * Creates the executor processing async requests.
+     *
+     * @param fessConfig the Fess configuration
+     * @return the executor
+     */
+    protected ExecutorService createExecutorService(final FessConfig fessConfig) {
+        virtualThreads = fessConfig.getSystemPropertyAsBoolean(VIRTUAL_THREADS_PROPERTY, false);
+        if (virtualThreads) {
+            return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("classic-api-async-", 0).factory());
+        }
+        final int poolSize = Math.max(1, fessConfig.getSystemPropertyAsInt(POOL_SIZE_PROPERTY, DEFAULT_POOL_SIZE));
+        final int queueSize = Math.max(1, fessConfig.getSystemPropertyAsInt(QUEUE_SIZE_PROPERTY, DEFAULT_QUEUE_SIZE));
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(poolSize, poolSize, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueSize), Thread.ofPlatform().name("classic-api-async-", 0).daemon(true).factory());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Stops the executor, interrupting the requests in progress.
+     */
+    @PreDestroy
+    public void destroy() {
+        synchronized (this) {
+            destroyed = true;
+            if (executorService != null) {
+                executorService.shutdownNow();
+                executorService = null;
+            }
+            semaphoreMap.clear();
+        }
+    }
+
+    /**
+     * Binds a request and response to the current thread for code looking them up through the container.
+     *
+     * @param request the request to bind
+     * @param response the response to bind
+     * @return the binding that was replaced, to be restored when the processing on the current thread ends
+     */
+    protected static Binding bind(final HttpServletRequest request, final HttpServletResponse response) {
+        final ExternalContext externalContext =
+                SingletonLaContainerFactory.hasContainer() ? SingletonLaContainerFactory.getExternalContext() : null;
+        if (externalContext == null) {
+            return new Binding(null, null, null);
+        }
+        final Binding previous = new Binding(externalContext, externalContext.getRequest(), externalContext.getResponse());
+        externalContext.setRequest(request);
+        externalContext.setResponse(response);
+        return previous;
+    }
+
+    /**
+     * Request and response bound to a thread before {@link AsyncProcessor#bind(HttpServletRequest, HttpServletResponse)}.
+     */
+    protected static class Binding {
+        private final ExternalContext externalContext;
+
+        private final Object request;
+
+        private final Object response;
+
+        Binding(final ExternalContext externalContext, final Object request, final Object response) {
+            this.externalContext = externalContext;
+            this.request = request;
+            this.response = response;
+        }
+
+        /**
+         * Binds the request and response again.
+         */
+        public void restore() {
+            if (externalContext != null) {
+                externalContext.setRequest(request);
+                externalContext.setResponse(response);
+            }
+        }
+    }
+
+    /**
+     * State of one async request, whose response is written either by its processing or by its timeout, whichever acquires it first.
+     */
+    private static class AsyncRequest {
+        private final AsyncContext asyncContext;
+
+        private final HttpServletRequest request;
+
+        private final HttpServletResponse response;
+
+        private final Runnable onEnd;
+
+        private final AtomicBoolean done = new AtomicBoolean();
+
+        private final AtomicBoolean started = new AtomicBoolean();
+
+        private final AtomicBoolean completed = new AtomicBoolean();
+
+        private volatile Future<?> future;
+
+        private volatile StreamingResponse streamingResponse;
+
+        AsyncRequest(final AsyncContext asyncContext, final HttpServletRequest request, final HttpServletResponse response,
+                final Runnable onEnd) {
+            this.asyncContext = asyncContext;
+            this.request = request;
+            this.response = response;
+            this.onEnd = onEnd;
+        }
+
+        void run(final Task task) {
+            if (!started.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                if (!done.get()) {
+                    process(task);
+                }
+            } finally {
+                end();
+            }
+        }
+
+        private void process(final Task task) {
+            final StreamingResponse streaming = new StreamingResponse(response, () -> done.compareAndSet(false, true));
+            streamingResponse = streaming;
+            final Binding previous = bind(request, streaming);
+            try {
+                task.run(request, streaming);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Interrupted an async request: {}", request.getRequestURI());
+                }
+            } catch (final Exception e) {
+                logger.warn("Failed to process an async request: {}", request.getRequestURI(), e);
+            } finally {
+                previous.restore();
+            }
+            try {
+                streaming.commit();
+            } catch (final IOException e) {
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Failed to write an async response.", e);
+                }
+            } finally {
+                if (streaming.isOwner()) {
+                    complete();
+                }
+            }
+        }
+
+        void timeout(final Task timeoutTask) {
+            if (!done.compareAndSet(false, true)) {
+                cutOff();
+                return;
+            }
+            cancelFuture();
+            write(timeoutTask, "timeout");
+        }
+
+        void reject(final Task rejectedTask) {
+            if (done.compareAndSet(false, true)) {
+                write(rejectedTask, "rejected");
+            }
+            if (started.compareAndSet(false, true)) {
+                end();
+            }
+        }
+
+        void cancel() {
+            if (done.compareAndSet(false, true)) {
+                cancelFuture();
+            }
+        }
+
+        /**
+         * Cuts off the processing that is streaming the response when the request times out,
+         * without waiting for it on the container thread; whatever it writes from then on is discarded.
+         */
+        private void cutOff() {
+            if (completed.get()) {
+                return;
+            }
+            logger.warn("Cut off an async response that is still being written: {}", request.getRequestURI());
+            final StreamingResponse streaming = streamingResponse;
+            if (streaming != null) {
+                streaming.discard();
+            }
+            cancelFuture();
+            complete();
+        }
+
+        private void write(final Task responseTask, final String name) {
+            final Binding previous = bind(request, response);
+            try {
+                responseTask.run(request, response);
+            } catch (final Exception e) {
+                logger.warn("Failed to write a {} response: {}", name, request.getRequestURI(), e);
+            } finally {
+                previous.restore();
+                complete();
+            }
+        }
+
+        private void complete() {
+            if (completed.compareAndSet(false, true)) {
+                asyncContext.complete();
+            }
+        }
+
+        private void cancelFuture() {
+            final Future<?> f = future;
+            if (f != null) {
+                f.cancel(true);
+            }
+            if (started.compareAndSet(false, true)) {
+                end();
+            }
+        }
+
+        private void end() {
+            if (onEnd != null) {
+                onEnd.run();
+            }
+        }
+    }
+
+    /**
+     * Response that holds back the status, headers and the first {@value #PENDING_BODY_SIZE} bytes of the body
+     * until it acquires the wrapped response, either when the held back body would grow beyond that size or on {@link #commit()}.
+     * Once acquired, the held back operations are applied and the body is streamed to the wrapped response as it is written.
+     * If a timeout response acquired the wrapped response first, or the response is cut off by {@link #discard()},
+     * everything written to this response is discarded, so nothing reaches a response that was already completed.
+     */
+    protected static class StreamingResponse extends HttpServletResponseWrapper {
+        /** The maximum number of body bytes held back before the wrapped response is acquired. */
+        protected static final int PENDING_BODY_SIZE = 8192;
+
+        private static final int PENDING = 0;
+
+        private static final int OWNER = 1;
+
+        private static final int DISCARDED = 2;
+
+        private final BooleanSupplier acquirer;
+
+        private final List<Consumer<HttpServletResponse>> operations = new ArrayList<>();
+
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream(1024);
+
+        private volatile int state = PENDING;
+
+        private String characterEncoding;
+
+        private ServletOutputStream outputStream;
+
+        private PrintWriter writer;
+
+        /**
+         * Constructs a StreamingResponse.
+         *
+         * @param response the response to write to once acquired
+         * @param acquirer acquires the wrapped response, returning false if it was acquired by a timeout response
+         */
+        public StreamingResponse(final HttpServletResponse response, final BooleanSupplier acquirer) {
+            super(response);
+            this.acquirer = acquirer;
+        }
+
+        /**
+         * Acquires the wrapped response if not yet done and writes everything held back to it.
+         *
+         * @throws IOException if an I/O error occurs
+         */
+        public void commit() throws IOException {
+            if (writer != null) {
+                writer.flush();
+            }
+            if (acquire()) {
+                getHttpServletResponse().flushBuffer();
+            }
+        }
+
+        /**
+         * Discards everything written to this response from now on, e.g. once the request has been completed.
+         */
+        public void discard() {
+            state = DISCARDED;
+            synchronized (operations) {
+                operations.clear();
+            }
+        }
+
+        /**
+         * Checks if this response acquired the wrapped response.
+         *
+         * @return true if the wrapped response is written by this response
+         */
+        public boolean isOwner() {
+            return state == OWNER;
+        }
+
+        /**
+         * Acquires the wrapped response if not yet done, applying the held back operations and body to it.
+         *
+         * @return true if this response owns the wrapped response
+         * @throws IOException if an I/O error occurs
+         */
+        protected boolean acquire() throws IOException {
+            if (state == PENDING) {
+                if (!acquirer.getAsBoolean()) {
+                    state = DISCARDED;
+                    synchronized (operations) {
+                        operations.clear();
+                    }
+                    body.reset();
+                    return false;
+                }
+                final HttpServletResponse response = getHttpServletResponse();
+                synchronized (operations) {
+                    if (state == DISCARDED) {
+                        return false;
+                    }
+                    state = OWNER;
+                    operations.forEach(op -> op.accept(response));
+                    operations.clear();
+                }
+                if (body.size() > 0) {
+                    body.writeTo(response.getOutputStream());
+                    body.reset();
+                }
+            }
+            return state == OWNER;
+        }
+
+        private HttpServletResponse getHttpServletResponse() {
+            return (HttpServletResponse) getResponse();
+        }
+
+        private void record(final Consumer<HttpServletResponse> operation) {
+            if (state == OWNER) {
+                operation.accept(getHttpServletResponse());
+            } else if (state == PENDING) {
+                synchronized (operations) {
+                    operations.add(operation);
+                }
+            }
+        }
+
+        private void writeBody(final byte[] b, final int off, final int len) throws IOException {
+            if (state == PENDING) {
+                if (body.size() + len <= PENDING_BODY_SIZE) {
+                    body.write(b, off, len);
+                    return;
+                }
+                acquire();
+            }
+            if (state == OWNER) {
+                getHttpServletResponse().getOutputStream().write(b, off, len);
+            }
+        }
+
+        @Override
+        public void setStatus(final int sc) {
+            record(r -> r.setStatus(sc));
+        }
+
+        @Override
+        public void sendError(final int sc) {
+            record(r -> r.setStatus(sc));
+        }
+
+        @Override
+        public void sendError(final int sc, final String msg) {
+            record(r -> r.setStatus(sc));
+        }
+
+        @Override
+        public void sendRedirect(final String location) {
+            record(r -> {
+                try {
+                    r.sendRedirect(location);
+                } catch (final IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+        }
+
+        @Override
+        public void setContentType(final String type) {
+            if (type != null) {
+                final int index = type.toLowerCase(Locale.ROOT).indexOf("charset=");
+                if (index >= 0) {
+                    characterEncoding = type.substring(index + 8).trim();
+                }
+            }
+            record(r -> r.setContentType(type));
+        }
+
+        @Override
+        public void setCharacterEncoding(final String charset) {
+            characterEncoding = charset;
+            record(r -> r.setCharacterEncoding(charset));
+        }
+
+        @Override
+        public String getCharacterEncoding() {
+            return characterEncoding != null ? characterEncoding : StandardCharsets.ISO_8859_1.name();
+        }
+
+        @Override
+        public void setContentLength(final int len) {
+            record(r -> r.setContentLength(len));
+        }
+
+        @Override
+        public void setContentLengthLong(final long len) {
+            record(r -> r.setContentLengthLong(len));
+        }
+
+        @Override
+        public void setLocale(final Locale loc) {
+            record(r -> r.setLocale(loc));
+        }
+
+        @Override
+        public void addCookie(final Cookie cookie) {
+            record(r -> r.addCookie(cookie));
+        }
+
+        @Override
+        public void setHeader(final String name, final String value) {
+            record(r -> r.setHeader(name, value));
+        }
+
+        @Override
+        public void addHeader(final String name, final String value) {
+            record(r -> r.addHeader(name, value));
+        }
+
+        @Override
+        public void setIntHeader(final String name, final int value) {
+            record(r -> r.setIntHeader(name, value));
+        }
+
+        @Override
+        public void addIntHeader(final String name, final int value) {
+            record(r -> r.addIntHeader(name, value));
+        }
+
+        @Override
+        public void setDateHeader(final String name, final long date) {
+            record(r -> r.setDateHeader(name, date));
+        }
+
+        @Override
+        public void addDateHeader(final String name, final long date) {
+            record(r -> r.addDateHeader(name, date));
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() {
+            if (outputStream == null) {
+                outputStream = new ServletOutputStream() {
+                    @Override
+                    public void write(final int b) throws IOException {
+                        writeBody(new byte[] { (byte) b }, 0, 1);
+                    }
+
+                    @Override
+                    public void write(final byte[] b, final int off, final int len) throws IOException {
+                        writeBody(b, off, len);
+                    }
+
+                    @Override
+                    public boolean isReady() {
+                        return true;
+                    }
+
+                    @Override
+                    public void setWriteListener(final WriteListener writeListener) {
+                        throw new IllegalStateException("Non-blocking I/O is not supported by an async API response.");
+                    }
+                };
+            }
+            return outputStream;
+        }
+
+        @Override
+        public PrintWriter getWriter() {
+            if (writer == null) {
+                final String charset = characterEncoding;
+                writer = new PrintWriter(new OutputStreamWriter(getOutputStream(),
+                        StringUtil.isBlank(charset) ? StandardCharsets.ISO_8859_1 : Charset.forName(charset)));
+            }
+            return writer;
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            if (writer != null) {
+                writer.flush();
+            }
+            if (state == OWNER) {
+                getHttpServletResponse().flushBuffer();
+            }
+        }
+
+        @Override
+        public boolean isCommitted() {
+            return state == OWNER && getHttpServletResponse().isCommitted();
+        }
+
+        @Override
+        public void reset() {
+            if (state == OWNER) {
+                getHttpServletResponse().reset();
+                return;
+            }
+            resetBuffer();
+            synchronized (operations) {
+                operations.clear();
+            }
+        }
+
+        @Override
+        public void resetBuffer() {
+            if (writer != null) {
+                writer.flush();
+            }
+            if (state == OWNER) {
+                getHttpServletResponse().resetBuffer();
+            } else {
+                body.reset();
+            }
+        }
+    }
+}
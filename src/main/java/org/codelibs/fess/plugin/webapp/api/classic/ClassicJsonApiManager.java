@@ -15,29 +15,28 @@
  */
 package org.codelibs.fess.plugin.webapp.api.classic;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.io.StringWriter;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.List;
-import java.util.Locale;
-import java.util.Map;
+import java.util.Objects;
 import java.util.UUID;
 import java.util.function.Supplier;
 
-import org.apache.commons.text.StringEscapeUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.codelibs.core.CoreLibConstants;
+import org.codelibs.core.exception.IORuntimeException;
 import org.codelibs.core.lang.StringUtil;
 import org.codelibs.fess.Constants;
 import org.codelibs.fess.api.BaseApiManager;
 import org.codelibs.fess.exception.InvalidAccessTokenException;
+import org.codelibs.fess.mylasta.direction.FessConfig;
 import org.codelibs.fess.util.ComponentUtil;
 import org.lastaflute.web.util.LaRequestUtil;
 import org.lastaflute.web.util.LaResponseUtil;
 
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 
 /**
@@ -61,6 +60,86 @@ public abstract class ClassicJsonApiManager extends BaseApiManager {
      */
     protected String mimeType = "application/json";
 
+    /**
+     * The encoder to write values as JSON.
+     */
+    protected JsonEncoder jsonEncoder = new JsonEncoder();
+
+    /**
+     * The request attribute that holds the metrics sample of the current request.
+     */
+    protected static final String METRICS_SAMPLE_ATTRIBUTE = "classicApiMetricsSample";
+
+    /**
+     * The system property to let concurrent identical requests share one backend call.
+     */
+    protected static final String COALESCING_ENABLED_PROPERTY = "api.classic.coalescing.enabled";
+
+    /**
+     * The system property to gzip-compress responses for clients that accept it.
+     */
+    protected static final String COMPRESSION_ENABLED_PROPERTY = "api.classic.compression.enabled";
+
+    /**
+     * The system property for the minimum response size in bytes to compress.
+     */
+    protected static final String COMPRESSION_MIN_SIZE_PROPERTY = "api.classic.compression.min_size";
+
+    /**
+     * The default minimum response size in bytes to compress.
+     */
+    protected static final int DEFAULT_COMPRESSION_MIN_SIZE = 1024;
+
+    /**
+     * The system property for the compression level from 1 (fastest) to 9 (smallest).
+     */
+    protected static final String COMPRESSION_LEVEL_PROPERTY = "api.classic.compression.level";
+
+    /**
+     * The default compression level.
+     */
+    protected static final int DEFAULT_COMPRESSION_LEVEL = 6;
+
+    /**
+     * The response status of requests rejected by admission control.
+     */
+    public static final int REJECTED_STATUS = 7;
+
+    /**
+     * The metrics of the API endpoints.
+     */
+    protected ApiMetrics apiMetrics = new ApiMetrics();
+
+    /**
+     * The processor of requests in async mode.
+     */
+    protected AsyncProcessor asyncProcessor = new AsyncProcessor();
+
+    /**
+     * The admission control of requests by type.
+     */
+    protected AdmissionController admissionController = new AdmissionController();
+
+    /**
+     * The encoded envelope prefix of the current product version.
+     */
+    private volatile EnvelopePrefix envelopePrefix;
+
+    /**
+     * Callback that writes the body of a JSON response, without the surrounding envelope,
+     * directly into the response stream.
+     */
+    @FunctionalInterface
+    public interface ResponseBody {
+        /**
+         * Writes the body content.
+         *
+         * @param buf the writer to append the body content to
+         * @throws IOException if an I/O error occurs
+         */
+        void write(JsonResponseWriter buf) throws IOException;
+    }
+
     /**
      * Writes a JSON response with the specified status, body, and exception.
      * Handles error formatting and authentication exceptions appropriately.
@@ -70,6 +149,18 @@ public abstract class ClassicJsonApiManager extends BaseApiManager {
      * @param t the exception that occurred, or null if no exception
      */
     protected void writeJsonResponse(final int status, final String body, final Throwable t) {
+        writeJsonResponse(status, toResponseBody(body), t);
+    }
+
+    /**
+     * Writes a JSON response with the specified status, body writer, and exception.
+     * Handles error formatting and authentication exceptions appropriately.
+     *
+     * @param status the HTTP status code
+     * @param body the writer of the response body content, or null if no body
+     * @param t the exception that occurred, or null if no exception
+     */
+    protected void writeJsonResponse(final int status, final ResponseBody body, final Throwable t) {
         if (t == null) {
             writeJsonResponse(status, body, (String) null);
             return;
@@ -81,6 +172,17 @@ public abstract class ClassicJsonApiManager extends BaseApiManager {
             response.setHeader("WWW-Authenticate", "Bearer error=\"" + e.getType() + "\"");
         }
 
+        writeJsonResponse(status, body, createErrorMessage(t));
+    }
+
+    /**
+     * Creates the error message of an exception for a response.
+     * The stack trace is included if configured; otherwise an error code is returned and the details are logged with it.
+     *
+     * @param t the exception
+     * @return the error message
+     */
+    protected String createErrorMessage(final Throwable t) {
         final Supplier<String> stacktraceString = () -> {
             final StringBuilder sb = new StringBuilder();
             if (StringUtil.isBlank(t.getMessage())) {
@@ -107,7 +209,7 @@ public abstract class ClassicJsonApiManager extends BaseApiManager {
                 logger.warn("[{}] {}", errorCode, t.getMessage());
             }
         }
-        writeJsonResponse(status, body, message);
+        return message;
     }
 
     /**
@@ -118,13 +220,22 @@ public abstract class ClassicJsonApiManager extends BaseApiManager {
      * @param errMsg the error message to include in the response
      */
     protected void writeJsonResponse(final int status, final String body, final String errMsg) {
-        String content = null;
+        writeJsonResponse(status, toResponseBody(body), errMsg);
+    }
+
+    /**
+     * Writes a JSON response with the specified status, body writer, and error message.
+     *
+     * @param status the HTTP status code
+     * @param body the writer of the response body content, or null if no body
+     * @param errMsg the error message to include in the response
+     */
+    protected void writeJsonResponse(final int status, final ResponseBody body, final String errMsg) {
+        final ResponseBody content;
         if (status == 0) {
-            if (StringUtil.isNotBlank(body)) {
-                content = body;
-            }
+            content = body;
         } else {
-            content = "\"message\":" + escapeJson(errMsg);
+            content = buf -> writeMessage(buf, errMsg);
         }
         writeJsonResponse(status, content);
     }
@@ -137,31 +248,211 @@ public abstract class ClassicJsonApiManager extends BaseApiManager {
      * @param body the response body content
      */
     protected void writeJsonResponse(final int status, final String body) {
-        final String callback = LaRequestUtil.getOptionalRequest().map(req -> req.getParameter("callback")).orElse(null);
+        writeJsonResponse(status, toResponseBody(body));
+    }
+
+    /**
+     * Writes a JSON response with the specified status and body writer.
+     * The envelope, JSONP callback wrapping and body are streamed to the servlet
+     * output stream as UTF-8 bytes.
+     *
+     * @param status the HTTP status code
+     * @param body the writer of the response body content, or null if no body
+     */
+    protected void writeJsonResponse(final int status, final ResponseBody body) {
+        writeJsonResponse(LaResponseUtil.getResponse(), status, body);
+    }
+
+    /**
+     * Writes a JSON response with the specified status and body writer to the given response.
+     *
+     * @param response the HTTP servlet response to write to
+     * @param status the HTTP status code
+     * @param body the writer of the response body content, or null if no body
+     */
+    protected void writeJsonResponse(final HttpServletResponse response, final int status, final ResponseBody body) {
+        final long startTime = System.nanoTime();
+        final HttpServletRequest request = LaRequestUtil.getOptionalRequest().orElse(null);
+        final String callback = request != null ? request.getParameter("callback") : null;
         final boolean isJsonp = ComponentUtil.getFessConfig().isApiJsonpEnabled() && StringUtil.isNotBlank(callback);
 
-        final StringBuilder buf = new StringBuilder(1000);
-        if (isJsonp) {
-            buf.append(escapeCallbackName(callback));
-            buf.append('(');
+        response.setContentType(mimeType + "; charset=" + Constants.UTF_8);
+        writeHeaders(response);
+        try (final JsonResponseWriter buf = new JsonResponseWriter(getOutputStream(request, response))) {
+            if (isJsonp) {
+                buf.append(escapeCallbackName(callback));
+                buf.append('(');
+            }
+            buf.write(getEnvelopePrefix());
+            buf.append(status);
+            if (body != null) {
+                buf.append(',');
+                body.write(buf);
+            }
+            buf.append('}');
+            buf.append('}');
+            if (isJsonp) {
+                buf.append(')');
+            }
+        } catch (final IOException e) {
+            throw new IORuntimeException(e);
+        } finally {
+            if (request != null) {
+                getMetricsSample(request).serialized(status, System.nanoTime() - startTime);
+            }
+        }
+    }
+
+    /**
+     * Writes the response of an async request that did not complete in time,
+     * an error with status 1 and the HTTP status 503 Service Unavailable.
+     *
+     * @param request the HTTP servlet request
+     * @param response the HTTP servlet response
+     */
+    protected void writeAsyncTimeoutResponse(final HttpServletRequest request, final HttpServletResponse response) {
+        response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        writeJsonResponse(response, 1, buf -> writeMessage(buf, "Request timed out."));
+    }
+
+    /**
+     * Writes the response of a request rejected by admission control, an error with status {@value #REJECTED_STATUS}
+     * and the HTTP status 503 Service Unavailable with a Retry-After header.
+     *
+     * @param response the HTTP servlet response
+     */
+    protected void writeRejectedResponse(final HttpServletResponse response) {
+        response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        response.setHeader("Retry-After", "1");
+        writeJsonResponse(response, REJECTED_STATUS, buf -> writeMessage(buf, "Too many requests."));
+    }
+
+    /**
+     * Writes the message member of an error response.
+     *
+     * @param buf the writer to append to
+     * @param message the message
+     * @throws IOException if an I/O error occurs
+     */
+    protected void writeMessage(final JsonResponseWriter buf, final String message) throws IOException {
+        buf.write(JsonFragments.MESSAGE);
+        jsonEncoder.createContext(buf).writeValue(message);
+    }
+
+    /**
+     * Returns the encoded start of the response envelope up to the status value,
+     * e.g. <code>{"response":{"version":"15.5.0","status":</code>.
+     * The bytes are cached and encoded again only when the product version changes.
+     *
+     * @return the UTF-8 encoded envelope prefix, which must not be modified
+     */
+    protected byte[] getEnvelopePrefix() {
+        final String version = ComponentUtil.getSystemHelper().getProductVersion();
+        final EnvelopePrefix current = envelopePrefix;
+        if (current != null && Objects.equals(current.version, version)) {
+            return current.bytes;
+        }
+        final EnvelopePrefix prefix = new EnvelopePrefix(version,
+                JsonFragments.encode("{\"response\":{\"version\":\"" + version + "\",\"status\":"));
+        envelopePrefix = prefix;
+        return prefix.bytes;
+    }
+
+    /**
+     * Returns the stream to write a response body to.
+     * If compression is enabled and the client accepts gzip, the body is compressed once it reaches the minimum size.
+     *
+     * @param request the HTTP servlet request, or null if not available
+     * @param response the HTTP servlet response
+     * @return the output stream
+     * @throws IOException if an I/O error occurs
+     */
+    protected OutputStream getOutputStream(final HttpServletRequest request, final HttpServletResponse response) throws IOException {
+        return getOutputStream(request, response,
+                ComponentUtil.getFessConfig().getSystemPropertyAsInt(COMPRESSION_MIN_SIZE_PROPERTY, DEFAULT_COMPRESSION_MIN_SIZE));
+    }
+
+    /**
+     * Returns the stream to write a streamed response body to, such as a scroll export.
+     * If compression is enabled and the client accepts gzip, the body is compressed from the first byte,
+     * since holding bytes back until the minimum size would keep flushes from reaching the client.
+     *
+     * @param request the HTTP servlet request, or null if not available
+     * @param response the HTTP servlet response
+     * @return the output stream
+     * @throws IOException if an I/O error occurs
+     */
+    protected OutputStream getStreamingOutputStream(final HttpServletRequest request, final HttpServletResponse response)
+            throws IOException {
+        return getOutputStream(request, response, 0);
+    }
+
+    private OutputStream getOutputStream(final HttpServletRequest request, final HttpServletResponse response, final int minSize)
+            throws IOException {
+        final FessConfig fessConfig = ComponentUtil.getFessConfig();
+        if (!fessConfig.getSystemPropertyAsBoolean(COMPRESSION_ENABLED_PROPERTY, false)) {
+            return response.getOutputStream();
         }
-        buf.append("{\"response\":");
-        buf.append("{\"version\":\"");
-        buf.append(ComponentUtil.getSystemHelper().getProductVersion());
-        buf.append("\",");
-        buf.append("\"status\":");
-        buf.append(status);
-        if (StringUtil.isNotBlank(body)) {
-            buf.append(',');
-            buf.append(body);
+        response.addHeader("Vary", "Accept-Encoding");
+        if (request == null || !CompressingOutputStream.acceptsGzip(request.getHeader("Accept-Encoding"))) {
+            return response.getOutputStream();
         }
-        buf.append('}');
-        buf.append('}');
-        if (isJsonp) {
-            buf.append(')');
+        final int level = fessConfig.getSystemPropertyAsInt(COMPRESSION_LEVEL_PROPERTY, DEFAULT_COMPRESSION_LEVEL);
+        return new CompressingOutputStream(response, minSize, Math.max(1, Math.min(level, 9)));
+    }
+
+    /**
+     * Serializes a response body to bytes, e.g. to cache it or share it between requests.
+     *
+     * @param body the writer of the response body content
+     * @return the UTF-8 encoded body
+     * @throws IOException if an I/O error occurs
+     */
+    protected byte[] toBytes(final ResponseBody body) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (final JsonResponseWriter writer = new JsonResponseWriter(out)) {
+            body.write(writer);
         }
-        write(buf.toString(), mimeType, Constants.UTF_8);
+        return out.toByteArray();
+    }
+
+    /**
+     * Starts measuring a request and binds the sample to the request.
+     *
+     * @param request the HTTP servlet request
+     * @param endpoint the endpoint name the request is recorded under
+     * @return the started sample, to be ended when the request completes
+     */
+    protected ApiMetrics.Sample startMetricsSample(final HttpServletRequest request, final String endpoint) {
+        final ApiMetrics.Sample sample = apiMetrics.start(endpoint);
+        request.setAttribute(METRICS_SAMPLE_ATTRIBUTE, sample);
+        return sample;
+    }
 
+    /**
+     * Gets the metrics sample bound to a request.
+     *
+     * @param request the HTTP servlet request
+     * @return the sample, or a sample that records nothing if the request is not measured
+     */
+    protected ApiMetrics.Sample getMetricsSample(final HttpServletRequest request) {
+        if (request.getAttribute(METRICS_SAMPLE_ATTRIBUTE) instanceof final ApiMetrics.Sample sample) {
+            return sample;
+        }
+        return ApiMetrics.Sample.NONE;
+    }
+
+    /**
+     * Converts a pre-built body string to a body writer.
+     *
+     * @param body the response body content
+     * @return the body writer, or null if the body is blank
+     */
+    protected ResponseBody toResponseBody(final String body) {
+        if (StringUtil.isBlank(body)) {
+            return null;
+        }
+        return buf -> buf.append(body);
     }
 
     /**
@@ -188,51 +479,10 @@ public abstract class ClassicJsonApiManager extends BaseApiManager {
         }
 
         final StringBuilder buf = new StringBuilder(255);
-        if (obj instanceof String[]) {
-            buf.append('[');
-            boolean first = true;
-            for (final Object child : (String[]) obj) {
-                if (first) {
-                    first = false;
-                } else {
-                    buf.append(',');
-                }
-                buf.append(escapeJson(child));
-            }
-            buf.append(']');
-        } else if (obj instanceof List<?>) {
-            buf.append('[');
-            boolean first = true;
-            for (final Object child : (List<?>) obj) {
-                if (first) {
-                    first = false;
-                } else {
-                    buf.append(',');
-                }
-                buf.append(escapeJson(child));
-            }
-            buf.append(']');
-        } else if (obj instanceof Map<?, ?>) {
-            buf.append('{');
-            boolean first = true;
-            for (final Map.Entry<?, ?> entry : ((Map<?, ?>) obj).entrySet()) {
-                if (first) {
-                    first = false;
-                } else {
-                    buf.append(',');
-                }
-                buf.append(escapeJson(entry.getKey())).append(':').append(escapeJson(entry.getValue()));
-            }
-            buf.append('}');
-        } else if ((obj instanceof Integer) || (obj instanceof Long) || (obj instanceof Float) || (obj instanceof Double)) {
-            buf.append((obj));
-        } else if (obj instanceof Boolean) {
-            buf.append(obj.toString());
-        } else if (obj instanceof Date) {
-            final SimpleDateFormat sdf = new SimpleDateFormat(CoreLibConstants.DATE_FORMAT_ISO_8601_EXTEND, Locale.ROOT);
-            buf.append('\"').append(StringEscapeUtils.escapeJson(sdf.format(obj))).append('\"');
-        } else {
-            buf.append('\"').append(StringEscapeUtils.escapeJson(obj.toString())).append('\"');
+        try {
+            jsonEncoder.encode(obj, buf);
+        } catch (final IOException e) {
+            throw new IORuntimeException(e);
         }
         return buf.toString();
     }
@@ -246,4 +496,80 @@ public abstract class ClassicJsonApiManager extends BaseApiManager {
         this.mimeType = mimeType;
     }
 
+    /**
+     * Sets the encoder to write values as JSON.
+     *
+     * @param jsonEncoder the JSON encoder to set
+     */
+    public void setJsonEncoder(final JsonEncoder jsonEncoder) {
+        this.jsonEncoder = jsonEncoder;
+    }
+
+    /**
+     * Gets the metrics of the API endpoints.
+     *
+     * @return the API metrics
+     */
+    public ApiMetrics getApiMetrics() {
+        return apiMetrics;
+    }
+
+    /**
+     * Sets the metrics of the API endpoints, to share them between API managers.
+     *
+     * @param apiMetrics the API metrics to set
+     */
+    public void setApiMetrics(final ApiMetrics apiMetrics) {
+        this.apiMetrics = apiMetrics;
+    }
+
+    /**
+     * Gets the processor of requests in async mode.
+     *
+     * @return the async processor
+     */
+    public AsyncProcessor getAsyncProcessor() {
+        return asyncProcessor;
+    }
+
+    /**
+     * Sets the processor of requests in async mode, to share its executor between API managers.
+     *
+     * @param asyncProcessor the async processor to set
+     */
+    public void setAsyncProcessor(final AsyncProcessor asyncProcessor) {
+        this.asyncProcessor = asyncProcessor;
+    }
+
+    /**
+     * Gets the admission control of requests by type.
+     *
+     * @return the admission controller
+     */
+    public AdmissionController getAdmissionController() {
+        return admissionController;
+    }
+
+    /**
+     * Sets the admission control of requests by type, to share its limits between API managers.
+     *
+     * @param admissionController the admission controller to set
+     */
+    public void setAdmissionController(final AdmissionController admissionController) {
+        this.admissionController = admissionController;
+    }
+
+    /**
+     * Encoded envelope prefix for a product version.
+     */
+    private static class EnvelopePrefix {
+        final String version;
+
+        final byte[] bytes;
+
+        EnvelopePrefix(final String version, final byte[] bytes) {
+            this.version = version;
+            this.bytes = bytes;
+        }
+    }
 }
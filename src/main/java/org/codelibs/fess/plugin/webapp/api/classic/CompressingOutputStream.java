@@ -0,0 +1,183 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.classic;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Output stream that gzip-compresses a response body once it reaches a minimum size.
+ * Bytes are held back until the minimum size is reached, at which point the Content-Encoding header
+ * is set and the held and following bytes are compressed as they are written. A body that stays below
+ * the minimum size is written uncompressed when the stream is closed. Flushing a compressed stream
+ * emits all data written so far, so streamed responses keep reaching the client.
+ */
+public class CompressingOutputStream extends OutputStream {
+
+    /** The size of the buffer used by the compressor. */
+    protected static final int BUFFER_SIZE = 8192;
+
+    /** The response to write to. */
+    protected final HttpServletResponse response;
+
+    /** The minimum body size in bytes to compress. */
+    protected final int minSize;
+
+    /** The compression level from 1 to 9. */
+    protected final int level;
+
+    /** The bytes held back until the minimum size is reached, or null once compressing. */
+    protected ByteArrayOutputStream pending;
+
+    /** The compressing stream, or null until the minimum size is reached. */
+    protected OutputStream out;
+
+    /** Whether this stream is closed. */
+    protected boolean closed;
+
+    /**
+     * Constructs a CompressingOutputStream.
+     *
+     * @param response the response to write to
+     * @param minSize the minimum body size in bytes to compress
+     * @param level the compression level from 1 to 9
+     */
+    public CompressingOutputStream(final HttpServletResponse response, final int minSize, final int level) {
+        this.response = response;
+        this.minSize = minSize;
+        this.level = level;
+        this.pending = new ByteArrayOutputStream(Math.max(Math.min(minSize, BUFFER_SIZE), 32));
+    }
+
+    /**
+     * Checks if an Accept-Encoding header accepts gzip.
+     *
+     * @param acceptEncoding the header value, may be null
+     * @return true if gzip is acceptable
+     */
+    public static boolean acceptsGzip(final String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        boolean accepted = false;
+        for (final String value : acceptEncoding.split(",")) {
+            final String[] params = value.split(";");
+            final String coding = params[0].trim().toLowerCase(Locale.ROOT);
+            if (!"gzip".equals(coding) && !"x-gzip".equals(coding) && !"*".equals(coding)) {
+                continue;
+            }
+            boolean acceptable = true;
+            for (int i = 1; i < params.length; i++) {
+                final String param = params[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        acceptable = Double.parseDouble(param.substring(2)) > 0.0;
+                    } catch (final NumberFormatException e) {
+                        acceptable = false;
+                    }
+                }
+            }
+            if (!"*".equals(coding)) {
+                // an explicit gzip entry overrides the wildcard
+                return acceptable;
+            }
+            accepted = acceptable;
+        }
+        return accepted;
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        if (out != null) {
+            out.write(b);
+            return;
+        }
+        pending.write(b);
+        if (pending.size() >= minSize) {
+            startCompression();
+        }
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+        if (out != null) {
+            out.write(b, off, len);
+            return;
+        }
+        pending.write(b, off, len);
+        if (pending.size() >= minSize) {
+            startCompression();
+        }
+    }
+
+    /**
+     * Flushes the compressed data written so far. Data held back below the minimum size is kept
+     * until the minimum size is reached or the stream is closed.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public void flush() throws IOException {
+        if (out != null) {
+            out.flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (out != null) {
+            out.close();
+        } else {
+            try (OutputStream raw = response.getOutputStream()) {
+                pending.writeTo(raw);
+            }
+        }
+    }
+
+    /**
+     * Checks if the body is being compressed.
+     *
+     * @return true once the minimum size is reached
+     */
+    public boolean isCompressing() {
+        return out != null;
+    }
+
+    /**
+     * Sets the Content-Encoding header and starts compressing the held and following bytes.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    protected void startCompression() throws IOException {
+        response.setHeader("Content-Encoding", "gzip");
+        out = new GZIPOutputStream(response.getOutputStream(), BUFFER_SIZE, true) {
+            {
+                def.setLevel(level);
+            }
+        };
+        pending.writeTo(out);
+        pending = null;
+    }
+}
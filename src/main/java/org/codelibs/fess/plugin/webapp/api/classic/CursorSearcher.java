@@ -0,0 +1,212 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.classic;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+
+import org.codelibs.core.lang.StringUtil;
+import org.codelibs.fess.entity.SearchRequestParams;
+import org.codelibs.fess.mylasta.action.FessUserBean;
+import org.codelibs.fess.mylasta.direction.FessConfig;
+import org.codelibs.fess.opensearch.client.SearchEngineClient.SearchCondition;
+import org.codelibs.fess.rank.fusion.DefaultSearcher;
+import org.codelibs.fess.rank.fusion.SearchResult;
+import org.codelibs.fess.util.ComponentUtil;
+import org.dbflute.optional.OptionalThing;
+import org.opensearch.action.search.SearchRequestBuilder;
+import org.opensearch.search.SearchHit;
+import org.opensearch.search.builder.SearchSourceBuilder;
+import org.opensearch.search.sort.SortBuilders;
+import org.opensearch.search.sort.SortOrder;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Searcher of cursor pages, which continue after the sort values of the last hit of the previous page
+ * instead of skipping the preceding hits, so that every page costs the same regardless of its depth.
+ * The sort of the search is completed with the document ID as a tie breaker so that the sort values of each hit are unique.
+ * Result collapsing and rescoring are not applied to cursor pages since they cannot be combined with search_after.
+ * The sort values of each hit are kept in the {@value #SORT_VALUES_FIELD} field of its document.
+ */
+public class CursorSearcher extends DefaultSearcher {
+
+    /** The request attribute holding the sort values to continue after, or null for the first page. */
+    public static final String SEARCH_AFTER_ATTRIBUTE = "classicApi.searchAfter";
+
+    /** The document field holding the sort values of a hit. */
+    public static final String SORT_VALUES_FIELD = "classicApi.sortValues";
+
+    /** The factory of generators and parsers for cursors. */
+    protected static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    /**
+     * Constructs a CursorSearcher.
+     */
+    public CursorSearcher() {
+        name = "cursor";
+    }
+
+    /**
+     * Overridden only to make the search visible to the API managers in this package.
+     */
+    @Override
+    protected SearchResult search(final String query, final SearchRequestParams params, final OptionalThing<FessUserBean> userBean) {
+        return super.search(query, params, userBean);
+    }
+
+    @Override
+    protected SearchCondition<SearchRequestBuilder> createSearchCondition(final String query, final SearchRequestParams params,
+            final OptionalThing<FessUserBean> userBean) {
+        final SearchCondition<SearchRequestBuilder> condition = super.createSearchCondition(query, params, userBean);
+        return searchRequestBuilder -> {
+            if (!condition.build(searchRequestBuilder)) {
+                return false;
+            }
+            applyCursor(searchRequestBuilder, (Object[]) params.getAttribute(SEARCH_AFTER_ATTRIBUTE));
+            return true;
+        };
+    }
+
+    /**
+     * Turns a built search request into a cursor page request.
+     *
+     * @param searchRequestBuilder the built search request
+     * @param searchAfter the sort values to continue after, or null for the first page
+     */
+    protected void applyCursor(final SearchRequestBuilder searchRequestBuilder, final Object[] searchAfter) {
+        final FessConfig fessConfig = ComponentUtil.getFessConfig();
+        final SearchSourceBuilder source = searchRequestBuilder.request().source();
+        if (source == null || source.sorts() == null || source.sorts().isEmpty()) {
+            searchRequestBuilder.addSort(SortBuilders.scoreSort().order(SortOrder.DESC));
+        }
+        searchRequestBuilder.addSort(SortBuilders.fieldSort(fessConfig.getIndexFieldDocId()).order(SortOrder.ASC));
+        searchRequestBuilder.setFrom(0);
+        searchRequestBuilder.setCollapse(null);
+        searchRequestBuilder.clearRescorers();
+        if (searchAfter != null) {
+            searchRequestBuilder.searchAfter(searchAfter);
+        }
+    }
+
+    @Override
+    protected Map<String, Object> parseSearchHit(final FessConfig fessConfig, final String hlPrefix, final SearchHit searchHit) {
+        final Map<String, Object> docMap = super.parseSearchHit(fessConfig, hlPrefix, searchHit);
+        docMap.put(SORT_VALUES_FIELD, searchHit.getSortValues());
+        return docMap;
+    }
+
+    /**
+     * Encodes sort values into an opaque cursor, a URL-safe Base64 encoded JSON array.
+     *
+     * @param sortValues the sort values of a hit
+     * @return the cursor
+     * @throws IOException if the values cannot be encoded
+     */
+    public static String encodeCursor(final Object[] sortValues) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(64);
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(out)) {
+            generator.writeStartArray();
+            for (final Object value : sortValues) {
+                if (value == null) {
+                    generator.writeNull();
+                } else if (value instanceof final Integer v) {
+                    generator.writeNumber(v);
+                } else if (value instanceof final Long v) {
+                    generator.writeNumber(v);
+                } else if (value instanceof final BigInteger v) {
+                    generator.writeNumber(v);
+                } else if (value instanceof final BigDecimal v) {
+                    generator.writeNumber(v);
+                } else if (value instanceof final Number v) {
+                    generator.writeNumber(v.doubleValue());
+                } else if (value instanceof final Boolean v) {
+                    generator.writeBoolean(v);
+                } else {
+                    generator.writeString(value.toString());
+                }
+            }
+            generator.writeEndArray();
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(out.toByteArray());
+    }
+
+    /**
+     * Decodes the sort values of a cursor created by {@link #encodeCursor(Object[])}.
+     *
+     * @param cursor the cursor
+     * @return the sort values
+     * @throws IOException if the cursor is invalid
+     */
+    public static Object[] decodeCursor(final String cursor) throws IOException {
+        if (StringUtil.isBlank(cursor)) {
+            throw new IOException("The cursor is empty.");
+        }
+        final byte[] bytes;
+        try {
+            bytes = Base64.getUrlDecoder().decode(cursor.trim());
+        } catch (final IllegalArgumentException e) {
+            throw new IOException("The cursor is not Base64: " + cursor, e);
+        }
+        final List<Object> values = new ArrayList<>();
+        try (JsonParser parser = JSON_FACTORY.createParser(bytes)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new JsonParseException(parser, "Expected an array of sort values: " + new String(bytes, StandardCharsets.UTF_8));
+            }
+            JsonToken token;
+            while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                if (token == null) {
+                    throw new JsonParseException(parser, "Unexpected end of sort values.");
+                }
+                switch (token) {
+                case VALUE_NUMBER_INT:
+                    values.add(parser.getNumberValue());
+                    break;
+                case VALUE_NUMBER_FLOAT:
+                    values.add(parser.getDoubleValue());
+                    break;
+                case VALUE_STRING:
+                    values.add(parser.getText());
+                    break;
+                case VALUE_TRUE:
+                case VALUE_FALSE:
+                    values.add(parser.getBooleanValue());
+                    break;
+                case VALUE_NULL:
+                    values.add(null);
+                    break;
+                default:
+                    throw new JsonParseException(parser, "Expected a sort value.");
+                }
+            }
+        }
+        if (values.isEmpty()) {
+            throw new IOException("The cursor has no sort values.");
+        }
+        return values.toArray();
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.classic;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.codelibs.fess.helper.UserInfoHelper;
+
+/**
+ * Hash sets of the result document IDs of recent queries, for the membership checks of favorite requests.
+ * The set of a query ID is reused only while {@link UserInfoHelper#getResultDocIds(String)} returns the same array
+ * for it, so a set never outlives the IDs it was built from. The least recently used sets are evicted beyond the maximum number.
+ */
+public class DocIdSetCache {
+
+    /** The default maximum number of sets. */
+    protected static final int DEFAULT_MAX_ENTRIES = 1000;
+
+    /** The maximum number of sets. */
+    protected final int maxEntries;
+
+    /** The sets by query ID in access order, guarded by itself. */
+    private final Map<String, Entry> entryMap;
+
+    /**
+     * Constructs a DocIdSetCache with the default maximum number of sets.
+     */
+    public DocIdSetCache() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * Constructs a DocIdSetCache.
+     *
+     * @param maxEntries the maximum number of sets
+     */
+    public DocIdSetCache(final int maxEntries) {
+        this.maxEntries = maxEntries;
+        entryMap = new LinkedHashMap<>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, Entry> eldest) {
+                return size() > DocIdSetCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Returns the set of the result document IDs of a query.
+     *
+     * @param queryId the query ID
+     * @param docIds the result document IDs of the query
+     * @return the unmodifiable set of the document IDs
+     */
+    public Set<String> get(final String queryId, final String[] docIds) {
+        synchronized (entryMap) {
+            final Entry entry = entryMap.get(queryId);
+            if (entry != null && entry.docIds == docIds) {
+                return entry.docIdSet;
+            }
+        }
+        final Set<String> docIdSet = new HashSet<>(docIds.length * 4 / 3 + 1);
+        Collections.addAll(docIdSet, docIds);
+        final Entry entry = new Entry(docIds, Collections.unmodifiableSet(docIdSet));
+        synchronized (entryMap) {
+            entryMap.put(queryId, entry);
+        }
+        return entry.docIdSet;
+    }
+
+    /**
+     * Returns the number of sets.
+     *
+     * @return the set count
+     */
+    public int size() {
+        synchronized (entryMap) {
+            return entryMap.size();
+        }
+    }
+
+    /**
+     * Removes all sets.
+     */
+    public void clear() {
+        synchronized (entryMap) {
+            entryMap.clear();
+        }
+    }
+
+    /**
+     * Document ID set built from a result document ID array.
+     */
+    private static class Entry {
+        final String[] docIds;
+
+        final Set<String> docIdSet;
+
+        Entry(final String[] docIds, final Set<String> docIdSet) {
+            this.docIds = docIds;
+            this.docIdSet = docIdSet;
+        }
+    }
+}
@@ -0,0 +1,366 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.classic;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.codelibs.fess.mylasta.direction.FessConfig;
+import org.codelibs.fess.opensearch.client.SearchEngineClient;
+import org.codelibs.fess.util.ComponentUtil;
+import org.opensearch.action.bulk.BulkItemResponse;
+import org.opensearch.action.bulk.BulkRequestBuilder;
+import org.opensearch.action.bulk.BulkResponse;
+import org.opensearch.script.Script;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Write-behind updater of the favorite counts of documents.
+ * The increments of favorite requests are summed per document in memory, in stripes locked independently,
+ * and written to the search engine as one bulk request of scripted updates, without a refresh,
+ * every flush interval or as soon as the number of pending increments reaches the batch size.
+ * Updates that the bulk response reports as failed are retried with the next flush, up to {@value #MAX_ATTEMPTS} attempts.
+ * If the bulk request itself fails, it is unknown which updates were applied, so its increments are dropped and logged
+ * rather than retried, which could count a favorite twice; the favorite log keeps the record to recount from.
+ * The pending increments are flushed when the updater is destroyed.
+ * The favorite log, which is the record of a favorite, is written by the caller before the increment is added.
+ */
+public class FavoriteCountUpdater {
+
+    private static final Logger logger = LogManager.getLogger(FavoriteCountUpdater.class);
+
+    /**
+     * The system property to enable write-behind updates of favorite counts.
+     */
+    protected static final String ENABLED_PROPERTY = "api.classic.favorite.write_behind.enabled";
+
+    /**
+     * The system property for the interval in milliseconds between flushes.
+     */
+    protected static final String FLUSH_INTERVAL_PROPERTY = "api.classic.favorite.write_behind.flush_interval";
+
+    /**
+     * The default interval in milliseconds between flushes.
+     */
+    protected static final int DEFAULT_FLUSH_INTERVAL = 1000;
+
+    /**
+     * The system property for the number of pending increments that triggers a flush before the interval elapses.
+     */
+    protected static final String BATCH_SIZE_PROPERTY = "api.classic.favorite.write_behind.batch_size";
+
+    /**
+     * The default number of pending increments that triggers a flush.
+     */
+    protected static final int DEFAULT_BATCH_SIZE = 1000;
+
+    /**
+     * The number of stripes of pending updates, a power of two.
+     */
+    protected static final int STRIPE_COUNT = 16;
+
+    /**
+     * The number of retries of an update in conflict with a concurrent update of the same document.
+     */
+    protected static final int RETRY_ON_CONFLICT = 3;
+
+    /**
+     * The number of flushes that attempt an update reported as failed before it is dropped.
+     */
+    protected static final int MAX_ATTEMPTS = 3;
+
+    /**
+     * The name of the script parameter holding the increment.
+     */
+    protected static final String DELTA_PARAM = "delta";
+
+    /**
+     * The pending updates by document ID, in stripes.
+     */
+    private final Stripe[] stripes = new Stripe[STRIPE_COUNT];
+
+    /**
+     * The number of pending increments.
+     */
+    private final AtomicLong pendingCount = new AtomicLong();
+
+    /**
+     * Whether a flush triggered by the batch size is scheduled.
+     */
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+    /**
+     * The scheduler of flushes, created on first use.
+     */
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Whether this updater is destroyed.
+     */
+    private volatile boolean destroyed;
+
+    /**
+     * Constructs a FavoriteCountUpdater.
+     */
+    public FavoriteCountUpdater() {
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * Checks if favorite counts are updated in write-behind mode.
+     *
+     * @return true if increments are to be passed to {@link #increment(String, Script)}
+     */
+    public boolean isEnabled() {
+        return !destroyed && ComponentUtil.getFessConfig().getSystemPropertyAsBoolean(ENABLED_PROPERTY, false);
+    }
+
+    /**
+     * Adds one to the favorite count of a document.
+     *
+     * @param id the ID of the document in the index
+     * @param script the update script, which adds the {@value #DELTA_PARAM} parameter to the favorite count
+     */
+    public void increment(final String id, final Script script) {
+        add(id, script, 1L, 0);
+        final FessConfig fessConfig = ComponentUtil.getFessConfig();
+        final ScheduledExecutorService executor = getScheduler(fessConfig);
+        if (executor == null) {
+            flush();
+        } else if (pendingCount.get() >= fessConfig.getSystemPropertyAsInt(BATCH_SIZE_PROPERTY, DEFAULT_BATCH_SIZE)
+                && flushScheduled.compareAndSet(false, true)) {
+            try {
+                executor.execute(() -> {
+                    flushScheduled.set(false);
+                    flush();
+                });
+            } catch (final RejectedExecutionException e) {
+                flushScheduled.set(false);
+                flush();
+            }
+        }
+    }
+
+    /**
+     * Writes the pending updates to the search engine.
+     *
+     * @return the number of documents updated
+     */
+    public synchronized int flush() {
+        final Map<String, Update> updates = drain();
+        if (updates.isEmpty()) {
+            return 0;
+        }
+        final Set<String> failedIds;
+        try {
+            failedIds = write(updates);
+        } catch (final Exception e) {
+            logger.warn("Failed to update the favorite counts of {} documents. It is unknown whether they were applied, "
+                    + "so they are not retried: {}", updates.size(), updates.keySet(), e);
+            return 0;
+        }
+        int failed = 0;
+        for (final String id : failedIds) {
+            final Update update = updates.get(id);
+            if (update == null) {
+                continue;
+            }
+            failed++;
+            if (destroyed || update.attempts + 1 >= MAX_ATTEMPTS) {
+                logger.warn("Dropped the favorite count increment {} of {} after {} attempts.", update.delta, id, update.attempts + 1);
+            } else {
+                add(id, update.script, update.delta, update.attempts + 1);
+            }
+        }
+        return updates.size() - failed;
+    }
+
+    /**
+     * Returns the number of pending increments.
+     *
+     * @return the pending increment count
+     */
+    public long getPendingCount() {
+        return pendingCount.get();
+    }
+
+    /**
+     * Stops the scheduled flushes and flushes the pending updates.
+     */
+    @PreDestroy
+    public void destroy() {
+        final ScheduledExecutorService executor;
+        synchronized (stripes) {
+            destroyed = true;
+            executor = scheduler;
+            scheduler = null;
+        }
+        if (executor != null) {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        flush();
+    }
+
+    /**
+     * Writes updates to the search engine as one bulk request.
+     *
+     * @param updates the updates by document ID
+     * @return the IDs of the documents whose update failed
+     */
+    protected Set<String> write(final Map<String, Update> updates) {
+        final FessConfig fessConfig = ComponentUtil.getFessConfig();
+        final SearchEngineClient client = ComponentUtil.getSearchEngineClient();
+        final String index = fessConfig.getIndexDocumentUpdateIndex();
+        final String field = fessConfig.getIndexFieldFavoriteCount();
+        final BulkRequestBuilder builder = client.prepareBulk();
+        updates.forEach((id, update) -> {
+            final Map<String, Object> params = new HashMap<>(update.script.getParams());
+            params.put(DELTA_PARAM, update.delta);
+            final Script template = update.script;
+            final Script script = new Script(template.getType(), template.getLang(), template.getIdOrCode(), template.getOptions(), params);
+            builder.add(client.prepareUpdate(index, id)
+                    .setScript(script)
+                    .setUpsert(Collections.singletonMap(field, update.delta))
+                    .setRetryOnConflict(RETRY_ON_CONFLICT));
+        });
+        final BulkResponse response = builder.execute().actionGet(fessConfig.getIndexBulkTimeout());
+        if (!response.hasFailures()) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Updated the favorite counts of {} documents.", updates.size());
+            }
+            return Collections.emptySet();
+        }
+        logger.warn("Failed to update some favorite counts: {}", response.buildFailureMessage());
+        final Set<String> failedIds = new HashSet<>();
+        for (final BulkItemResponse item : response.getItems()) {
+            if (item.isFailed()) {
+                failedIds.add(item.getId());
+            }
+        }
+        return failedIds;
+    }
+
+    /**
+     * Adds an increment to the pending update of a document.
+     *
+     * @param id the document ID
+     * @param script the update script
+     * @param delta the increment
+     * @param attempts the number of flushes that already attempted the increment
+     */
+    protected void add(final String id, final Script script, final long delta, final int attempts) {
+        final Stripe stripe = stripes[id.hashCode() & STRIPE_COUNT - 1];
+        synchronized (stripe) {
+            final Update update = stripe.updateMap.get(id);
+            if (update == null) {
+                stripe.updateMap.put(id, new Update(script, delta, attempts));
+            } else {
+                update.delta += delta;
+                update.attempts = Math.max(update.attempts, attempts);
+            }
+        }
+        pendingCount.addAndGet(delta);
+    }
+
+    /**
+     * Removes the pending updates from all stripes.
+     *
+     * @return the pending updates by document ID
+     */
+    protected Map<String, Update> drain() {
+        final Map<String, Update> updates = new HashMap<>();
+        for (final Stripe stripe : stripes) {
+            final Map<String, Update> updateMap;
+            synchronized (stripe) {
+                if (stripe.updateMap.isEmpty()) {
+                    continue;
+                }
+                updateMap = stripe.updateMap;
+                stripe.updateMap = new HashMap<>();
+            }
+            updates.putAll(updateMap);
+        }
+        updates.values().forEach(update -> pendingCount.addAndGet(-update.delta));
+        return updates;
+    }
+
+    /**
+     * Returns the scheduler of flushes, creating it and scheduling the periodic flush if needed.
+     *
+     * @param fessConfig the Fess configuration
+     * @return the scheduler, or null if this updater is destroyed
+     */
+    protected ScheduledExecutorService getScheduler(final FessConfig fessConfig) {
+        synchronized (stripes) {
+            if (destroyed) {
+                return null;
+            }
+            if (scheduler == null) {
+                final long interval = Math.max(1, fessConfig.getSystemPropertyAsInt(FLUSH_INTERVAL_PROPERTY, DEFAULT_FLUSH_INTERVAL));
+                scheduler = Executors
+                        .newSingleThreadScheduledExecutor(Thread.ofPlatform().name("classic-api-favorite-count").daemon(true).factory());
+                scheduler.scheduleWithFixedDelay(this::flush, interval, interval, TimeUnit.MILLISECONDS);
+            }
+            return scheduler;
+        }
+    }
+
+    /**
+     * Pending update of the favorite count of a document.
+     */
+    protected static class Update {
+        /** The update script, whose type, language, options and parameters are kept for the bulk request. */
+        final Script script;
+
+        /** The sum of the increments. */
+        long delta;
+
+        /** The number of flushes that already attempted the update. */
+        int attempts;
+
+        Update(final Script script, final long delta, final int attempts) {
+            this.script = script;
+            this.delta = delta;
+            this.attempts = attempts;
+        }
+    }
+
+    /**
+     * Pending updates of the documents of one stripe, guarded by the stripe.
+     */
+    private static class Stripe {
+        Map<String, Update> updateMap = new HashMap<>();
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.classic;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Opt-in cache of the favorites of users, by user code.
+ * The entry of a user holds the URLs known to be favorites or not, and the documents of the recent result pages of the user,
+ * so that a favorites request on a page seen before is answered in memory without querying the search engine or the favorite log.
+ * Only the URLs not known yet are looked up in the favorite log. A favorite added through the API is recorded in the entry
+ * of the user, while favorites added elsewhere, e.g. on another node, are seen when the entry expires.
+ */
+public class FavoritesCache extends ApiCache<FavoritesCache.UserFavorites> {
+
+    /** The default time to live in seconds. */
+    protected static final int DEFAULT_TTL = 60;
+
+    /** The default maximum number of users. */
+    protected static final int DEFAULT_MAX_ENTRIES = 10000;
+
+    /** The maximum number of URLs of a user; the least recently used are forgotten. */
+    protected static final int MAX_URLS = 1000;
+
+    /** The maximum number of result pages of a user; the least recently used are forgotten. */
+    protected static final int MAX_PAGES = 10;
+
+    /**
+     * Constructs a FavoritesCache.
+     */
+    public FavoritesCache() {
+        super("favorites", DEFAULT_TTL, DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * Returns the entry of a user, creating it if needed.
+     *
+     * @param userCode the user code
+     * @return the favorites of the user
+     */
+    public UserFavorites getUserFavorites(final String userCode) {
+        final UserFavorites favorites = get(userCode);
+        if (favorites != null) {
+            return favorites;
+        }
+        final UserFavorites created = new UserFavorites();
+        final UserFavorites existing = getCache().asMap().putIfAbsent(userCode, created);
+        return existing != null ? existing : created;
+    }
+
+    /**
+     * Records a favorite added by a user, if the user has an entry.
+     *
+     * @param userCode the user code
+     * @param url the favorite URL
+     */
+    public void addUrl(final String userCode, final String url) {
+        final UserFavorites favorites = peek(userCode);
+        if (favorites != null) {
+            favorites.addUrl(url);
+        }
+    }
+
+    /**
+     * Favorites of a user, guarded by itself.
+     */
+    public static class UserFavorites {
+
+        /** Whether each known URL is a favorite, in access order. */
+        private final Map<String, Boolean> urlMap = new LinkedHashMap<>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, Boolean> eldest) {
+                return size() > MAX_URLS;
+            }
+        };
+
+        /** The documents of the result pages by query ID, in access order. */
+        private final Map<String, Page> pageMap = new LinkedHashMap<>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, Page> eldest) {
+                return size() > MAX_PAGES;
+            }
+        };
+
+        /**
+         * Constructs an empty UserFavorites.
+         */
+        public UserFavorites() {
+            // nothing
+        }
+
+        /**
+         * Returns the documents of a result page.
+         *
+         * @param queryId the query ID
+         * @param docIds the result document IDs of the query
+         * @return the documents, or null if the page is not cached for the same document ID array
+         */
+        public synchronized List<Map<String, Object>> getDocList(final String queryId, final String[] docIds) {
+            final Page page = pageMap.get(queryId);
+            return page != null && page.docIds == docIds ? page.docList : null;
+        }
+
+        /**
+         * Caches the documents of a result page.
+         *
+         * @param queryId the query ID
+         * @param docIds the result document IDs of the query
+         * @param docList the documents
+         */
+        public synchronized void putDocList(final String queryId, final String[] docIds, final List<Map<String, Object>> docList) {
+            pageMap.put(queryId, new Page(docIds, Collections.unmodifiableList(docList)));
+        }
+
+        /**
+         * Returns the favorite URLs among URLs, looking up the URLs not known yet.
+         *
+         * @param urlList the URLs
+         * @param loader the function returning the favorite URLs among the URLs passed to it
+         * @return the favorite URLs, in the order of the URLs
+         */
+        public List<String> getUrlList(final List<String> urlList, final Function<List<String>, List<String>> loader) {
+            final List<String> unknownList = new ArrayList<>();
+            synchronized (this) {
+                for (final String url : urlList) {
+                    if (!urlMap.containsKey(url)) {
+                        unknownList.add(url);
+                    }
+                }
+            }
+            final Set<String> foundSet = unknownList.isEmpty() ? Collections.emptySet() : new HashSet<>(loader.apply(unknownList));
+            final List<String> favoriteList = new ArrayList<>();
+            synchronized (this) {
+                for (final String url : unknownList) {
+                    // a favorite added while loading stays a favorite
+                    urlMap.merge(url, foundSet.contains(url), Boolean::logicalOr);
+                }
+                for (final String url : urlList) {
+                    final Boolean favorite = urlMap.get(url);
+                    // a URL forgotten since the lookup is answered from the lookup
+                    if (favorite != null ? favorite : foundSet.contains(url)) {
+                        favoriteList.add(url);
+                    }
+                }
+            }
+            return favoriteList;
+        }
+
+        /**
+         * Records a favorite URL.
+         *
+         * @param url the URL
+         */
+        public synchronized void addUrl(final String url) {
+            urlMap.put(url, Boolean.TRUE);
+        }
+    }
+
+    /**
+     * Documents of a result page, built from a result document ID array.
+     */
+    private static class Page {
+        final String[] docIds;
+
+        final List<Map<String, Object>> docList;
+
+        Page(final String[] docIds, final List<Map<String, Object>> docList) {
+            this.docIds = docIds;
+            this.docList = docList;
+        }
+    }
+}
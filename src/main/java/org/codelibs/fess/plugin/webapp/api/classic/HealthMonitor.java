@@ -0,0 +1,304 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.classic;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneId;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.codelibs.fess.entity.PingResponse;
+import org.codelibs.fess.mylasta.direction.FessConfig;
+import org.codelibs.fess.util.ComponentUtil;
+
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Health snapshot of the search engine for ping requests.
+ * The search engine is pinged by a background thread every refresh interval, and ping requests are answered from
+ * the last result, so the load on the search engine does not depend on how often the ping endpoint is polled.
+ * The refresh starts with the first ping request. A snapshot older than the staleness limit, e.g. because the ping hangs,
+ * is reported as a failure instead of the last result.
+ */
+public class HealthMonitor {
+
+    private static final Logger logger = LogManager.getLogger(HealthMonitor.class);
+
+    /**
+     * The system property to answer ping requests from the health snapshot.
+     */
+    protected static final String ENABLED_PROPERTY = "api.classic.ping.snapshot.enabled";
+
+    /**
+     * The system property for the interval in milliseconds between pings of the search engine.
+     */
+    protected static final String REFRESH_INTERVAL_PROPERTY = "api.classic.ping.snapshot.refresh_interval";
+
+    /**
+     * The default interval in milliseconds between pings of the search engine.
+     */
+    protected static final int DEFAULT_REFRESH_INTERVAL = 1000;
+
+    /**
+     * The system property for the age in milliseconds beyond which the snapshot is reported as stale.
+     */
+    protected static final String MAX_STALENESS_PROPERTY = "api.classic.ping.snapshot.max_staleness";
+
+    /**
+     * The default age in milliseconds beyond which the snapshot is reported as stale.
+     */
+    protected static final int DEFAULT_MAX_STALENESS = 10000;
+
+    /**
+     * The last snapshot, or null before the first check.
+     */
+    private volatile Snapshot snapshot;
+
+    /**
+     * The scheduler of refreshes, created with the first ping request.
+     */
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * Whether this monitor is destroyed.
+     */
+    private volatile boolean destroyed;
+
+    /**
+     * Constructs a HealthMonitor.
+     */
+    public HealthMonitor() {
+        // nothing
+    }
+
+    /**
+     * Checks if ping requests are answered from the health snapshot.
+     *
+     * @return true if enabled
+     */
+    public boolean isEnabled() {
+        return !destroyed && ComponentUtil.getFessConfig().getSystemPropertyAsBoolean(ENABLED_PROPERTY, false);
+    }
+
+    /**
+     * Returns the current snapshot, checking the search engine on the calling thread if there is none yet.
+     *
+     * @return the snapshot
+     */
+    public Snapshot getSnapshot() {
+        final Snapshot current = snapshot;
+        if (current != null) {
+            return current;
+        }
+        start(ComponentUtil.getFessConfig());
+        synchronized (this) {
+            return snapshot != null ? snapshot : refresh();
+        }
+    }
+
+    /**
+     * Checks if a snapshot is older than the staleness limit.
+     *
+     * @param snapshot the snapshot
+     * @return true if the snapshot is stale
+     */
+    public boolean isStale(final Snapshot snapshot) {
+        final long maxStaleness = ComponentUtil.getFessConfig().getSystemPropertyAsInt(MAX_STALENESS_PROPERTY, DEFAULT_MAX_STALENESS);
+        return System.currentTimeMillis() - snapshot.getCheckedAt() > maxStaleness;
+    }
+
+    /**
+     * Pings the search engine and replaces the snapshot.
+     *
+     * @return the new snapshot
+     */
+    public Snapshot refresh() {
+        final long checkedAt = System.currentTimeMillis();
+        final long start = System.nanoTime();
+        Snapshot current;
+        try {
+            final PingResponse pingResponse = ping();
+            current = new Snapshot(pingResponse.getStatus(), pingResponse.getMessage(), null, checkedAt, System.nanoTime() - start);
+        } catch (final Exception e) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Failed to ping the search engine.", e);
+            }
+            current = new Snapshot(9, null, e, checkedAt, System.nanoTime() - start);
+        }
+        snapshot = current;
+        return current;
+    }
+
+    /**
+     * Stops the refreshes.
+     */
+    @PreDestroy
+    public void destroy() {
+        synchronized (this) {
+            destroyed = true;
+            if (scheduler != null) {
+                scheduler.shutdownNow();
+                scheduler = null;
+            }
+        }
+    }
+
+    /**
+     * Pings the search engine.
+     *
+     * @return the ping response
+     */
+    protected PingResponse ping() {
+        return ComponentUtil.getSearchEngineClient().ping();
+    }
+
+    /**
+     * Starts the refreshes if they are not started.
+     *
+     * @param fessConfig the Fess configuration
+     */
+    protected synchronized void start(final FessConfig fessConfig) {
+        if (destroyed || scheduler != null) {
+            return;
+        }
+        final long interval = Math.max(1, fessConfig.getSystemPropertyAsInt(REFRESH_INTERVAL_PROPERTY, DEFAULT_REFRESH_INTERVAL));
+        scheduler = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("classic-api-health").daemon(true).factory());
+        scheduler.scheduleWithFixedDelay(this::refresh, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Result of a ping of the search engine, with the response body fields encoded when the snapshot is taken.
+     */
+    public static class Snapshot {
+        private final int status;
+
+        private final Exception error;
+
+        private final long checkedAt;
+
+        private final long latencyNanos;
+
+        private final byte[] checkFields;
+
+        private final byte[] body;
+
+        private volatile String errorMessage;
+
+        /**
+         * Constructs a Snapshot.
+         *
+         * @param status the response status
+         * @param message the JSON message of the ping response, or null on failure
+         * @param error the failure, or null
+         * @param checkedAt the epoch milliseconds of the check
+         * @param latencyNanos the duration of the check in nanoseconds
+         */
+        public Snapshot(final int status, final String message, final Exception error, final long checkedAt, final long latencyNanos) {
+            this.status = status;
+            this.error = error;
+            this.checkedAt = checkedAt;
+            this.latencyNanos = latencyNanos;
+            final StringBuilder buf = new StringBuilder(64);
+            try {
+                buf.append("\"checked_at\":");
+                IsoDateEncoder.write(checkedAt, ZoneId.systemDefault(), buf);
+                buf.append(",\"latency\":");
+                JsonEncoder.writeNumber(TimeUnit.NANOSECONDS.toMillis(latencyNanos), buf);
+            } catch (final IOException e) {
+                throw new IllegalStateException(e);
+            }
+            checkFields = buf.toString().getBytes(StandardCharsets.UTF_8);
+            body = message == null ? null : ("\"message\":" + message + "," + buf).getBytes(StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Returns the response status.
+         *
+         * @return 0 if the cluster is available
+         */
+        public int getStatus() {
+            return status;
+        }
+
+        /**
+         * Returns the failure of the check.
+         *
+         * @return the exception, or null if the search engine answered
+         */
+        public Exception getError() {
+            return error;
+        }
+
+        /**
+         * Returns the message of the failure, created once for the snapshot, so that a failure is not logged on each poll.
+         *
+         * @param messageCreator creates the message of the failure
+         * @return the message, or null if the search engine answered
+         */
+        public String getErrorMessage(final Function<Throwable, String> messageCreator) {
+            if (error == null) {
+                return null;
+            }
+            String message = errorMessage;
+            if (message == null) {
+                message = messageCreator.apply(error);
+                errorMessage = message;
+            }
+            return message;
+        }
+
+        /**
+         * Returns the time of the check.
+         *
+         * @return the epoch milliseconds
+         */
+        public long getCheckedAt() {
+            return checkedAt;
+        }
+
+        /**
+         * Returns the duration of the check.
+         *
+         * @return the latency in nanoseconds
+         */
+        public long getLatencyNanos() {
+            return latencyNanos;
+        }
+
+        /**
+         * Returns the encoded fields of the check: its time and its latency in milliseconds.
+         *
+         * @return the UTF-8 bytes
+         */
+        public byte[] getCheckFields() {
+            return checkFields;
+        }
+
+        /**
+         * Returns the encoded body fields: the message, the time of the check and its latency in milliseconds.
+         *
+         * @return the UTF-8 bytes, or null on failure
+         */
+        public byte[] getBody() {
+            return body;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.classic;
+
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.zone.ZoneRules;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import org.codelibs.core.CoreLibConstants;
+
+/**
+ * Encoder that writes dates as JSON strings in the CoreLibConstants.DATE_FORMAT_ISO_8601_EXTEND
+ * format (yyyy-MM-dd'T'HH:mm:ss.SSSZ) of the default time zone.
+ * The fields are computed from the epoch milliseconds and the zone rules, and their digits are
+ * written straight into the sink, so no formatter is created per value. Dates outside the range
+ * where java.time and SimpleDateFormat agree are formatted by SimpleDateFormat.
+ */
+public class IsoDateEncoder implements JsonEncoder.TypeEncoder<Date> {
+
+    /**
+     * The minimum time written by the fast path (1900-01-01T00:00:00Z). TimeZone ignores zone
+     * transitions before it, and SimpleDateFormat switches to the Julian calendar in 1582.
+     */
+    protected static final long MIN_TIME = -2208988800000L;
+
+    /**
+     * The maximum year written by the fast path.
+     */
+    protected static final int MAX_YEAR = 9999;
+
+    private static final long MILLIS_PER_DAY = 86_400_000L;
+
+    /**
+     * Constructs an IsoDateEncoder.
+     */
+    public IsoDateEncoder() {
+        // nothing
+    }
+
+    @Override
+    public void encode(final Date value, final JsonEncoder.Context context) throws IOException {
+        write(value.getTime(), ZoneId.systemDefault(), context.out());
+    }
+
+    /**
+     * Writes a time as a quoted date string in the specified zone.
+     *
+     * @param millis the epoch milliseconds
+     * @param zone the time zone
+     * @param out the sink to write to
+     * @throws IOException if an I/O error occurs
+     */
+    public static void write(final long millis, final ZoneId zone, final Appendable out) throws IOException {
+        final ZoneRules rules = zone.getRules();
+        final int offsetSeconds;
+        if (rules.isFixedOffset()) {
+            offsetSeconds = rules.getOffset(Instant.EPOCH).getTotalSeconds();
+        } else {
+            offsetSeconds = rules.getOffset(Instant.ofEpochMilli(millis)).getTotalSeconds();
+        }
+        final long localMillis = millis + offsetSeconds * 1000L;
+        final long epochDay = Math.floorDiv(localMillis, MILLIS_PER_DAY);
+        final int millisOfDay = (int) Math.floorMod(localMillis, MILLIS_PER_DAY);
+
+        // civil date from days since 1970-01-01 in the proleptic Gregorian calendar
+        final long z = epochDay + 719468;
+        final long era = (z >= 0 ? z : z - 146096) / 146097;
+        final int doe = (int) (z - era * 146097);
+        final int yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        final int doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        final int mp = (5 * doy + 2) / 153;
+        final int day = doy - (153 * mp + 2) / 5 + 1;
+        final int month = mp < 10 ? mp + 3 : mp - 9;
+        final long year = yoe + era * 400 + (month <= 2 ? 1 : 0);
+
+        if (millis < MIN_TIME || year > MAX_YEAR) {
+            final SimpleDateFormat sdf = new SimpleDateFormat(CoreLibConstants.DATE_FORMAT_ISO_8601_EXTEND, Locale.ROOT);
+            sdf.setTimeZone(TimeZone.getTimeZone(zone));
+            JsonEncoder.writeString(sdf.format(new Date(millis)), out);
+            return;
+        }
+
+        out.append('"');
+        final int y = (int) year;
+        out.append((char) ('0' + y / 1000)).append((char) ('0' + y / 100 % 10));
+        append2(out, y % 100);
+        out.append('-');
+        append2(out, month);
+        out.append('-');
+        append2(out, day);
+        out.append('T');
+        append2(out, millisOfDay / 3_600_000);
+        out.append(':');
+        append2(out, millisOfDay / 60_000 % 60);
+        out.append(':');
+        append2(out, millisOfDay / 1000 % 60);
+        out.append('.');
+        final int millisOfSecond = millisOfDay % 1000;
+        out.append((char) ('0' + millisOfSecond / 100));
+        append2(out, millisOfSecond % 100);
+        int offsetMinutes = offsetSeconds / 60;
+        if (offsetMinutes < 0) {
+            out.append('-');
+            offsetMinutes = -offsetMinutes;
+        } else {
+            out.append('+');
+        }
+        append2(out, offsetMinutes / 60);
+        append2(out, offsetMinutes % 60);
+        out.append('"');
+    }
+
+    private static void append2(final Appendable out, final int value) throws IOException {
+        out.append((char) ('0' + value / 10)).append((char) ('0' + value % 10));
+    }
+}
@@ -16,17 +16,37 @@
 package org.codelibs.fess.plugin.webapp.api.classic;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.io.Writer;
 import java.net.URLDecoder;
+import java.text.NumberFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.codelibs.core.exception.IORuntimeException;
 import org.codelibs.core.lang.StringUtil;
 import org.codelibs.fess.Constants;
 import org.codelibs.fess.app.service.FavoriteLogService;
@@ -37,6 +57,7 @@ import org.codelibs.fess.entity.PingResponse;
 import org.codelibs.fess.entity.SearchRenderData;
 import org.codelibs.fess.entity.SearchRequestParams;
 import org.codelibs.fess.entity.SearchRequestParams.SearchRequestType;
+import org.codelibs.fess.exception.InvalidAccessTokenException;
 import org.codelibs.fess.exception.WebApiException;
 import org.codelibs.fess.helper.LabelTypeHelper;
 import org.codelibs.fess.helper.PopularWordHelper;
@@ -47,18 +68,32 @@ import org.codelibs.fess.helper.SystemHelper;
 import org.codelibs.fess.helper.UserInfoHelper;
 import org.codelibs.fess.mylasta.direction.FessConfig;
 import org.codelibs.fess.opensearch.client.SearchEngineClient;
+import org.codelibs.fess.rank.fusion.SearchResult;
 import org.codelibs.fess.util.ComponentUtil;
 import org.codelibs.fess.util.DocumentUtil;
 import org.codelibs.fess.util.FacetResponse;
 import org.codelibs.fess.util.FacetResponse.Field;
 import org.dbflute.optional.OptionalThing;
+import org.lastaflute.di.core.ExternalContext;
+import org.lastaflute.di.core.factory.SingletonLaContainerFactory;
 import org.opensearch.script.Script;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.Cookie;
 import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
 import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
 
 /**
  * JSON API manager that handles search requests at the /json path prefix.
@@ -69,6 +104,161 @@ public class JsonApiManager extends ClassicJsonApiManager {
 
     private static final Logger logger = LogManager.getLogger(JsonApiManager.class);
 
+    /**
+     * The request type of the metrics endpoint.
+     */
+    protected static final String METRICS_TYPE = "metrics";
+
+    /**
+     * The system property to enable the metrics endpoint.
+     */
+    protected static final String METRICS_ENABLED_PROPERTY = "api.classic.metrics.enabled";
+
+    /**
+     * The request type of the multi search endpoint.
+     */
+    protected static final String MULTI_SEARCH_TYPE = "msearch";
+
+    /**
+     * The system property for the maximum number of searches in a multi search request.
+     */
+    protected static final String MULTI_SEARCH_MAX_ENTRIES_PROPERTY = "api.classic.msearch.max_entries";
+
+    /**
+     * The default maximum number of searches in a multi search request.
+     */
+    protected static final int DEFAULT_MULTI_SEARCH_MAX_ENTRIES = 20;
+
+    /**
+     * The system property for the number of searches of a multi search request that run at the same time.
+     */
+    protected static final String MULTI_SEARCH_CONCURRENCY_PROPERTY = "api.classic.msearch.concurrency";
+
+    /**
+     * The default number of searches of a multi search request that run at the same time.
+     */
+    protected static final int DEFAULT_MULTI_SEARCH_CONCURRENCY = 4;
+
+    /**
+     * The factory of parsers for multi search request bodies.
+     */
+    protected static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    /**
+     * The system property for the time in milliseconds to wait for related queries and contents after a search.
+     */
+    protected static final String RELATED_TIMEOUT_PROPERTY = "api.classic.related.timeout";
+
+    /**
+     * The default time in milliseconds to wait for related queries and contents after a search.
+     */
+    protected static final int DEFAULT_RELATED_TIMEOUT = 1000;
+
+    /**
+     * The executor that runs backend lookups concurrently with the main search.
+     */
+    protected ExecutorService executorService = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("classic-api-", 0).factory());
+
+    /**
+     * The system property for the buffer size in bytes of scroll search responses.
+     */
+    protected static final String SCROLL_CHUNK_SIZE_PROPERTY = "api.classic.scroll.chunk_size";
+
+    /**
+     * The default buffer size in bytes of scroll search responses.
+     */
+    protected static final int DEFAULT_SCROLL_CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * The system property for the minimum time in milliseconds between flushes of scroll search responses.
+     */
+    protected static final String SCROLL_FLUSH_INTERVAL_PROPERTY = "api.classic.scroll.flush_interval";
+
+    /**
+     * The default minimum time in milliseconds between flushes of scroll search responses.
+     */
+    protected static final int DEFAULT_SCROLL_FLUSH_INTERVAL = 1000;
+
+    /**
+     * The system property for the number of documents fetched per scroll page if not specified by the num parameter.
+     */
+    protected static final String SCROLL_PAGE_SIZE_PROPERTY = "api.classic.scroll.page_size";
+
+    /**
+     * The default number of documents fetched per scroll page.
+     */
+    protected static final int DEFAULT_SCROLL_PAGE_SIZE = 100;
+
+    /**
+     * The system property for the maximum number of documents fetched per scroll page.
+     */
+    protected static final String SCROLL_MAX_PAGE_SIZE_PROPERTY = "api.classic.scroll.max_page_size";
+
+    /**
+     * The default maximum number of documents fetched per scroll page.
+     */
+    protected static final int DEFAULT_SCROLL_MAX_PAGE_SIZE = 1000;
+
+    /**
+     * The request parameters that do not change the body of a search response.
+     */
+    protected static final Set<String> SEARCH_CACHE_IGNORED_PARAMS = Set.of("type", "callback", "_", "start", "num", "offset");
+
+    /**
+     * The request parameter of the fields to return for each document.
+     */
+    protected static final String FIELD_LIST_PARAM = "fl";
+
+    /**
+     * The request parameter of the cursor of a cursor page.
+     */
+    protected static final String CURSOR_PARAM = "cursor";
+
+    /**
+     * The cursor of the first page.
+     */
+    protected static final String FIRST_CURSOR = "*";
+
+    /**
+     * The filter of the document fields returned in search responses.
+     */
+    protected ResponseFieldFilter responseFieldFilter = new ResponseFieldFilter();
+
+    /**
+     * The searcher of cursor pages.
+     */
+    protected CursorSearcher cursorSearcher = new CursorSearcher();
+
+    /**
+     * The cache of serialized search response bodies.
+     */
+    protected ResponseCache searchResponseCache = new ResponseCache("search");
+
+    /**
+     * The search calls in flight, shared by concurrent identical requests.
+     */
+    protected SingleFlight<String, ResponseCache.Entry> searchFlight = new SingleFlight<>();
+
+    /**
+     * The write-behind updater of favorite counts.
+     */
+    protected FavoriteCountUpdater favoriteCountUpdater = new FavoriteCountUpdater();
+
+    /**
+     * The sets of the result document IDs of recent queries.
+     */
+    protected DocIdSetCache docIdSetCache = new DocIdSetCache();
+
+    /**
+     * The cache of the favorites of users.
+     */
+    protected FavoritesCache favoritesCache = new FavoritesCache();
+
+    /**
+     * The health snapshot of the search engine for ping requests.
+     */
+    protected HealthMonitor healthMonitor = new HealthMonitor();
+
     /**
      * Constructs a JsonApiManager with "/json" path prefix.
      */
@@ -85,9 +275,20 @@ public class JsonApiManager extends ClassicJsonApiManager {
         if (logger.isInfoEnabled()) {
             logger.info("Load {}", this.getClass().getSimpleName());
         }
+        apiMetrics.addCache(searchResponseCache);
+        apiMetrics.addCache(favoritesCache);
         ComponentUtil.getWebApiManagerFactory().add(this);
     }
 
+    /**
+     * Stops the executor for concurrent backend lookups.
+     * The shared components, such as the async processor, are destroyed by the container.
+     */
+    @PreDestroy
+    public void destroy() {
+        executorService.shutdownNow();
+    }
+
     @Override
     public boolean matches(final HttpServletRequest request) {
         final FessConfig fessConfig = ComponentUtil.getFessConfig();
@@ -97,6 +298,11 @@ public class JsonApiManager extends ClassicJsonApiManager {
             case LABEL:
             case POPULARWORD:
                 return false;
+            case OTHER:
+                if (MULTI_SEARCH_TYPE.equals(request.getParameter("type"))) {
+                    return false;
+                }
+                break;
             default:
                 break;
             }
@@ -109,7 +315,76 @@ public class JsonApiManager extends ClassicJsonApiManager {
     @Override
     public void process(final HttpServletRequest request, final HttpServletResponse response, final FilterChain chain)
             throws IOException, ServletException {
-        switch (getFormatType(request)) {
+        final FormatType formatType = getFormatType(request);
+        if (formatType == FormatType.OTHER && METRICS_TYPE.equals(request.getParameter("type"))) {
+            processMetricsRequest(request, response, chain);
+            return;
+        }
+
+        if (formatType == FormatType.OTHER && MULTI_SEARCH_TYPE.equals(request.getParameter("type"))) {
+            final ApiMetrics.Sample sample = startMetricsSample(request, MULTI_SEARCH_TYPE);
+            final AdmissionController.Permit permit = admissionController.acquire(MULTI_SEARCH_TYPE);
+            try {
+                if (permit == null) {
+                    writeRejectedResponse(response);
+                } else {
+                    processMultiSearchRequest(request, response, chain);
+                }
+            } finally {
+                if (permit != null) {
+                    permit.release();
+                }
+                sample.end();
+            }
+            return;
+        }
+
+        final String endpoint = formatType.name().toLowerCase(Locale.ROOT);
+        final ApiMetrics.Sample sample = startMetricsSample(request, endpoint);
+        final AdmissionController.Permit permit = admissionController.acquire(endpoint);
+        if (permit == null) {
+            try {
+                writeRejectedResponse(response);
+            } finally {
+                sample.end();
+            }
+            return;
+        }
+        if ((formatType == FormatType.SEARCH || formatType == FormatType.FAVORITES) && asyncProcessor.isEnabled(request)) {
+            try {
+                asyncProcessor.start(endpoint, request, response, (req, res) -> dispatch(formatType, req, res, chain),
+                        this::writeAsyncTimeoutResponse, (req, res) -> writeRejectedResponse(res), () -> {
+                            permit.release();
+                            sample.end();
+                        });
+                return;
+            } catch (final RuntimeException e) {
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Failed to start async processing, so the request is processed synchronously.", e);
+                }
+            }
+        }
+        try {
+            dispatch(formatType, request, response, chain);
+        } finally {
+            permit.release();
+            sample.end();
+        }
+    }
+
+    /**
+     * Dispatches a request to the processor of its format type.
+     *
+     * @param formatType the format type of the request
+     * @param request the HTTP servlet request
+     * @param response the HTTP servlet response
+     * @param chain the filter chain
+     * @throws IOException if an I/O error occurs
+     * @throws ServletException if a servlet error occurs
+     */
+    protected void dispatch(final FormatType formatType, final HttpServletRequest request, final HttpServletResponse response,
+            final FilterChain chain) throws IOException, ServletException {
+        switch (formatType) {
         case SEARCH:
             processSearchRequest(request, response, chain);
             break;
@@ -137,6 +412,228 @@ public class JsonApiManager extends ClassicJsonApiManager {
         }
     }
 
+    /**
+     * Processes metrics requests that return the request counts and latencies of the API endpoints.
+     * Available only when the {@value #METRICS_ENABLED_PROPERTY} system property is true.
+     *
+     * @param request the HTTP servlet request
+     * @param response the HTTP servlet response
+     * @param chain the filter chain
+     */
+    protected void processMetricsRequest(final HttpServletRequest request, final HttpServletResponse response, final FilterChain chain) {
+        if (!ComponentUtil.getFessConfig().getSystemPropertyAsBoolean(METRICS_ENABLED_PROPERTY, false)) {
+            writeJsonResponse(99, StringUtil.EMPTY, "Not found.");
+            return;
+        }
+        writeJsonResponse(0, buf -> {
+            buf.append("\"metrics\":");
+            apiMetrics.writeJson(buf);
+            buf.append(",\"caches\":");
+            apiMetrics.writeCachesJson(buf);
+            buf.append(",\"admission\":");
+            admissionController.writeJson(buf);
+        });
+    }
+
+    /**
+     * Processes multi search requests that run a batch of searches in one call.
+     * The POST body is a JSON array of objects, each holding the request parameters of one search,
+     * e.g. {@code [{"q":"fess","num":5},{"q":"search","fields.label":["a","b"]}]}.
+     * The searches run concurrently, at most {@value #MULTI_SEARCH_CONCURRENCY_PROPERTY} at a time,
+     * and the response holds the result of each search in request order with its own status,
+     * so that a failed search does not fail the others.
+     *
+     * @param request the HTTP servlet request
+     * @param response the HTTP servlet response
+     * @param chain the filter chain
+     */
+    protected void processMultiSearchRequest(final HttpServletRequest request, final HttpServletResponse response,
+            final FilterChain chain) {
+        final FessConfig fessConfig = ComponentUtil.getFessConfig();
+        final ApiMetrics.Sample sample = getMetricsSample(request);
+
+        if (!fessConfig.isAcceptedSearchReferer(request.getHeader("referer"))) {
+            writeJsonResponse(99, StringUtil.EMPTY, "Referer is invalid.");
+            return;
+        }
+
+        if (!"POST".equalsIgnoreCase(request.getMethod())) {
+            writeJsonResponse(99, StringUtil.EMPTY, "Multi search requires a POST request.");
+            return;
+        }
+
+        final List<Map<String, String[]>> entries;
+        try {
+            entries = parseMultiSearchBody(request.getInputStream());
+        } catch (final IOException e) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Failed to parse a multi search request.", e);
+            }
+            writeJsonResponse(99, StringUtil.EMPTY, "Invalid request body.");
+            return;
+        }
+        final int maxEntries = fessConfig.getSystemPropertyAsInt(MULTI_SEARCH_MAX_ENTRIES_PROPERTY, DEFAULT_MULTI_SEARCH_MAX_ENTRIES);
+        if (entries.isEmpty() || entries.size() > maxEntries) {
+            writeJsonResponse(99, StringUtil.EMPTY, "The number of searches must be between 1 and " + maxEntries + ".");
+            return;
+        }
+
+        request.setAttribute(Constants.SEARCH_LOG_ACCESS_TYPE, Constants.SEARCH_LOG_ACCESS_TYPE_JSON);
+        // the searches only see a worker response, so the user code and the cookie of a new visitor are settled here
+        ComponentUtil.getUserInfoHelper().getUserCode();
+        final int concurrency = fessConfig.getSystemPropertyAsInt(MULTI_SEARCH_CONCURRENCY_PROPERTY, DEFAULT_MULTI_SEARCH_CONCURRENCY);
+        final Semaphore permits = new Semaphore(Math.max(concurrency, 1));
+        final List<Future<byte[]>> futures = new ArrayList<>(entries.size());
+        final byte[][] results = new byte[entries.size()][];
+        final String[] messages = new String[entries.size()];
+        sample.startBackend();
+        try {
+            // a search is submitted once a permit is free, so no more searches than the limit are started at a time
+            for (final Map<String, String[]> entry : entries) {
+                final HttpServletRequest entryRequest = new MultiSearchEntryRequest(request, entry);
+                permits.acquire();
+                try {
+                    futures.add(submit(entryRequest, response, () -> {
+                        try {
+                            return searchBatchEntry(entryRequest);
+                        } finally {
+                            permits.release();
+                        }
+                    }));
+                } catch (final RuntimeException e) {
+                    permits.release();
+                    throw e;
+                }
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    results[i] = futures.get(i).get();
+                } catch (final ExecutionException e) {
+                    final Throwable cause = e.getCause();
+                    if (cause instanceof InvalidAccessTokenException) {
+                        // the token is shared by all searches, so the whole request is unauthorized
+                        writeJsonResponse(1, StringUtil.EMPTY, cause);
+                        return;
+                    }
+                    if (logger.isDebugEnabled()) {
+                        logger.debug("Failed to process a search of a multi search request.", cause);
+                    }
+                    messages[i] = createErrorMessage(cause);
+                }
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            writeJsonResponse(1, StringUtil.EMPTY, e);
+            return;
+        } finally {
+            futures.forEach(f -> f.cancel(true));
+            sample.endBackend();
+        }
+
+        writeJsonResponse(0, buf -> {
+            final JsonEncoder.Context json = jsonEncoder.createContext(buf);
+            buf.append("\"record_count\":");
+            buf.append(results.length);
+            buf.append(",\"responses\":[");
+            for (int i = 0; i < results.length; i++) {
+                if (i > 0) {
+                    buf.append(',');
+                }
+                if (results[i] != null) {
+                    buf.append("{\"status\":0,");
+                    buf.write(results[i]);
+                } else {
+                    buf.append("{\"status\":1,\"message\":");
+                    json.writeValue(messages[i]);
+                }
+                buf.append('}');
+            }
+            buf.append(']');
+        });
+    }
+
+    /**
+     * Parses the body of a multi search request into the request parameters of each search.
+     * Parameter values may be strings, numbers, booleans or arrays of them; null values are ignored.
+     *
+     * @param in the request body
+     * @return the request parameters of each search
+     * @throws IOException if the body cannot be read or is not a JSON array of parameter objects
+     */
+    protected List<Map<String, String[]>> parseMultiSearchBody(final InputStream in) throws IOException {
+        final List<Map<String, String[]>> entries = new ArrayList<>();
+        try (JsonParser parser = JSON_FACTORY.createParser(in)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new JsonParseException(parser, "Expected an array of searches.");
+            }
+            JsonToken token;
+            while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                if (token != JsonToken.START_OBJECT) {
+                    throw new JsonParseException(parser, "Expected an object of search parameters.");
+                }
+                final Map<String, String[]> params = new LinkedHashMap<>();
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    final String name = parser.currentName();
+                    token = parser.nextToken();
+                    if (token == JsonToken.START_ARRAY) {
+                        final List<String> values = new ArrayList<>();
+                        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                            if (token == null || !token.isScalarValue()) {
+                                throw new JsonParseException(parser, "Expected a parameter value.");
+                            }
+                            if (token != JsonToken.VALUE_NULL) {
+                                values.add(parser.getText());
+                            }
+                        }
+                        params.put(name, values.toArray(new String[values.size()]));
+                    } else if (token != null && token.isScalarValue()) {
+                        if (token != JsonToken.VALUE_NULL) {
+                            params.put(name, new String[] { parser.getText() });
+                        }
+                    } else {
+                        throw new JsonParseException(parser, "Expected a parameter value.");
+                    }
+                }
+                if (parser.currentToken() != JsonToken.END_OBJECT) {
+                    throw new JsonParseException(parser, "Expected the end of search parameters.");
+                }
+                entries.add(params);
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Runs one search of a multi search request and serializes its response body.
+     * The search response cache and the coalescing of identical searches apply as for single searches.
+     *
+     * @param request the request of the search, holding its own parameters
+     * @return the serialized response body
+     * @throws Exception if the search fails
+     */
+    protected byte[] searchBatchEntry(final HttpServletRequest request) throws Exception {
+        final FessConfig fessConfig = ComponentUtil.getFessConfig();
+        final JsonRequestParams params = new JsonRequestParams(request, fessConfig);
+        final boolean cacheEnabled = searchResponseCache.isEnabled();
+        final boolean coalescingEnabled = fessConfig.getSystemPropertyAsBoolean(COALESCING_ENABLED_PROPERTY, false);
+        if (!cacheEnabled && !coalescingEnabled) {
+            return searchAsEntry(request, params, null).getBody();
+        }
+        final String cacheKey = createSearchCacheKey(request, params);
+        if (cacheEnabled) {
+            final ResponseCache.Entry cached = searchResponseCache.get(cacheKey);
+            if (cached != null) {
+                storeQueryId(cached);
+                return cached.getBody();
+            }
+        }
+        final String storeKey = cacheEnabled ? cacheKey : null;
+        if (coalescingEnabled) {
+            return searchShared(request, params, cacheKey, storeKey, null).getBody();
+        }
+        return searchAsEntry(request, params, storeKey).getBody();
+    }
+
     /**
      * Processes scroll search requests that return search results in NDJSON format.
      * Allows streaming of large result sets without loading all results into memory.
@@ -160,47 +657,38 @@ public class JsonApiManager extends ClassicJsonApiManager {
             return;
         }
 
-        final StringBuilder buf = new StringBuilder(1000);
         request.setAttribute(Constants.SEARCH_LOG_ACCESS_TYPE, Constants.SEARCH_LOG_ACCESS_TYPE_JSON);
-        final JsonRequestParams params = new JsonRequestParams(request, fessConfig);
+        final JsonRequestParams params = new ScrollRequestParams(request, fessConfig);
+        NdjsonWriter writer = null;
         try {
             response.setContentType("application/x-ndjson; charset=UTF-8");
-            final long count = searchHelper.scrollSearch(params, doc -> {
-                buf.setLength(0);
-                buf.append('{');
-                boolean first2 = true;
-                for (final Map.Entry<String, Object> entry : doc.entrySet()) {
-                    final String name = entry.getKey();
-                    if (StringUtil.isNotBlank(name) && entry.getValue() != null) {
-                        if (!first2) {
-                            buf.append(',');
-                        } else {
-                            first2 = false;
-                        }
-                        buf.append(escapeJson(name));
-                        buf.append(':');
-                        buf.append(escapeJson(entry.getValue()));
-                    }
-                }
-                buf.append('}');
-                buf.append('\n');
-                try {
-                    response.getWriter().print(buf.toString());
-                } catch (final IOException e) {
-                    throw new IORuntimeException(e);
+            writer = new NdjsonWriter(getStreamingOutputStream(request, response), jsonEncoder,
+                    fessConfig.getSystemPropertyAsInt(SCROLL_CHUNK_SIZE_PROPERTY, DEFAULT_SCROLL_CHUNK_SIZE),
+                    fessConfig.getSystemPropertyAsInt(SCROLL_FLUSH_INTERVAL_PROPERTY, DEFAULT_SCROLL_FLUSH_INTERVAL));
+            // returning false on a disconnect ends the scroll and releases the scroll context
+            final NdjsonWriter ndjsonWriter = writer;
+            final long count = searchHelper.scrollSearch(params, ndjsonWriter::write, OptionalThing.empty());
+            if (!writer.finish()) {
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Client disconnected after {} of {} docs", writer.getCount(), count);
                 }
-                return true;
-            }, OptionalThing.empty());
-            response.flushBuffer();
+                return;
+            }
             if (logger.isDebugEnabled()) {
                 logger.debug("Loaded {} docs", count);
             }
         } catch (final Exception e) {
             final int status = 9;
             if (logger.isDebugEnabled()) {
-                logger.debug("Failed to process a ping request.", e);
+                logger.debug("Failed to process a scroll request.", e);
+            }
+            if (writer != null && (response.isCommitted() || writer.getCount() > 0)) {
+                // the NDJSON body has started, so the error ends it as a last line instead of a response envelope
+                writer.writeError(status, createErrorMessage(e));
+                writer.finish();
+            } else {
+                writeJsonResponse(status, StringUtil.EMPTY, e);
             }
-            writeJsonResponse(status, null, e);
         }
 
     }
@@ -213,20 +701,69 @@ public class JsonApiManager extends ClassicJsonApiManager {
      * @param chain the filter chain
      */
     protected void processPingRequest(final HttpServletRequest request, final HttpServletResponse response, final FilterChain chain) {
+        final ApiMetrics.Sample sample = getMetricsSample(request);
+        if (healthMonitor.isEnabled()) {
+            // the snapshot read takes the place of the backend call, so that both paths record a backend time
+            final HealthMonitor.Snapshot snapshot;
+            sample.startBackend();
+            try {
+                snapshot = healthMonitor.getSnapshot();
+            } finally {
+                sample.endBackend();
+            }
+            writePingSnapshot(snapshot);
+            return;
+        }
         final SearchEngineClient searchEngineClient = ComponentUtil.getSearchEngineClient();
         int status;
         Exception err = null;
         try {
-            final PingResponse pingResponse = searchEngineClient.ping();
+            final PingResponse pingResponse;
+            sample.startBackend();
+            try {
+                pingResponse = searchEngineClient.ping();
+            } finally {
+                sample.endBackend();
+            }
             status = pingResponse.getStatus();
-            writeJsonResponse(status, "\"message\":" + pingResponse.getMessage());
+            writeJsonResponse(status, buf -> buf.write(JsonFragments.MESSAGE).append(pingResponse.getMessage()));
         } catch (final Exception e) {
             status = 9;
             err = e;
             if (logger.isDebugEnabled()) {
                 logger.debug("Failed to process a ping request.", e);
             }
-            writeJsonResponse(status, null, err);
+            writeJsonResponse(status, StringUtil.EMPTY, err);
+        }
+    }
+
+    /**
+     * Writes the response of a ping request from a health snapshot.
+     * Failures and stale snapshots also report the time and latency of the check.
+     *
+     * @param snapshot the health snapshot
+     */
+    protected void writePingSnapshot(final HealthMonitor.Snapshot snapshot) {
+        final String errMsg;
+        final int status;
+        if (healthMonitor.isStale(snapshot)) {
+            status = 9;
+            errMsg = "The health snapshot is stale.";
+        } else if (snapshot.getError() != null) {
+            status = snapshot.getStatus();
+            errMsg = snapshot.getErrorMessage(this::createErrorMessage);
+        } else {
+            status = snapshot.getStatus();
+            errMsg = null;
+        }
+        if (errMsg != null) {
+            writeJsonResponse(status, buf -> {
+                writeMessage(buf, errMsg);
+                buf.append(',');
+                buf.write(snapshot.getCheckFields());
+            });
+        } else {
+            writeJsonResponse(status, buf -> buf.write(snapshot.getBody()));
         }
     }
 
@@ -239,181 +776,560 @@ public class JsonApiManager extends ClassicJsonApiManager {
      * @param chain the filter chain
      */
     protected void processSearchRequest(final HttpServletRequest request, final HttpServletResponse response, final FilterChain chain) {
-        final SearchHelper searchHelper = ComponentUtil.getSearchHelper();
         final FessConfig fessConfig = ComponentUtil.getFessConfig();
-        final RelatedQueryHelper relatedQueryHelper = ComponentUtil.getRelatedQueryHelper();
-        final RelatedContentHelper relatedContentHelper = ComponentUtil.getRelatedContentHelper();
+        final ApiMetrics.Sample sample = getMetricsSample(request);
 
         int status = 0;
         Exception err = null;
-        String query = null;
-        final StringBuilder buf = new StringBuilder(1000); // TODO replace response stream
+        ResponseBody body = null;
+        final String cursor = request.getParameter(CURSOR_PARAM);
+        if (cursor != null) {
+            try {
+                decodeSearchAfter(cursor);
+            } catch (final IOException e) {
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Invalid cursor: {}", cursor, e);
+                }
+                writeJsonResponse(99, StringUtil.EMPTY, "Invalid cursor.");
+                return;
+            }
+        }
+
         request.setAttribute(Constants.SEARCH_LOG_ACCESS_TYPE, Constants.SEARCH_LOG_ACCESS_TYPE_JSON);
         try {
-            final SearchRenderData data = new SearchRenderData();
             final JsonRequestParams params = new JsonRequestParams(request, fessConfig);
-            query = params.getQuery();
+            final boolean cacheEnabled = searchResponseCache.isEnabled();
+            final boolean coalescingEnabled = fessConfig.getSystemPropertyAsBoolean(COALESCING_ENABLED_PROPERTY, false);
+            final String cacheKey = cacheEnabled || coalescingEnabled ? createSearchCacheKey(request, params) : null;
+            if (cacheEnabled) {
+                final ResponseCache.Entry cached = searchResponseCache.get(cacheKey);
+                if (cached != null) {
+                    storeQueryId(cached);
+                    writeJsonResponse(0, buf -> buf.write(cached.getBody()));
+                    return;
+                }
+            }
+            sample.startBackend();
+            try {
+                if (coalescingEnabled) {
+                    final String storeKey = cacheEnabled ? cacheKey : null;
+                    final byte[] bytes = searchShared(request, params, cacheKey, storeKey, sample::coalesced).getBody();
+                    body = buf -> buf.write(bytes);
+                } else if (cacheEnabled) {
+                    final byte[] bytes = searchAsEntry(request, params, cacheKey).getBody();
+                    body = buf -> buf.write(bytes);
+                } else {
+                    body = search(request, params, new SearchRenderData());
+                }
+            } finally {
+                sample.endBackend();
+            }
+        } catch (final Exception e) {
+            status = 1;
+            err = e;
+            if (logger.isDebugEnabled()) {
+                logger.debug("Failed to process a search request.", e);
+            }
+        }
+
+        writeJsonResponse(status, body, err);
+
+    }
+
+    /**
+     * Runs a search together with the related query and related content lookups.
+     *
+     * @param request the HTTP servlet request
+     * @param params the search request parameters
+     * @param data the search result data to fill
+     * @return the writer of the search response body
+     * @throws Exception if the search fails
+     */
+    protected ResponseBody search(final HttpServletRequest request, final JsonRequestParams params, final SearchRenderData data)
+            throws Exception {
+        final String cursor = request.getParameter(CURSOR_PARAM);
+        if (cursor != null) {
+            return searchPage(request, params, data, cursor);
+        }
+
+        final SearchHelper searchHelper = ComponentUtil.getSearchHelper();
+        final FessConfig fessConfig = ComponentUtil.getFessConfig();
+        final RelatedQueryHelper relatedQueryHelper = ComponentUtil.getRelatedQueryHelper();
+        final RelatedContentHelper relatedContentHelper = ComponentUtil.getRelatedContentHelper();
+        final String query = params.getQuery();
+        final Future<String[]> relatedQueriesFuture = submit(request, () -> relatedQueryHelper.getRelatedQueries(query));
+        final Future<String[]> relatedContentsFuture = submit(request, () -> relatedContentHelper.getRelatedContents(query));
+        final String[] relatedQueries;
+        final String[] relatedContents;
+        try {
             searchHelper.search(params, data, OptionalThing.empty());
-            final String execTime = data.getExecTime();
-            final String queryTime = Long.toString(data.getQueryTime());
-            final String pageSize = Integer.toString(data.getPageSize());
-            final String currentPageNumber = Integer.toString(data.getCurrentPageNumber());
-            final String allRecordCount = Long.toString(data.getAllRecordCount());
-            final String allRecordCountRelation = data.getAllRecordCountRelation();
-            final String allPageCount = Integer.toString(data.getAllPageCount());
-            final List<Map<String, Object>> documentItems = data.getDocumentItems();
-            final FacetResponse facetResponse = data.getFacetResponse();
-            final String queryId = data.getQueryId();
-            final String highlightParams = data.getAppendHighlightParams();
-            final boolean nextPage = data.isExistNextPage();
-            final boolean prevPage = data.isExistPrevPage();
-            final long startRecordNumber = data.getCurrentStartRecordNumber();
-            final long endRecordNumber = data.getCurrentEndRecordNumber();
-            final List<String> pageNumbers = data.getPageNumberList();
-            final boolean partial = data.isPartialResults();
-            final String searchQuery = data.getSearchQuery();
-            final long requestedTime = data.getRequestedTime();
-
-            buf.append("\"q\":");
-            buf.append(escapeJson(query));
-            buf.append(",\"query_id\":");
-            buf.append(escapeJson(queryId));
-            buf.append(",\"exec_time\":");
-            buf.append(execTime);
-            buf.append(",\"query_time\":");
-            buf.append(queryTime);
-            buf.append(',');
-            buf.append("\"page_size\":");
-            buf.append(pageSize);
-            buf.append(',');
-            buf.append("\"page_number\":");
-            buf.append(currentPageNumber);
-            buf.append(',');
-            buf.append("\"record_count\":");
-            buf.append(allRecordCount);
-            buf.append(',');
-            buf.append("\"record_count_relation\":");
-            buf.append(escapeJson(allRecordCountRelation));
-            buf.append(',');
-            buf.append("\"page_count\":");
-            buf.append(allPageCount);
-            buf.append(",\"highlight_params\":");
-            buf.append(escapeJson(highlightParams));
-            buf.append(",\"next_page\":");
-            buf.append(escapeJson(nextPage));
-            buf.append(",\"prev_page\":");
-            buf.append(escapeJson(prevPage));
-            buf.append(",\"start_record_number\":");
-            buf.append(startRecordNumber);
-            buf.append(",\"end_record_number\":");
-            buf.append(escapeJson(endRecordNumber));
-            buf.append(",\"page_numbers\":");
-            buf.append(escapeJson(pageNumbers));
-            buf.append(",\"partial\":");
-            buf.append(escapeJson(partial));
-            buf.append(",\"search_query\":");
-            buf.append(escapeJson(searchQuery));
-            buf.append(",\"requested_time\":");
-            buf.append(requestedTime);
-            final String[] relatedQueries = relatedQueryHelper.getRelatedQueries(params.getQuery());
-            buf.append(",\"related_query\":");
-            buf.append(escapeJson(relatedQueries));
-            final String[] relatedContents = relatedContentHelper.getRelatedContents(params.getQuery());
-            buf.append(",\"related_contents\":");
-            buf.append(escapeJson(relatedContents));
+            final int timeout = fessConfig.getSystemPropertyAsInt(RELATED_TIMEOUT_PROPERTY, DEFAULT_RELATED_TIMEOUT);
+            final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+            relatedQueries = getRelatedResult(relatedQueriesFuture, deadline, "related queries");
+            relatedContents = getRelatedResult(relatedContentsFuture, deadline, "related contents");
+        } finally {
+            relatedQueriesFuture.cancel(true);
+            relatedContentsFuture.cancel(true);
+        }
+        final Set<String> fields = params.getResponseFieldSet();
+        return buf -> writeSearchResponse(buf, query, data, relatedQueries, relatedContents, fields);
+    }
+
+    /**
+     * Runs a search for a cursor page, which starts after the hit the cursor was created from.
+     * The response has the cursor of the next page in next_cursor, or null on the last page.
+     * Cursor pages are not recorded in the search log and have no related queries and contents,
+     * but their query ID is stored in the session as for other searches so that favorites can be added from them.
+     *
+     * @param request the HTTP servlet request
+     * @param params the search request parameters
+     * @param data the search result data to fill
+     * @param cursor the cursor from the previous page, or an empty value or {@value #FIRST_CURSOR} for the first page
+     * @return the writer of the search response body
+     * @throws Exception if the cursor is invalid or the search fails
+     */
+    protected ResponseBody searchPage(final HttpServletRequest request, final JsonRequestParams params, final SearchRenderData data,
+            final String cursor) throws Exception {
+        final long requestedTime = ComponentUtil.getSystemHelper().getCurrentTimeAsLong();
+        request.setAttribute(CursorSearcher.SEARCH_AFTER_ATTRIBUTE, decodeSearchAfter(cursor));
+        final String query = ComponentUtil.getQueryStringBuilder().params(params).sortField(params.getSort()).build();
+        final SearchResult result = cursorSearcher.search(query, params, OptionalThing.empty());
+
+        final List<Map<String, Object>> documentItems = result.getDocumentList();
+        Object[] sortValues = null;
+        for (final Map<String, Object> document : documentItems) {
+            sortValues = (Object[]) document.remove(CursorSearcher.SORT_VALUES_FIELD);
+        }
+        final String nextCursor =
+                sortValues != null && documentItems.size() >= params.getPageSize() ? CursorSearcher.encodeCursor(sortValues) : null;
+
+        final NumberFormat execTimeFormat = NumberFormat.getInstance(Locale.ROOT);
+        execTimeFormat.setMaximumIntegerDigits(2);
+        execTimeFormat.setMaximumFractionDigits(2);
+        data.setDocumentItems(documentItems);
+        data.setAllRecordCount(result.getAllRecordCount());
+        data.setAllRecordCountRelation(result.getAllRecordCountRelation());
+        data.setQueryTime(result.getQueryTime());
+        data.setPartialResults(result.isPartialResults());
+        data.setPageSize(params.getPageSize());
+        data.setSearchQuery(query);
+        data.setRequestedTime(requestedTime);
+        data.setQueryId(ComponentUtil.getQueryHelper().generateId());
+        data.setExecTime(execTimeFormat.format((ComponentUtil.getSystemHelper().getCurrentTimeAsLong() - requestedTime) / 1000.0));
+        if (ComponentUtil.getFessConfig().isUserFavorite()) {
+            ComponentUtil.getUserInfoHelper().storeQueryId(data.getQueryId(), documentItems);
+        }
+        final String q = params.getQuery();
+        final Set<String> fields = params.getResponseFieldSet();
+        return buf -> writeCursorResponse(buf, q, data, nextCursor, fields);
+    }
+
+    /**
+     * Decodes the sort values to continue after from a cursor.
+     *
+     * @param cursor the cursor
+     * @return the sort values, or null for the first page
+     * @throws IOException if the cursor is invalid
+     */
+    protected Object[] decodeSearchAfter(final String cursor) throws IOException {
+        if (StringUtil.isBlank(cursor) || FIRST_CURSOR.equals(cursor)) {
+            return null;
+        }
+        return CursorSearcher.decodeCursor(cursor);
+    }
+
+    /**
+     * Runs a search and serializes its response body, caching the body unless the results are partial.
+     *
+     * @param request the HTTP servlet request
+     * @param params the search request parameters
+     * @param cacheKey the key in the search response cache, or null not to cache the body
+     * @return the serialized response body with its query ID and result document IDs
+     * @throws Exception if the search fails
+     */
+    protected ResponseCache.Entry searchAsEntry(final HttpServletRequest request, final JsonRequestParams params,
+            final String cacheKey) throws Exception {
+        final SearchRenderData data = new SearchRenderData();
+        final byte[] bytes = toBytes(search(request, params, data));
+        final String docIdField = ComponentUtil.getFessConfig().getIndexFieldDocId();
+        final List<String> docIdList = new ArrayList<>();
+        if (data.getDocumentItems() != null) {
+            for (final Map<String, Object> document : data.getDocumentItems()) {
+                final Object docId = document.get(docIdField);
+                if (docId != null) {
+                    docIdList.add(docId.toString());
+                }
+            }
+        }
+        final ResponseCache.Entry entry =
+                new ResponseCache.Entry(bytes, data.getQueryId(), docIdList.toArray(new String[docIdList.size()]));
+        if (cacheKey != null && !data.isPartialResults()) {
+            searchResponseCache.put(cacheKey, entry);
+        }
+        return entry;
+    }
+
+    /**
+     * Runs a search, or joins the identical search already in flight for another request and shares its response.
+     * The query ID of a shared response is stored in the session of the joining request.
+     *
+     * @param request the HTTP servlet request
+     * @param params the search request parameters
+     * @param flightKey the key identifying identical searches
+     * @param cacheKey the key in the search response cache, or null not to cache the body
+     * @param onJoin invoked when the request joins a search in flight, or null
+     * @return the serialized response body with its query ID and result document IDs
+     * @throws Exception if the search fails
+     */
+    protected ResponseCache.Entry searchShared(final HttpServletRequest request, final JsonRequestParams params, final String flightKey,
+            final String cacheKey, final Runnable onJoin) throws Exception {
+        final boolean[] joined = { false };
+        final ResponseCache.Entry entry = searchFlight.execute(flightKey, () -> searchAsEntry(request, params, cacheKey), () -> {
+            joined[0] = true;
+            if (onJoin != null) {
+                onJoin.run();
+            }
+        });
+        if (joined[0]) {
+            storeQueryId(entry);
+        }
+        return entry;
+    }
+
+    /**
+     * Stores the query ID of a search response that was not produced by the current request in the session
+     * of the current request, as the search does for its own request, so that favorite and favorites requests
+     * with the query ID find the result documents of the response.
+     *
+     * @param entry the serialized search response
+     */
+    protected void storeQueryId(final ResponseCache.Entry entry) {
+        if (entry.getQueryId() == null || entry.getDocIds().length == 0 || !ComponentUtil.getFessConfig().isUserFavorite()) {
+            return;
+        }
+        final String docIdField = ComponentUtil.getFessConfig().getIndexFieldDocId();
+        final List<Map<String, Object>> documentItems = new ArrayList<>(entry.getDocIds().length);
+        for (final String docId : entry.getDocIds()) {
+            documentItems.add(Map.of(docIdField, docId));
+        }
+        ComponentUtil.getUserInfoHelper().storeQueryId(entry.getQueryId(), documentItems);
+    }
+
+    /**
+     * Creates the key of a search request in the search response cache.
+     * The key consists of the role set, the virtual host key, the resolved paging parameters
+     * and all other request parameters in name order, so that equivalent requests share an entry.
+     *
+     * @param request the HTTP servlet request
+     * @param params the search request parameters
+     * @return the cache key
+     * @throws IOException if an I/O error occurs
+     */
+    protected String createSearchCacheKey(final HttpServletRequest request, final JsonRequestParams params) throws IOException {
+        final StringBuilder buf = new StringBuilder(256);
+        buf.append('[');
+        for (final String role : new TreeSet<>(ComponentUtil.getRoleQueryHelper().build(SearchRequestType.JSON))) {
+            JsonEncoder.writeString(role, buf);
             buf.append(',');
-            buf.append("\"result\":[");
-            if (!documentItems.isEmpty()) {
+        }
+        buf.append("],");
+        final String virtualHostKey = ComponentUtil.getVirtualHostHelper().getVirtualHostKey();
+        JsonEncoder.writeString(virtualHostKey != null ? virtualHostKey : StringUtil.EMPTY, buf);
+        buf.append(',').append(params.getStartPosition());
+        buf.append(',').append(params.getPageSize());
+        buf.append(',').append(params.getOffset());
+        buf.append(",{");
+        for (final Map.Entry<String, String[]> entry : new TreeMap<>(request.getParameterMap()).entrySet()) {
+            if (SEARCH_CACHE_IGNORED_PARAMS.contains(entry.getKey())) {
+                continue;
+            }
+            JsonEncoder.writeString(entry.getKey(), buf);
+            buf.append(":[");
+            for (final String value : entry.getValue()) {
+                JsonEncoder.writeString(value, buf);
+                buf.append(',');
+            }
+            buf.append("],");
+        }
+        buf.append('}');
+        return buf.toString();
+    }
+
+    /**
+     * Runs a task on the executor with the request bound to the worker thread,
+     * so that helpers looking up the current request (e.g. for the virtual host) see the caller's request.
+     * The response of the current thread is bound as a {@link WorkerResponse}.
+     *
+     * @param <T> the result type
+     * @param request the HTTP servlet request
+     * @param task the task to run
+     * @return the future of the task
+     */
+    protected <T> Future<T> submit(final HttpServletRequest request, final Callable<T> task) {
+        final ExternalContext externalContext =
+                SingletonLaContainerFactory.hasContainer() ? SingletonLaContainerFactory.getExternalContext() : null;
+        final HttpServletResponse response =
+                externalContext != null && externalContext.getResponse() instanceof final HttpServletResponse r ? r : null;
+        return submit(request, response, task);
+    }
+
+    /**
+     * Runs a task on the executor with the request and a {@link WorkerResponse} of the response bound to the worker thread.
+     *
+     * @param <T> the result type
+     * @param request the HTTP servlet request
+     * @param response the HTTP servlet response, or null
+     * @param task the task to run
+     * @return the future of the task
+     */
+    protected <T> Future<T> submit(final HttpServletRequest request, final HttpServletResponse response, final Callable<T> task) {
+        final HttpServletResponse workerResponse =
+                response == null || response instanceof WorkerResponse ? response : new WorkerResponse(response);
+        return executorService.submit(() -> {
+            final AsyncProcessor.Binding previous = AsyncProcessor.bind(request, workerResponse);
+            try {
+                return task.call();
+            } finally {
+                previous.restore();
+            }
+        });
+    }
+
+    /**
+     * Waits for a related query or related content lookup until the deadline.
+     * An empty array is returned if the lookup fails or does not finish in time.
+     *
+     * @param future the future of the lookup
+     * @param deadline the deadline from System.nanoTime()
+     * @param name the name of the lookup for logging
+     * @return the result of the lookup, or an empty array
+     */
+    protected String[] getRelatedResult(final Future<String[]> future, final long deadline, final String name) {
+        try {
+            return future.get(Math.max(deadline - System.nanoTime(), 0L), TimeUnit.NANOSECONDS);
+        } catch (final TimeoutException e) {
+            future.cancel(true);
+            if (logger.isDebugEnabled()) {
+                logger.debug("Timed out waiting for {}.", name);
+            }
+        } catch (final ExecutionException e) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Failed to get {}.", name, e.getCause());
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return StringUtil.EMPTY_STRINGS;
+    }
+
+    /**
+     * Writes the body of a cursor page response.
+     *
+     * @param buf the writer to append the body content to
+     * @param query the search query
+     * @param data the search result data
+     * @param nextCursor the cursor of the next page, or null if this is the last page
+     * @param fields the fields to write for each document, or null for all API response fields
+     * @throws IOException if an I/O error occurs
+     */
+    protected void writeCursorResponse(final JsonResponseWriter buf, final String query, final SearchRenderData data,
+            final String nextCursor, final Set<String> fields) throws IOException {
+        final JsonEncoder.Context json = jsonEncoder.createContext(buf);
+        buf.write(JsonFragments.Q);
+        json.writeValue(query);
+        buf.write(JsonFragments.QUERY_ID);
+        json.writeValue(data.getQueryId());
+        buf.write(JsonFragments.EXEC_TIME);
+        buf.append(data.getExecTime());
+        buf.write(JsonFragments.QUERY_TIME);
+        buf.append(data.getQueryTime());
+        buf.write(JsonFragments.PAGE_SIZE);
+        buf.append(data.getPageSize());
+        buf.write(JsonFragments.NEXT_RECORD_COUNT);
+        buf.append(data.getAllRecordCount());
+        buf.write(JsonFragments.RECORD_COUNT_RELATION);
+        json.writeValue(data.getAllRecordCountRelation());
+        buf.write(JsonFragments.PARTIAL);
+        json.writeValue(data.isPartialResults());
+        buf.write(JsonFragments.SEARCH_QUERY);
+        json.writeValue(data.getSearchQuery());
+        buf.write(JsonFragments.REQUESTED_TIME);
+        buf.append(data.getRequestedTime());
+        buf.write(JsonFragments.NEXT_CURSOR);
+        json.writeValue(nextCursor);
+        buf.write(JsonFragments.RESULT);
+        writeDocuments(buf, json, data.getDocumentItems(), fields);
+    }
+
+    /**
+     * Writes the documents of a search result as a JSON array, limited to the API response fields.
+     *
+     * @param buf the writer to append to
+     * @param json the encoder context of the writer
+     * @param documentItems the documents
+     * @param fields the fields to write, already limited to the API response fields, or null for all API response fields
+     * @throws IOException if an I/O error occurs
+     */
+    protected void writeDocuments(final JsonResponseWriter buf, final JsonEncoder.Context json,
+            final List<Map<String, Object>> documentItems, final Set<String> fields) throws IOException {
+        buf.append('[');
+        boolean first1 = true;
+        for (final Map<String, Object> document : documentItems) {
+            if (!first1) {
+                buf.append(',');
+            } else {
+                first1 = false;
+            }
+            buf.append('{');
+            boolean first2 = true;
+            for (final Map.Entry<String, Object> entry : document.entrySet()) {
+                final Object value = entry.getValue();
+                if (value == null) {
+                    continue;
+                }
+                final byte[] key = responseFieldFilter.getEncodedKey(entry.getKey());
+                if (key != null && (fields == null || fields.contains(entry.getKey()))) {
+                    if (!first2) {
+                        buf.append(',');
+                    } else {
+                        first2 = false;
+                    }
+                    buf.write(key);
+                    json.writeValue(value);
+                }
+            }
+            buf.append('}');
+        }
+        buf.append(']');
+    }
+
+    /**
+     * Writes the body of a search response.
+     *
+     * @param buf the writer to append the body content to
+     * @param query the search query
+     * @param data the search result data
+     * @param relatedQueries the related queries
+     * @param relatedContents the related contents
+     * @param fields the fields to write for each document, or null for all API response fields
+     * @throws IOException if an I/O error occurs
+     */
+    protected void writeSearchResponse(final JsonResponseWriter buf, final String query, final SearchRenderData data,
+            final String[] relatedQueries, final String[] relatedContents, final Set<String> fields) throws IOException {
+        final JsonEncoder.Context json = jsonEncoder.createContext(buf);
+        final String execTime = data.getExecTime();
+        final String queryTime = Long.toString(data.getQueryTime());
+        final String pageSize = Integer.toString(data.getPageSize());
+        final String currentPageNumber = Integer.toString(data.getCurrentPageNumber());
+        final String allRecordCount = Long.toString(data.getAllRecordCount());
+        final String allRecordCountRelation = data.getAllRecordCountRelation();
+        final String allPageCount = Integer.toString(data.getAllPageCount());
+        final List<Map<String, Object>> documentItems = data.getDocumentItems();
+        final FacetResponse facetResponse = data.getFacetResponse();
+        final String queryId = data.getQueryId();
+        final String highlightParams = data.getAppendHighlightParams();
+        final boolean nextPage = data.isExistNextPage();
+        final boolean prevPage = data.isExistPrevPage();
+        final long startRecordNumber = data.getCurrentStartRecordNumber();
+        final long endRecordNumber = data.getCurrentEndRecordNumber();
+        final List<String> pageNumbers = data.getPageNumberList();
+        final boolean partial = data.isPartialResults();
+        final String searchQuery = data.getSearchQuery();
+        final long requestedTime = data.getRequestedTime();
+
+        buf.write(JsonFragments.Q);
+        json.writeValue(query);
+        buf.write(JsonFragments.QUERY_ID);
+        json.writeValue(queryId);
+        buf.write(JsonFragments.EXEC_TIME);
+        buf.append(execTime);
+        buf.write(JsonFragments.QUERY_TIME);
+        buf.append(queryTime);
+        buf.write(JsonFragments.PAGE_SIZE);
+        buf.append(pageSize);
+        buf.write(JsonFragments.PAGE_NUMBER);
+        buf.append(currentPageNumber);
+        buf.write(JsonFragments.NEXT_RECORD_COUNT);
+        buf.append(allRecordCount);
+        buf.write(JsonFragments.RECORD_COUNT_RELATION);
+        json.writeValue(allRecordCountRelation);
+        buf.write(JsonFragments.PAGE_COUNT);
+        buf.append(allPageCount);
+        buf.write(JsonFragments.HIGHLIGHT_PARAMS);
+        json.writeValue(highlightParams);
+        buf.write(JsonFragments.NEXT_PAGE);
+        json.writeValue(nextPage);
+        buf.write(JsonFragments.PREV_PAGE);
+        json.writeValue(prevPage);
+        buf.write(JsonFragments.START_RECORD_NUMBER);
+        buf.append(startRecordNumber);
+        buf.write(JsonFragments.END_RECORD_NUMBER);
+        json.writeValue(endRecordNumber);
+        buf.write(JsonFragments.PAGE_NUMBERS);
+        json.writeValue(pageNumbers);
+        buf.write(JsonFragments.PARTIAL);
+        json.writeValue(partial);
+        buf.write(JsonFragments.SEARCH_QUERY);
+        json.writeValue(searchQuery);
+        buf.write(JsonFragments.REQUESTED_TIME);
+        buf.append(requestedTime);
+        buf.write(JsonFragments.RELATED_QUERY);
+        json.writeValue(relatedQueries);
+        buf.write(JsonFragments.RELATED_CONTENTS);
+        json.writeValue(relatedContents);
+        buf.write(JsonFragments.RESULT);
+        writeDocuments(buf, json, documentItems, fields);
+        if (facetResponse != null && facetResponse.hasFacetResponse()) {
+            // facet field
+            buf.write(JsonFragments.FACET_FIELD);
+            if (facetResponse.getFieldList() != null) {
                 boolean first1 = true;
-                for (final Map<String, Object> document : documentItems) {
+                for (final Field field : facetResponse.getFieldList()) {
                     if (!first1) {
                         buf.append(',');
                     } else {
                         first1 = false;
                     }
-                    buf.append('{');
+                    buf.write(JsonFragments.NAME_OBJECT);
+                    json.writeValue(field.getName());
+                    buf.write(JsonFragments.NEXT_RESULT_ARRAY);
                     boolean first2 = true;
-                    for (final Map.Entry<String, Object> entry : document.entrySet()) {
-                        final String name = entry.getKey();
-                        if (StringUtil.isNotBlank(name) && entry.getValue() != null
-                                && ComponentUtil.getQueryFieldConfig().isApiResponseField(name)) {
-                            if (!first2) {
-                                buf.append(',');
-                            } else {
-                                first2 = false;
-                            }
-                            buf.append(escapeJson(name));
-                            buf.append(':');
-                            buf.append(escapeJson(entry.getValue()));
-                        }
-                    }
-                    buf.append('}');
-                }
-            }
-            buf.append(']');
-            if (facetResponse != null && facetResponse.hasFacetResponse()) {
-                // facet field
-                buf.append(',');
-                buf.append("\"facet_field\":[");
-                if (facetResponse.getFieldList() != null) {
-                    boolean first1 = true;
-                    for (final Field field : facetResponse.getFieldList()) {
-                        if (!first1) {
-                            buf.append(',');
-                        } else {
-                            first1 = false;
-                        }
-                        buf.append("{\"name\":");
-                        buf.append(escapeJson(field.getName()));
-                        buf.append(",\"result\":[");
-                        boolean first2 = true;
-                        for (final Map.Entry<String, Long> entry : field.getValueCountMap().entrySet()) {
-                            if (!first2) {
-                                buf.append(',');
-                            } else {
-                                first2 = false;
-                            }
-                            buf.append("{\"value\":");
-                            buf.append(escapeJson(entry.getKey()));
-                            buf.append(",\"count\":");
-                            buf.append(entry.getValue());
-                            buf.append('}');
-                        }
-                        buf.append(']');
-                        buf.append('}');
-                    }
-                }
-                buf.append(']');
-                // facet q
-                buf.append(',');
-                buf.append("\"facet_query\":[");
-                if (facetResponse.getQueryCountMap() != null) {
-                    boolean first1 = true;
-                    for (final Map.Entry<String, Long> entry : facetResponse.getQueryCountMap().entrySet()) {
-                        if (!first1) {
+                    for (final Map.Entry<String, Long> entry : field.getValueCountMap().entrySet()) {
+                        if (!first2) {
                             buf.append(',');
                         } else {
-                            first1 = false;
+                            first2 = false;
                         }
-                        buf.append("{\"value\":");
-                        buf.append(escapeJson(entry.getKey()));
-                        buf.append(",\"count\":");
+                        buf.write(JsonFragments.VALUE_OBJECT);
+                        json.writeValue(entry.getKey());
+                        buf.write(JsonFragments.COUNT);
                         buf.append(entry.getValue());
                         buf.append('}');
                     }
+                    buf.append(']');
+                    buf.append('}');
                 }
-                buf.append(']');
             }
-        } catch (final Exception e) {
-            status = 1;
-            err = e;
-            if (logger.isDebugEnabled()) {
-                logger.debug("Failed to process a search request.", e);
+            buf.append(']');
+            // facet q
+            buf.write(JsonFragments.FACET_QUERY);
+            if (facetResponse.getQueryCountMap() != null) {
+                boolean first1 = true;
+                for (final Map.Entry<String, Long> entry : facetResponse.getQueryCountMap().entrySet()) {
+                    if (!first1) {
+                        buf.append(',');
+                    } else {
+                        first1 = false;
+                    }
+                    buf.write(JsonFragments.VALUE_OBJECT);
+                    json.writeValue(entry.getKey());
+                    buf.write(JsonFragments.COUNT);
+                    buf.append(entry.getValue());
+                    buf.append('}');
+                }
             }
+            buf.append(']');
         }
-
-        writeJsonResponse(status, buf.toString(), err);
-
     }
 
     /**
@@ -456,33 +1372,38 @@ public class JsonApiManager extends ClassicJsonApiManager {
      */
     protected void processLabelRequest(final HttpServletRequest request, final HttpServletResponse response, final FilterChain chain) {
         final LabelTypeHelper labelTypeHelper = ComponentUtil.getLabelTypeHelper();
+        final ApiMetrics.Sample sample = getMetricsSample(request);
 
         int status = 0;
         Exception err = null;
-        final StringBuilder buf = new StringBuilder(255); // TODO replace response stream
+        ResponseBody body = null;
         try {
+            sample.startBackend();
             final List<Map<String, String>> labelTypeItems = labelTypeHelper.getLabelTypeItemList(SearchRequestType.JSON,
                     request.getLocale() == null ? Locale.ROOT : request.getLocale());
-            buf.append("\"record_count\":");
-            buf.append(labelTypeItems.size());
-            if (!labelTypeItems.isEmpty()) {
-                buf.append(',');
-                buf.append("\"result\":[");
-                boolean first1 = true;
-                for (final Map<String, String> labelMap : labelTypeItems) {
-                    if (!first1) {
-                        buf.append(',');
-                    } else {
-                        first1 = false;
+            sample.endBackend();
+            body = buf -> {
+                final JsonEncoder.Context json = jsonEncoder.createContext(buf);
+                buf.write(JsonFragments.RECORD_COUNT);
+                buf.append(labelTypeItems.size());
+                if (!labelTypeItems.isEmpty()) {
+                    buf.write(JsonFragments.NEXT_RESULT_ARRAY);
+                    boolean first1 = true;
+                    for (final Map<String, String> labelMap : labelTypeItems) {
+                        if (!first1) {
+                            buf.append(',');
+                        } else {
+                            first1 = false;
+                        }
+                        buf.write(JsonFragments.LABEL_OBJECT);
+                        json.writeValue(labelMap.get(Constants.ITEM_LABEL));
+                        buf.write(JsonFragments.LABEL_VALUE);
+                        json.writeValue(labelMap.get(Constants.ITEM_VALUE));
+                        buf.append('}');
                     }
-                    buf.append("{\"label\":");
-                    buf.append(escapeJson(labelMap.get(Constants.ITEM_LABEL)));
-                    buf.append(", \"value\":");
-                    buf.append(escapeJson(labelMap.get(Constants.ITEM_VALUE)));
-                    buf.append('}');
+                    buf.append(']');
                 }
-                buf.append(']');
-            }
+            };
         } catch (final Exception e) {
             status = 1;
             err = e;
@@ -491,7 +1412,7 @@ public class JsonApiManager extends ClassicJsonApiManager {
             }
         }
 
-        writeJsonResponse(status, buf.toString(), err);
+        writeJsonResponse(status, body, err);
 
     }
 
@@ -505,7 +1426,7 @@ public class JsonApiManager extends ClassicJsonApiManager {
     protected void processPopularWordRequest(final HttpServletRequest request, final HttpServletResponse response,
             final FilterChain chain) {
         if (!ComponentUtil.getFessConfig().isWebApiPopularWord()) {
-            writeJsonResponse(9, null, "Unsupported operation.");
+            writeJsonResponse(9, StringUtil.EMPTY, "Unsupported operation.");
             return;
         }
 
@@ -523,25 +1444,35 @@ public class JsonApiManager extends ClassicJsonApiManager {
         final String[] excludes = StringUtil.EMPTY_STRINGS;// TODO
 
         final PopularWordHelper popularWordHelper = ComponentUtil.getPopularWordHelper();
+        final ApiMetrics.Sample sample = getMetricsSample(request);
 
         int status = 0;
         Exception err = null;
-        final StringBuilder buf = new StringBuilder(255); // TODO replace response stream
+        ResponseBody body = null;
         try {
-            final List<String> popularWordList = popularWordHelper.getWordList(SearchRequestType.JSON, seed,
-                    tagList.toArray(new String[tagList.size()]), null, fields, excludes);
+            final List<String> popularWordList;
+            sample.startBackend();
+            try {
+                popularWordList = popularWordHelper.getWordList(SearchRequestType.JSON, seed, tagList.toArray(new String[tagList.size()]),
+                        null, fields, excludes);
+            } finally {
+                sample.endBackend();
+            }
 
-            buf.append("\"result\":[");
-            boolean first1 = true;
-            for (final String word : popularWordList) {
-                if (!first1) {
-                    buf.append(',');
-                } else {
-                    first1 = false;
+            body = buf -> {
+                final JsonEncoder.Context json = jsonEncoder.createContext(buf);
+                buf.write(JsonFragments.RESULT_ARRAY);
+                boolean first1 = true;
+                for (final String word : popularWordList) {
+                    if (!first1) {
+                        buf.append(',');
+                    } else {
+                        first1 = false;
+                    }
+                    json.writeValue(word);
                 }
-                buf.append(escapeJson(word));
-            }
-            buf.append(']');
+                buf.append(']');
+            };
         } catch (final Exception e) {
             if (e instanceof WebApiException) {
                 status = ((WebApiException) e).getStatusCode();
@@ -554,7 +1485,7 @@ public class JsonApiManager extends ClassicJsonApiManager {
             }
         }
 
-        writeJsonResponse(status, buf.toString(), err);
+        writeJsonResponse(status, body, err);
 
     }
 
@@ -567,7 +1498,7 @@ public class JsonApiManager extends ClassicJsonApiManager {
      */
     protected void processFavoriteRequest(final HttpServletRequest request, final HttpServletResponse response, final FilterChain chain) {
         if (!ComponentUtil.getFessConfig().isUserFavorite()) {
-            writeJsonResponse(9, null, "Unsupported operation.");
+            writeJsonResponse(9, StringUtil.EMPTY, "Unsupported operation.");
             return;
         }
 
@@ -581,10 +1512,12 @@ public class JsonApiManager extends ClassicJsonApiManager {
             final String docId = request.getParameter("docId");
             final String queryId = request.getParameter("queryId");
 
-            final String[] docIds = userInfoHelper.getResultDocIds(URLDecoder.decode(queryId, Constants.UTF_8));
+            final String decodedQueryId = URLDecoder.decode(queryId, Constants.UTF_8);
+            final String[] docIds = userInfoHelper.getResultDocIds(decodedQueryId);
             if (docIds == null) {
                 throw new WebApiException(6, "No searched urls.");
             }
+            final Set<String> docIdSet = docIdSetCache.get(decodedQueryId, docIds);
 
             searchHelper
                     .getDocumentByDocId(docId, new String[] { fessConfig.getIndexFieldUrl(), fessConfig.getIndexFieldLang() },
@@ -600,14 +1533,7 @@ public class JsonApiManager extends ClassicJsonApiManager {
                             throw new WebApiException(2, "URL is null.");
                         }
 
-                        boolean found = false;
-                        for (final String id : docIds) {
-                            if (docId.equals(id)) {
-                                found = true;
-                                break;
-                            }
-                        }
-                        if (!found) {
+                        if (!docIdSet.contains(docId)) {
                             throw new WebApiException(5, "Not found: " + favoriteUrl);
                         }
 
@@ -620,8 +1546,19 @@ public class JsonApiManager extends ClassicJsonApiManager {
                         })) {
                             throw new WebApiException(4, "Failed to add url: " + favoriteUrl);
                         }
+                        if (favoritesCache.isEnabled()) {
+                            favoritesCache.addUrl(userCode, favoriteUrl);
+                        }
 
                         final String id = DocumentUtil.getValue(doc, fessConfig.getIndexFieldId(), String.class);
+                        if (favoriteCountUpdater.isEnabled()) {
+                            final Script script = ComponentUtil.getLanguageHelper()
+                                    .createScript(doc, "ctx._source." + fessConfig.getIndexFieldFavoriteCount() + "+=params."
+                                            + FavoriteCountUpdater.DELTA_PARAM);
+                            favoriteCountUpdater.increment(id, script);
+                            writeJsonResponse(0, "\"result\":\"ok\"", (String) null);
+                            return;
+                        }
                         searchHelper.update(id, builder -> {
                             final Script script = ComponentUtil.getLanguageHelper()
                                     .createScript(doc, "ctx._source." + fessConfig.getIndexFieldFavoriteCount() + "+=1");
@@ -646,7 +1583,7 @@ public class JsonApiManager extends ClassicJsonApiManager {
             } else {
                 status = 1;
             }
-            writeJsonResponse(status, null, e);
+            writeJsonResponse(status, StringUtil.EMPTY, e);
             if (logger.isDebugEnabled()) {
                 logger.debug("Failed to process a favorite request.", e);
             }
@@ -663,7 +1600,7 @@ public class JsonApiManager extends ClassicJsonApiManager {
      */
     protected void processFavoritesRequest(final HttpServletRequest request, final HttpServletResponse response, final FilterChain chain) {
         if (!ComponentUtil.getFessConfig().isUserFavorite()) {
-            writeJsonResponse(9, null, "Unsupported operation.");
+            writeJsonResponse(9, StringUtil.EMPTY, "Unsupported operation.");
             return;
         }
 
@@ -671,9 +1608,10 @@ public class JsonApiManager extends ClassicJsonApiManager {
         final FessConfig fessConfig = ComponentUtil.getFessConfig();
         final SearchHelper searchHelper = ComponentUtil.getSearchHelper();
         final FavoriteLogService favoriteLogService = ComponentUtil.getComponent(FavoriteLogService.class);
+        final ApiMetrics.Sample sample = getMetricsSample(request);
 
         int status = 0;
-        String body = null;
+        ResponseBody body = null;
         Exception err = null;
 
         try {
@@ -687,42 +1625,54 @@ public class JsonApiManager extends ClassicJsonApiManager {
                 throw new WebApiException(3, "Query ID is null.");
             }
 
-            final String[] docIds = userInfoHelper.getResultDocIds(queryId);
-            final List<Map<String, Object>> docList = searchHelper.getDocumentListByDocIds(docIds, new String[] {
-                    fessConfig.getIndexFieldUrl(), fessConfig.getIndexFieldDocId(), fessConfig.getIndexFieldFavoriteCount() },
-                    OptionalThing.empty(), SearchRequestType.JSON);
-            List<String> urlList = new ArrayList<>(docList.size());
-            for (final Map<String, Object> doc : docList) {
-                final String urlObj = DocumentUtil.getValue(doc, fessConfig.getIndexFieldUrl(), String.class);
-                if (urlObj != null) {
-                    urlList.add(urlObj);
-                }
-            }
-            urlList = favoriteLogService.getUrlList(userCode, urlList);
-            final List<String> docIdList = new ArrayList<>(urlList.size());
-            for (final Map<String, Object> doc : docList) {
-                final String urlObj = DocumentUtil.getValue(doc, fessConfig.getIndexFieldUrl(), String.class);
-                if (urlObj != null && urlList.contains(urlObj)) {
-                    final String docIdObj = DocumentUtil.getValue(doc, fessConfig.getIndexFieldDocId(), String.class);
-                    if (docIdObj != null) {
-                        docIdList.add(docIdObj);
+            final List<Map<String, Object>> docList;
+            List<String> urlList;
+            sample.startBackend();
+            try {
+                final String[] docIds = userInfoHelper.getResultDocIds(queryId);
+                final FavoritesCache.UserFavorites favorites =
+                        docIds != null && favoritesCache.isEnabled() ? favoritesCache.getUserFavorites(userCode) : null;
+                List<Map<String, Object>> cachedDocList = favorites != null ? favorites.getDocList(queryId, docIds) : null;
+                if (cachedDocList == null) {
+                    cachedDocList = searchHelper.getDocumentListByDocIds(docIds, new String[] { fessConfig.getIndexFieldUrl(),
+                            fessConfig.getIndexFieldDocId(), fessConfig.getIndexFieldFavoriteCount() }, OptionalThing.empty(),
+                            SearchRequestType.JSON);
+                    if (favorites != null) {
+                        favorites.putDocList(queryId, docIds, cachedDocList);
                     }
                 }
-            }
-
-            final StringBuilder buf = new StringBuilder(255); // TODO replace response stream
-            buf.append("\"num\":").append(docIdList.size());
-            buf.append(", \"doc_ids\":[");
-            if (!docIdList.isEmpty()) {
-                for (int i = 0; i < docIdList.size(); i++) {
-                    if (i > 0) {
-                        buf.append(',');
+                docList = cachedDocList;
+                urlList = new ArrayList<>(docList.size());
+                for (final Map<String, Object> doc : docList) {
+                    final String urlObj = DocumentUtil.getValue(doc, fessConfig.getIndexFieldUrl(), String.class);
+                    if (urlObj != null) {
+                        urlList.add(urlObj);
                     }
-                    buf.append(escapeJson(docIdList.get(i)));
                 }
+                if (favorites != null) {
+                    urlList = favorites.getUrlList(urlList, list -> favoriteLogService.getUrlList(userCode, list));
+                } else {
+                    urlList = favoriteLogService.getUrlList(userCode, urlList);
+                }
+            } finally {
+                sample.endBackend();
             }
-            buf.append(']');
-            body = buf.toString();
+            final List<String> docIdList = getFavoriteDocIds(fessConfig, docList, urlList);
+
+            body = buf -> {
+                final JsonEncoder.Context json = jsonEncoder.createContext(buf);
+                buf.append("\"num\":").append(docIdList.size());
+                buf.append(", \"doc_ids\":[");
+                if (!docIdList.isEmpty()) {
+                    for (int i = 0; i < docIdList.size(); i++) {
+                        if (i > 0) {
+                            buf.append(',');
+                        }
+                        json.writeValue(docIdList.get(i));
+                    }
+                }
+                buf.append(']');
+            };
         } catch (final Exception e) {
             if (e instanceof WebApiException) {
                 status = ((WebApiException) e).getStatusCode();
@@ -740,6 +1690,35 @@ public class JsonApiManager extends ClassicJsonApiManager {
 
     }
 
+    /**
+     * Returns the document IDs of the documents whose URL is a favorite of the user, in the order of the documents.
+     *
+     * @param fessConfig the Fess configuration
+     * @param docList the documents
+     * @param favoriteUrlList the favorite URLs among the URLs of the documents
+     * @return the document IDs of the favorite documents
+     */
+    protected List<String> getFavoriteDocIds(final FessConfig fessConfig, final List<Map<String, Object>> docList,
+            final List<String> favoriteUrlList) {
+        final List<String> docIdList = new ArrayList<>(favoriteUrlList.size());
+        if (favoriteUrlList.isEmpty()) {
+            return docIdList;
+        }
+        final Set<String> favoriteUrlSet = new HashSet<>(favoriteUrlList);
+        final String urlField = fessConfig.getIndexFieldUrl();
+        final String docIdField = fessConfig.getIndexFieldDocId();
+        for (final Map<String, Object> doc : docList) {
+            final String urlObj = DocumentUtil.getValue(doc, urlField, String.class);
+            if (urlObj != null && favoriteUrlSet.contains(urlObj)) {
+                final String docIdObj = DocumentUtil.getValue(doc, docIdField, String.class);
+                if (docIdObj != null) {
+                    docIdList.add(docIdObj);
+                }
+            }
+        }
+        return docIdList;
+    }
+
     /**
      * Request parameter wrapper for JSON API requests.
      * Extracts and validates parameters from HTTP requests for search operations.
@@ -756,6 +1735,10 @@ public class JsonApiManager extends ClassicJsonApiManager {
 
         private int offset = -1;
 
+        private Set<String> responseFieldSet;
+
+        private boolean responseFieldSetParsed;
+
         /**
          * Constructs JsonRequestParams from HTTP request and Fess configuration.
          *
@@ -912,6 +1895,442 @@ public class JsonApiManager extends ClassicJsonApiManager {
             }
             return offset;
         }
+
+        /**
+         * Returns the fields requested by the {@value #FIELD_LIST_PARAM} parameter that are API response fields,
+         * or null if the parameter is not given and all API response fields are returned.
+         * The parameter is a list of field names separated by commas or spaces and may be repeated.
+         *
+         * @return the requested fields in request order, or null
+         */
+        public Set<String> getResponseFieldSet() {
+            if (responseFieldSetParsed) {
+                return responseFieldSet;
+            }
+
+            final String[] values = request.getParameterValues(FIELD_LIST_PARAM);
+            if (values != null) {
+                final Set<String> fieldSet = new LinkedHashSet<>();
+                for (final String value : values) {
+                    for (final String name : value.split("[,\\s]+")) {
+                        if (StringUtil.isNotBlank(name) && ComponentUtil.getQueryFieldConfig().isApiResponseField(name)) {
+                            fieldSet.add(name);
+                        }
+                    }
+                }
+                responseFieldSet = fieldSet;
+            }
+            responseFieldSetParsed = true;
+            return responseFieldSet;
+        }
+
+        /**
+         * Returns the fields to fetch from the index: the requested fields and the fields they are derived from
+         * if the {@value #FIELD_LIST_PARAM} parameter is given, otherwise all response fields.
+         */
+        @Override
+        public String[] getResponseFields() {
+            final String[] responseFields = super.getResponseFields();
+            final Set<String> fieldSet = getResponseFieldSet();
+            if (fieldSet == null) {
+                return responseFields;
+            }
+
+            final Set<String> fetchFieldSet = new HashSet<>(fieldSet);
+            fetchFieldSet.add(fessConfig.getIndexFieldId());
+            fetchFieldSet.add(fessConfig.getIndexFieldDocId());
+            if (fieldSet.contains(fessConfig.getResponseFieldContentTitle())) {
+                fetchFieldSet.add(fessConfig.getIndexFieldTitle());
+                fetchFieldSet.add(fessConfig.getIndexFieldFilename());
+                fetchFieldSet.add(fessConfig.getIndexFieldUrl());
+            }
+            if (fieldSet.contains(fessConfig.getResponseFieldContentDescription())) {
+                fetchFieldSet.add(fessConfig.getIndexFieldDigest());
+            }
+            if (fieldSet.contains(fessConfig.getResponseFieldUrlLink()) || fieldSet.contains(fessConfig.getResponseFieldSitePath())) {
+                fetchFieldSet.add(fessConfig.getIndexFieldUrl());
+                fetchFieldSet.add(fessConfig.getIndexFieldConfigId());
+            }
+            return Arrays.stream(responseFields).filter(fetchFieldSet::contains).toArray(String[]::new);
+        }
+    }
+
+    /**
+     * Request parameters of scroll search requests.
+     * The num parameter sets the number of documents fetched per scroll page, bounded by the
+     * {@value #SCROLL_MAX_PAGE_SIZE_PROPERTY} system property, and defaults to {@value #SCROLL_PAGE_SIZE_PROPERTY}.
+     */
+    protected static class ScrollRequestParams extends JsonRequestParams {
+
+        private final HttpServletRequest request;
+
+        private final FessConfig fessConfig;
+
+        private int pageSize = -1;
+
+        /**
+         * Constructs ScrollRequestParams from HTTP request and Fess configuration.
+         *
+         * @param request the HTTP servlet request
+         * @param fessConfig the Fess configuration
+         */
+        protected ScrollRequestParams(final HttpServletRequest request, final FessConfig fessConfig) {
+            super(request, fessConfig);
+            this.request = request;
+            this.fessConfig = fessConfig;
+        }
+
+        @Override
+        public int getPageSize() {
+            if (pageSize != -1) {
+                return pageSize;
+            }
+
+            final int defaultSize = fessConfig.getSystemPropertyAsInt(SCROLL_PAGE_SIZE_PROPERTY, DEFAULT_SCROLL_PAGE_SIZE);
+            final int maxSize = fessConfig.getSystemPropertyAsInt(SCROLL_MAX_PAGE_SIZE_PROPERTY, DEFAULT_SCROLL_MAX_PAGE_SIZE);
+            final String num = request.getParameter("num");
+            int size;
+            try {
+                size = StringUtil.isBlank(num) ? defaultSize : Integer.parseInt(num);
+            } catch (final NumberFormatException e) {
+                size = defaultSize;
+            }
+            if (size <= 0) {
+                size = defaultSize;
+            }
+            pageSize = Math.min(size, maxSize);
+            return pageSize;
+        }
+    }
+
+    /**
+     * Response bound to a worker thread running a part of a request, e.g. one search of a multi search request.
+     * The response is written by the request thread only, so everything a worker writes to this response is dropped
+     * and helpers touching the current response (e.g. for a cookie) do not write to the shared response concurrently.
+     */
+    protected static class WorkerResponse extends HttpServletResponseWrapper {
+        private ServletOutputStream outputStream;
+
+        private PrintWriter writer;
+
+        /**
+         * Constructs a WorkerResponse.
+         *
+         * @param response the response of the request
+         */
+        public WorkerResponse(final HttpServletResponse response) {
+            super(response);
+        }
+
+        @Override
+        public void setStatus(final int sc) {
+            // written by the request thread
+        }
+
+        @Override
+        public void sendError(final int sc) {
+            // written by the request thread
+        }
+
+        @Override
+        public void sendError(final int sc, final String msg) {
+            // written by the request thread
+        }
+
+        @Override
+        public void sendRedirect(final String location) {
+            // written by the request thread
+        }
+
+        @Override
+        public void setContentType(final String type) {
+            // written by the request thread
+        }
+
+        @Override
+        public void setCharacterEncoding(final String charset) {
+            // written by the request thread
+        }
+
+        @Override
+        public void setContentLength(final int len) {
+            // written by the request thread
+        }
+
+        @Override
+        public void setContentLengthLong(final long len) {
+            // written by the request thread
+        }
+
+        @Override
+        public void setLocale(final Locale loc) {
+            // written by the request thread
+        }
+
+        @Override
+        public void setBufferSize(final int size) {
+            // written by the request thread
+        }
+
+        @Override
+        public void addCookie(final Cookie cookie) {
+            // written by the request thread
+        }
+
+        @Override
+        public void setHeader(final String name, final String value) {
+            // written by the request thread
+        }
+
+        @Override
+        public void addHeader(final String name, final String value) {
+            // written by the request thread
+        }
+
+        @Override
+        public void setIntHeader(final String name, final int value) {
+            // written by the request thread
+        }
+
+        @Override
+        public void addIntHeader(final String name, final int value) {
+            // written by the request thread
+        }
+
+        @Override
+        public void setDateHeader(final String name, final long date) {
+            // written by the request thread
+        }
+
+        @Override
+        public void addDateHeader(final String name, final long date) {
+            // written by the request thread
+        }
+
+        @Override
+        public void flushBuffer() {
+            // written by the request thread
+        }
+
+        @Override
+        public void reset() {
+            // written by the request thread
+        }
+
+        @Override
+        public void resetBuffer() {
+            // written by the request thread
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() {
+            if (outputStream == null) {
+                outputStream = new ServletOutputStream() {
+                    @Override
+                    public void write(final int b) {
+                        // written by the request thread
+                    }
+
+                    @Override
+                    public void write(final byte[] b, final int off, final int len) {
+                        // written by the request thread
+                    }
+
+                    @Override
+                    public boolean isReady() {
+                        return true;
+                    }
+
+                    @Override
+                    public void setWriteListener(final WriteListener writeListener) {
+                        throw new IllegalStateException("Non-blocking I/O is not supported by a worker response.");
+                    }
+                };
+            }
+            return outputStream;
+        }
+
+        @Override
+        public PrintWriter getWriter() {
+            if (writer == null) {
+                writer = new PrintWriter(Writer.nullWriter());
+            }
+            return writer;
+        }
+    }
+
+    /**
+     * Request of one search in a multi search request.
+     * It has its own parameters and keeps the attributes set during the search to itself,
+     * so that the searches of a batch running at the same time do not see each other's attributes.
+     */
+    protected static class MultiSearchEntryRequest extends HttpServletRequestWrapper {
+
+        /** The marker of attributes removed from this request. */
+        private static final Object REMOVED = new Object();
+
+        private final Map<String, String[]> parameterMap;
+
+        private final Map<String, Object> attributeMap = new ConcurrentHashMap<>();
+
+        /**
+         * Constructs a MultiSearchEntryRequest.
+         *
+         * @param request the multi search request
+         * @param parameterMap the parameters of the search
+         */
+        protected MultiSearchEntryRequest(final HttpServletRequest request, final Map<String, String[]> parameterMap) {
+            super(request);
+            this.parameterMap = Collections.unmodifiableMap(parameterMap);
+        }
+
+        @Override
+        public String getParameter(final String name) {
+            final String[] values = parameterMap.get(name);
+            return values != null && values.length > 0 ? values[0] : null;
+        }
+
+        @Override
+        public String[] getParameterValues(final String name) {
+            final String[] values = parameterMap.get(name);
+            return values != null ? values.clone() : null;
+        }
+
+        @Override
+        public Map<String, String[]> getParameterMap() {
+            return parameterMap;
+        }
+
+        @Override
+        public Enumeration<String> getParameterNames() {
+            return Collections.enumeration(parameterMap.keySet());
+        }
+
+        @Override
+        public Object getAttribute(final String name) {
+            final Object value = attributeMap.get(name);
+            if (value == REMOVED) {
+                return null;
+            }
+            return value != null ? value : super.getAttribute(name);
+        }
+
+        @Override
+        public Enumeration<String> getAttributeNames() {
+            final Set<String> names = new LinkedHashSet<>(Collections.list(super.getAttributeNames()));
+            attributeMap.forEach((name, value) -> {
+                if (value == REMOVED) {
+                    names.remove(name);
+                } else {
+                    names.add(name);
+                }
+            });
+            return Collections.enumeration(names);
+        }
+
+        @Override
+        public void setAttribute(final String name, final Object value) {
+            if (value == null) {
+                removeAttribute(name);
+            } else {
+                attributeMap.put(name, value);
+            }
+        }
+
+        @Override
+        public void removeAttribute(final String name) {
+            attributeMap.put(name, REMOVED);
+        }
+    }
+
+    /**
+     * Returns the cache of serialized search response bodies.
+     *
+     * @return the search response cache
+     */
+    public ResponseCache getSearchResponseCache() {
+        return searchResponseCache;
+    }
+
+    /**
+     * Sets the cache of serialized search response bodies.
+     *
+     * @param searchResponseCache the search response cache
+     */
+    public void setSearchResponseCache(final ResponseCache searchResponseCache) {
+        this.searchResponseCache = searchResponseCache;
+    }
+
+    /**
+     * Gets the sets of the result document IDs of recent queries.
+     *
+     * @return the document ID set cache
+     */
+    public DocIdSetCache getDocIdSetCache() {
+        return docIdSetCache;
+    }
+
+    /**
+     * Sets the sets of the result document IDs of recent queries.
+     *
+     * @param docIdSetCache the document ID set cache to set
+     */
+    public void setDocIdSetCache(final DocIdSetCache docIdSetCache) {
+        this.docIdSetCache = docIdSetCache;
+    }
+
+    /**
+     * Gets the cache of the favorites of users.
+     *
+     * @return the favorites cache
+     */
+    public FavoritesCache getFavoritesCache() {
+        return favoritesCache;
+    }
+
+    /**
+     * Sets the cache of the favorites of users.
+     *
+     * @param favoritesCache the favorites cache to set
+     */
+    public void setFavoritesCache(final FavoritesCache favoritesCache) {
+        this.favoritesCache = favoritesCache;
+    }
+
+    /**
+     * Gets the health snapshot of the search engine for ping requests.
+     *
+     * @return the health monitor
+     */
+    public HealthMonitor getHealthMonitor() {
+        return healthMonitor;
+    }
+
+    /**
+     * Sets the health snapshot of the search engine for ping requests.
+     *
+     * @param healthMonitor the health monitor to set
+     */
+    public void setHealthMonitor(final HealthMonitor healthMonitor) {
+        this.healthMonitor = healthMonitor;
+    }
+
+    /**
+     * Gets the write-behind updater of favorite counts.
+     *
+     * @return the favorite count updater
+     */
+    public FavoriteCountUpdater getFavoriteCountUpdater() {
+        return favoriteCountUpdater;
+    }
+
+    /**
+     * Sets the write-behind updater of favorite counts.
+     *
+     * @param favoriteCountUpdater the favorite count updater to set
+     */
+    public void setFavoriteCountUpdater(final FavoriteCountUpdater favoriteCountUpdater) {
+        this.favoriteCountUpdater = favoriteCountUpdater;
     }
 
     @Override
@@ -0,0 +1,504 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.classic;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Encoder that writes Java objects as JSON into a caller-supplied sink.
+ * Values are dispatched on their type through a registry of {@link TypeEncoder}s, and
+ * nested arrays, collections and maps are traversed with an explicit stack instead of
+ * recursion, so no intermediate String is created for nested elements.
+ * Strings are escaped in the same way as StringEscapeUtils.escapeJson, using a precomputed
+ * table for ASCII characters and hexadecimal Unicode escapes for other characters.
+ */
+public class JsonEncoder {
+
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    private static final String[] ASCII_ESCAPES = new String[128];
+
+    static {
+        for (int i = 0; i < 32; i++) {
+            ASCII_ESCAPES[i] = "\\u00" + HEX_DIGITS[i >> 4] + HEX_DIGITS[i & 0xf];
+        }
+        ASCII_ESCAPES['\b'] = "\\b";
+        ASCII_ESCAPES['\n'] = "\\n";
+        ASCII_ESCAPES['\t'] = "\\t";
+        ASCII_ESCAPES['\f'] = "\\f";
+        ASCII_ESCAPES['\r'] = "\\r";
+        ASCII_ESCAPES['"'] = "\\\"";
+        ASCII_ESCAPES['\\'] = "\\\\";
+        ASCII_ESCAPES['/'] = "\\/";
+        ASCII_ESCAPES[0x7f] = "\\u007F";
+    }
+
+    /**
+     * Encoder for values of a specific type.
+     *
+     * @param <T> the type of values to encode
+     */
+    @FunctionalInterface
+    public interface TypeEncoder<T> {
+        /**
+         * Writes a value through the given context.
+         * Encoders for containers should call one of the begin methods of the context,
+         * which write the elements after this method returns.
+         *
+         * @param value the value to encode, not null
+         * @param context the encoding context
+         * @throws IOException if an I/O error occurs
+         */
+        void encode(T value, Context context) throws IOException;
+    }
+
+    private static final TypeEncoder<Object> DEFAULT_ENCODER = (value, context) -> context.writeString(value.toString());
+
+    private final Map<Class<?>, TypeEncoder<?>> encoderMap = new ConcurrentHashMap<>();
+
+    private final Map<Class<?>, TypeEncoder<?>> resolvedEncoderMap = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs a JsonEncoder with the default type encoders.
+     */
+    public JsonEncoder() {
+        register(String.class, (value, context) -> context.writeString(value));
+        final TypeEncoder<Number> numberEncoder = (value, context) -> context.writeRaw(value.toString());
+        register(Integer.class, (value, context) -> context.writeNumber(value.intValue()));
+        register(Long.class, (value, context) -> context.writeNumber(value.longValue()));
+        register(Float.class, numberEncoder);
+        register(Double.class, numberEncoder);
+        register(Boolean.class, (value, context) -> context.writeRaw(value.booleanValue() ? "true" : "false"));
+        register(Date.class, new IsoDateEncoder());
+        register(Object[].class, (value, context) -> context.beginArray(value));
+        register(List.class, (value, context) -> context.beginArray(value));
+        register(Collection.class, (value, context) -> context.beginArray(value.iterator()));
+        register(Map.class, (value, context) -> context.beginObject(value));
+        register(long[].class, (value, context) -> {
+            final Appendable out = context.out();
+            out.append('[');
+            for (int i = 0; i < value.length; i++) {
+                if (i > 0) {
+                    out.append(',');
+                }
+                context.writeNumber(value[i]);
+            }
+            out.append(']');
+        });
+        register(int[].class, (value, context) -> {
+            final Appendable out = context.out();
+            out.append('[');
+            for (int i = 0; i < value.length; i++) {
+                if (i > 0) {
+                    out.append(',');
+                }
+                context.writeNumber(value[i]);
+            }
+            out.append(']');
+        });
+    }
+
+    /**
+     * Registers an encoder for the specified type.
+     * The encoder is also used for subtypes which have no more specific encoder.
+     *
+     * @param <T> the type of values
+     * @param type the type of values to encode
+     * @param encoder the encoder for the type
+     */
+    public <T> void register(final Class<T> type, final TypeEncoder<? super T> encoder) {
+        encoderMap.put(type, encoder);
+        resolvedEncoderMap.clear();
+    }
+
+    /**
+     * Creates an encoding context that writes into the specified sink.
+     * A context is not thread-safe, but can be reused for multiple values.
+     *
+     * @param out the sink to write JSON to
+     * @return the encoding context
+     */
+    public Context createContext(final Appendable out) {
+        return new Context(out);
+    }
+
+    /**
+     * Writes a value as JSON into the specified sink.
+     *
+     * @param value the value to encode, may be null
+     * @param out the sink to write JSON to
+     * @throws IOException if an I/O error occurs
+     */
+    public void encode(final Object value, final Appendable out) throws IOException {
+        createContext(out).writeValue(value);
+    }
+
+    /**
+     * Finds the encoder for the specified type.
+     * The type itself, its superclasses and then its interfaces are searched in order.
+     *
+     * @param type the type of a value
+     * @return the encoder
+     */
+    protected TypeEncoder<?> getEncoder(final Class<?> type) {
+        final TypeEncoder<?> encoder = resolvedEncoderMap.get(type);
+        if (encoder != null) {
+            return encoder;
+        }
+        final TypeEncoder<?> resolved = resolveEncoder(type);
+        resolvedEncoderMap.put(type, resolved);
+        return resolved;
+    }
+
+    /**
+     * Resolves the encoder for the specified type from the registry.
+     *
+     * @param type the type of a value
+     * @return the encoder, or the default encoder if not found
+     */
+    protected TypeEncoder<?> resolveEncoder(final Class<?> type) {
+        if (type.isArray() && !type.getComponentType().isPrimitive()) {
+            final TypeEncoder<?> encoder = encoderMap.get(type);
+            return encoder != null ? encoder : encoderMap.getOrDefault(Object[].class, DEFAULT_ENCODER);
+        }
+        for (Class<?> clazz = type; clazz != null && clazz != Object.class; clazz = clazz.getSuperclass()) {
+            final TypeEncoder<?> encoder = encoderMap.get(clazz);
+            if (encoder != null) {
+                return encoder;
+            }
+        }
+        final Deque<Class<?>> queue = new ArrayDeque<>();
+        for (Class<?> clazz = type; clazz != null; clazz = clazz.getSuperclass()) {
+            for (final Class<?> iface : clazz.getInterfaces()) {
+                queue.add(iface);
+            }
+        }
+        while (!queue.isEmpty()) {
+            final Class<?> iface = queue.poll();
+            final TypeEncoder<?> encoder = encoderMap.get(iface);
+            if (encoder != null) {
+                return encoder;
+            }
+            for (final Class<?> parent : iface.getInterfaces()) {
+                queue.add(parent);
+            }
+        }
+        return DEFAULT_ENCODER;
+    }
+
+    /**
+     * Writes a string as a quoted and escaped JSON string.
+     *
+     * @param value the string to write
+     * @param out the sink to write to
+     * @throws IOException if an I/O error occurs
+     */
+    public static void writeString(final CharSequence value, final Appendable out) throws IOException {
+        out.append('"');
+        final int length = value.length();
+        int start = 0;
+        for (int i = 0; i < length; i++) {
+            final char c = value.charAt(i);
+            if (c < 128) {
+                final String escaped = ASCII_ESCAPES[c];
+                if (escaped == null) {
+                    continue;
+                }
+                if (start < i) {
+                    out.append(value, start, i);
+                }
+                out.append(escaped);
+            } else {
+                if (start < i) {
+                    out.append(value, start, i);
+                }
+                out.append('\\').append('u').append(HEX_DIGITS[(c >> 12) & 0xf]).append(HEX_DIGITS[(c >> 8) & 0xf])
+                        .append(HEX_DIGITS[(c >> 4) & 0xf]).append(HEX_DIGITS[c & 0xf]);
+            }
+            start = i + 1;
+        }
+        if (start < length) {
+            out.append(value, start, length);
+        }
+        out.append('"');
+    }
+
+    /**
+     * Writes a long value in decimal.
+     *
+     * @param value the value to write
+     * @param out the sink to write to
+     * @throws IOException if an I/O error occurs
+     */
+    public static void writeNumber(final long value, final Appendable out) throws IOException {
+        if (out instanceof final JsonResponseWriter writer) {
+            writer.append(value);
+        } else if (out instanceof final StringBuilder sb) {
+            sb.append(value);
+        } else {
+            out.append(Long.toString(value));
+        }
+    }
+
+    /**
+     * Stateful encoding context bound to a sink.
+     * Container values are pushed onto a stack of frames and their elements are written
+     * iteratively, so deeply nested values do not consume the call stack.
+     */
+    public class Context {
+
+        private static final int ARRAY = 1;
+
+        private static final int LIST = 2;
+
+        private static final int ITERATOR = 3;
+
+        private static final int OBJECT = 4;
+
+        private final Appendable out;
+
+        private Frame[] frames;
+
+        private int depth;
+
+        /**
+         * Constructs a context for the specified sink.
+         *
+         * @param out the sink to write JSON to
+         */
+        protected Context(final Appendable out) {
+            this.out = out;
+        }
+
+        /**
+         * Gets the sink of this context.
+         *
+         * @return the sink
+         */
+        public Appendable out() {
+            return out;
+        }
+
+        /**
+         * Writes a value as JSON, including all nested elements.
+         *
+         * @param value the value to write, may be null
+         * @throws IOException if an I/O error occurs
+         */
+        public void writeValue(final Object value) throws IOException {
+            final int base = depth;
+            dispatch(value);
+            while (depth > base) {
+                final Frame frame = frames[depth - 1];
+                if (frame.type == OBJECT) {
+                    if (frame.entry != null) {
+                        final Object child = frame.entry.getValue();
+                        frame.entry = null;
+                        out.append(':');
+                        dispatch(child);
+                    } else if (frame.iterator.hasNext()) {
+                        if (frame.first) {
+                            frame.first = false;
+                        } else {
+                            out.append(',');
+                        }
+                        frame.entry = (Map.Entry<?, ?>) frame.iterator.next();
+                        dispatch(frame.entry.getKey());
+                    } else {
+                        out.append('}');
+                        pop();
+                    }
+                } else if (frame.hasNext()) {
+                    if (frame.first) {
+                        frame.first = false;
+                    } else {
+                        out.append(',');
+                    }
+                    dispatch(frame.next());
+                } else {
+                    out.append(']');
+                    pop();
+                }
+            }
+        }
+
+        /**
+         * Writes a string as a quoted and escaped JSON string.
+         *
+         * @param value the string to write
+         * @throws IOException if an I/O error occurs
+         */
+        public void writeString(final CharSequence value) throws IOException {
+            JsonEncoder.writeString(value, out);
+        }
+
+        /**
+         * Writes a long value in decimal.
+         *
+         * @param value the value to write
+         * @throws IOException if an I/O error occurs
+         */
+        public void writeNumber(final long value) throws IOException {
+            JsonEncoder.writeNumber(value, out);
+        }
+
+        /**
+         * Writes text as is.
+         *
+         * @param value the text to write
+         * @throws IOException if an I/O error occurs
+         */
+        public void writeRaw(final CharSequence value) throws IOException {
+            out.append(value);
+        }
+
+        /**
+         * Starts a JSON array whose elements are the elements of the specified array.
+         *
+         * @param array the array
+         * @throws IOException if an I/O error occurs
+         */
+        public void beginArray(final Object[] array) throws IOException {
+            out.append('[');
+            final Frame frame = push(ARRAY);
+            frame.array = array;
+            frame.size = array.length;
+        }
+
+        /**
+         * Starts a JSON array whose elements are the elements of the specified list.
+         *
+         * @param list the list
+         * @throws IOException if an I/O error occurs
+         */
+        public void beginArray(final List<?> list) throws IOException {
+            if (!(list instanceof RandomAccess)) {
+                beginArray(list.iterator());
+                return;
+            }
+            out.append('[');
+            final Frame frame = push(LIST);
+            frame.list = list;
+            frame.size = list.size();
+        }
+
+        /**
+         * Starts a JSON array whose elements are provided by the specified iterator.
+         *
+         * @param iterator the iterator
+         * @throws IOException if an I/O error occurs
+         */
+        public void beginArray(final Iterator<?> iterator) throws IOException {
+            out.append('[');
+            final Frame frame = push(ITERATOR);
+            frame.iterator = iterator;
+        }
+
+        /**
+         * Starts a JSON object whose members are the entries of the specified map.
+         *
+         * @param map the map
+         * @throws IOException if an I/O error occurs
+         */
+        public void beginObject(final Map<?, ?> map) throws IOException {
+            out.append('{');
+            final Frame frame = push(OBJECT);
+            frame.iterator = map.entrySet().iterator();
+        }
+
+        @SuppressWarnings("unchecked")
+        private void dispatch(final Object value) throws IOException {
+            if (value == null) {
+                out.append("null");
+                return;
+            }
+            ((TypeEncoder<Object>) getEncoder(value.getClass())).encode(value, this);
+        }
+
+        private Frame push(final int type) {
+            if (frames == null) {
+                frames = new Frame[8];
+            } else if (depth == frames.length) {
+                final Frame[] newFrames = new Frame[frames.length * 2];
+                System.arraycopy(frames, 0, newFrames, 0, frames.length);
+                frames = newFrames;
+            }
+            Frame frame = frames[depth];
+            if (frame == null) {
+                frame = new Frame();
+                frames[depth] = frame;
+            }
+            depth++;
+            frame.type = type;
+            frame.first = true;
+            frame.index = 0;
+            return frame;
+        }
+
+        private void pop() {
+            final Frame frame = frames[--depth];
+            frame.array = null;
+            frame.list = null;
+            frame.iterator = null;
+            frame.entry = null;
+        }
+    }
+
+    /**
+     * State of a container being written.
+     */
+    private static class Frame {
+        int type;
+
+        boolean first;
+
+        Object[] array;
+
+        List<?> list;
+
+        Iterator<?> iterator;
+
+        Map.Entry<?, ?> entry;
+
+        int index;
+
+        int size;
+
+        boolean hasNext() {
+            if (type == Context.ITERATOR) {
+                return iterator.hasNext();
+            }
+            return index < size;
+        }
+
+        Object next() {
+            return switch (type) {
+            case Context.ARRAY -> array[index++];
+            case Context.LIST -> list.get(index++);
+            default -> iterator.next();
+            };
+        }
+    }
+}
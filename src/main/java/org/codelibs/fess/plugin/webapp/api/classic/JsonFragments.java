@@ -0,0 +1,139 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.classic;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Constant fragments of API responses, such as member keys with their surrounding punctuation, encoded once as UTF-8.
+ * Writers copy them with {@link JsonResponseWriter#write(byte[])} instead of encoding the same characters on every response.
+ * The arrays are shared and must not be modified.
+ */
+public final class JsonFragments {
+
+    /** {@code "message":} */
+    public static final byte[] MESSAGE = encode("\"message\":");
+
+    /** {@code "q":} */
+    public static final byte[] Q = encode("\"q\":");
+
+    /** {@code ,"query_id":} */
+    public static final byte[] QUERY_ID = encode(",\"query_id\":");
+
+    /** {@code ,"exec_time":} */
+    public static final byte[] EXEC_TIME = encode(",\"exec_time\":");
+
+    /** {@code ,"query_time":} */
+    public static final byte[] QUERY_TIME = encode(",\"query_time\":");
+
+    /** {@code ,"page_size":} */
+    public static final byte[] PAGE_SIZE = encode(",\"page_size\":");
+
+    /** {@code ,"page_number":} */
+    public static final byte[] PAGE_NUMBER = encode(",\"page_number\":");
+
+    /** {@code "record_count":} */
+    public static final byte[] RECORD_COUNT = encode("\"record_count\":");
+
+    /** {@code ,"record_count":} */
+    public static final byte[] NEXT_RECORD_COUNT = encode(",\"record_count\":");
+
+    /** {@code ,"record_count_relation":} */
+    public static final byte[] RECORD_COUNT_RELATION = encode(",\"record_count_relation\":");
+
+    /** {@code ,"page_count":} */
+    public static final byte[] PAGE_COUNT = encode(",\"page_count\":");
+
+    /** {@code ,"highlight_params":} */
+    public static final byte[] HIGHLIGHT_PARAMS = encode(",\"highlight_params\":");
+
+    /** {@code ,"next_page":} */
+    public static final byte[] NEXT_PAGE = encode(",\"next_page\":");
+
+    /** {@code ,"prev_page":} */
+    public static final byte[] PREV_PAGE = encode(",\"prev_page\":");
+
+    /** {@code ,"start_record_number":} */
+    public static final byte[] START_RECORD_NUMBER = encode(",\"start_record_number\":");
+
+    /** {@code ,"end_record_number":} */
+    public static final byte[] END_RECORD_NUMBER = encode(",\"end_record_number\":");
+
+    /** {@code ,"page_numbers":} */
+    public static final byte[] PAGE_NUMBERS = encode(",\"page_numbers\":");
+
+    /** {@code ,"partial":} */
+    public static final byte[] PARTIAL = encode(",\"partial\":");
+
+    /** {@code ,"search_query":} */
+    public static final byte[] SEARCH_QUERY = encode(",\"search_query\":");
+
+    /** {@code ,"requested_time":} */
+    public static final byte[] REQUESTED_TIME = encode(",\"requested_time\":");
+
+    /** {@code ,"related_query":} */
+    public static final byte[] RELATED_QUERY = encode(",\"related_query\":");
+
+    /** {@code ,"related_contents":} */
+    public static final byte[] RELATED_CONTENTS = encode(",\"related_contents\":");
+
+    /** {@code ,"next_cursor":} */
+    public static final byte[] NEXT_CURSOR = encode(",\"next_cursor\":");
+
+    /** {@code ,"result":} */
+    public static final byte[] RESULT = encode(",\"result\":");
+
+    /** {@code "result":[} */
+    public static final byte[] RESULT_ARRAY = encode("\"result\":[");
+
+    /** {@code ,"result":[} */
+    public static final byte[] NEXT_RESULT_ARRAY = encode(",\"result\":[");
+
+    /** {@code ,"facet_field":[} */
+    public static final byte[] FACET_FIELD = encode(",\"facet_field\":[");
+
+    /** {@code ,"facet_query":[} */
+    public static final byte[] FACET_QUERY = encode(",\"facet_query\":[");
+
+    /** <code>{"name":</code> */
+    public static final byte[] NAME_OBJECT = encode("{\"name\":");
+
+    /** <code>{"value":</code> */
+    public static final byte[] VALUE_OBJECT = encode("{\"value\":");
+
+    /** {@code ,"count":} */
+    public static final byte[] COUNT = encode(",\"count\":");
+
+    /** <code>{"label":</code> */
+    public static final byte[] LABEL_OBJECT = encode("{\"label\":");
+
+    /** {@code , "value":} */
+    public static final byte[] LABEL_VALUE = encode(", \"value\":");
+
+    private JsonFragments() {
+        // constants only
+    }
+
+    /**
+     * Encodes a fragment as UTF-8.
+     *
+     * @param fragment the fragment
+     * @return the encoded fragment
+     */
+    public static byte[] encode(final String fragment) {
+        return fragment.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,294 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.classic;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Buffered writer that encodes JSON text as UTF-8 and streams it to an output stream.
+ * Characters are encoded directly into an internal byte buffer, so a response body is
+ * never materialized as an intermediate String. Unpaired surrogates are written as '?',
+ * in the same way as an OutputStreamWriter does.
+ */
+public class JsonResponseWriter implements Appendable, Flushable, Closeable {
+
+    /**
+     * The default size of the internal byte buffer.
+     */
+    protected static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    /**
+     * The output stream to write encoded bytes to.
+     */
+    protected final OutputStream out;
+
+    /**
+     * The internal byte buffer.
+     */
+    protected final byte[] buffer;
+
+    /**
+     * The number of valid bytes in the buffer.
+     */
+    protected int position;
+
+    /**
+     * The high surrogate waiting for its low surrogate, or 0 if none.
+     */
+    protected char highSurrogate;
+
+    /**
+     * Scratch space for formatting numbers.
+     */
+    private final byte[] digits = new byte[20];
+
+    /**
+     * Constructs a JsonResponseWriter with the default buffer size.
+     *
+     * @param out the output stream to write to
+     */
+    public JsonResponseWriter(final OutputStream out) {
+        this(out, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Constructs a JsonResponseWriter with the specified buffer size.
+     *
+     * @param out the output stream to write to
+     * @param bufferSize the size of the internal byte buffer
+     */
+    public JsonResponseWriter(final OutputStream out, final int bufferSize) {
+        if (bufferSize < 4) {
+            throw new IllegalArgumentException("bufferSize is too small: " + bufferSize);
+        }
+        this.out = out;
+        this.buffer = new byte[bufferSize];
+    }
+
+    @Override
+    public JsonResponseWriter append(final char c) throws IOException {
+        if (c < 0x80 && highSurrogate == 0) {
+            if (position == buffer.length) {
+                flushBuffer();
+            }
+            buffer[position++] = (byte) c;
+        } else {
+            encode(c);
+        }
+        return this;
+    }
+
+    @Override
+    public JsonResponseWriter append(final CharSequence csq) throws IOException {
+        if (csq == null) {
+            return append("null");
+        }
+        return append(csq, 0, csq.length());
+    }
+
+    @Override
+    public JsonResponseWriter append(final CharSequence csq, final int start, final int end) throws IOException {
+        if (csq == null) {
+            return append("null", start, end);
+        }
+        for (int i = start; i < end; i++) {
+            final char c = csq.charAt(i);
+            if (c < 0x80 && highSurrogate == 0) {
+                if (position == buffer.length) {
+                    flushBuffer();
+                }
+                buffer[position++] = (byte) c;
+            } else {
+                encode(c);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Appends the decimal representation of an int value.
+     *
+     * @param value the value to append
+     * @return this writer
+     * @throws IOException if an I/O error occurs
+     */
+    public JsonResponseWriter append(final int value) throws IOException {
+        return append((long) value);
+    }
+
+    /**
+     * Appends the decimal representation of a long value.
+     *
+     * @param value the value to append
+     * @return this writer
+     * @throws IOException if an I/O error occurs
+     */
+    public JsonResponseWriter append(final long value) throws IOException {
+        if (value == Long.MIN_VALUE) {
+            return append(Long.toString(value));
+        }
+        long v = value;
+        if (v < 0) {
+            append('-');
+            v = -v;
+        }
+        int pos = digits.length;
+        do {
+            digits[--pos] = (byte) ('0' + (int) (v % 10));
+            v /= 10;
+        } while (v != 0);
+        return write(digits, pos, digits.length - pos);
+    }
+
+    /**
+     * Appends the JSON literal of a boolean value.
+     *
+     * @param value the value to append
+     * @return this writer
+     * @throws IOException if an I/O error occurs
+     */
+    public JsonResponseWriter append(final boolean value) throws IOException {
+        return append(value ? "true" : "false");
+    }
+
+    /**
+     * Writes already encoded UTF-8 bytes.
+     *
+     * @param bytes the bytes to write
+     * @param offset the start offset in the bytes
+     * @param length the number of bytes to write
+     * @return this writer
+     * @throws IOException if an I/O error occurs
+     */
+    public JsonResponseWriter write(final byte[] bytes, final int offset, final int length) throws IOException {
+        terminateSurrogate();
+        if (length > buffer.length - position) {
+            flushBuffer();
+            if (length > buffer.length) {
+                out.write(bytes, offset, length);
+                return this;
+            }
+        }
+        System.arraycopy(bytes, offset, buffer, position, length);
+        position += length;
+        return this;
+    }
+
+    /**
+     * Writes already encoded UTF-8 bytes.
+     *
+     * @param bytes the bytes to write
+     * @return this writer
+     * @throws IOException if an I/O error occurs
+     */
+    public JsonResponseWriter write(final byte[] bytes) throws IOException {
+        return write(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Encodes a non-ASCII character, or any character following a pending high surrogate.
+     *
+     * @param c the character to encode
+     * @throws IOException if an I/O error occurs
+     */
+    protected void encode(final char c) throws IOException {
+        if (highSurrogate != 0) {
+            final char high = highSurrogate;
+            highSurrogate = 0;
+            if (Character.isLowSurrogate(c)) {
+                final int cp = Character.toCodePoint(high, c);
+                ensureCapacity(4);
+                buffer[position++] = (byte) (0xf0 | (cp >> 18));
+                buffer[position++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+                buffer[position++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+                buffer[position++] = (byte) (0x80 | (cp & 0x3f));
+                return;
+            }
+            append('?');
+        }
+        if (c < 0x80) {
+            append(c);
+        } else if (c < 0x800) {
+            ensureCapacity(2);
+            buffer[position++] = (byte) (0xc0 | (c >> 6));
+            buffer[position++] = (byte) (0x80 | (c & 0x3f));
+        } else if (Character.isHighSurrogate(c)) {
+            highSurrogate = c;
+        } else if (Character.isLowSurrogate(c)) {
+            append('?');
+        } else {
+            ensureCapacity(3);
+            buffer[position++] = (byte) (0xe0 | (c >> 12));
+            buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+            buffer[position++] = (byte) (0x80 | (c & 0x3f));
+        }
+    }
+
+    /**
+     * Writes a pending high surrogate without a low surrogate as '?'.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    protected void terminateSurrogate() throws IOException {
+        if (highSurrogate != 0) {
+            highSurrogate = 0;
+            append('?');
+        }
+    }
+
+    /**
+     * Ensures that the buffer has room for the specified number of bytes.
+     *
+     * @param length the number of bytes to be written
+     * @throws IOException if an I/O error occurs
+     */
+    protected void ensureCapacity(final int length) throws IOException {
+        if (buffer.length - position < length) {
+            flushBuffer();
+        }
+    }
+
+    /**
+     * Writes the buffered bytes to the output stream without flushing it.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    protected void flushBuffer() throws IOException {
+        if (position > 0) {
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            terminateSurrogate();
+            flushBuffer();
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.classic;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with log-linear buckets in the style of HdrHistogram.
+ * Values up to 63 are counted exactly; larger values are grouped into 32 linear sub-buckets
+ * per power of two, which bounds the relative error of reported percentiles to about 3%.
+ * Values are recorded in nanoseconds and reported in microseconds.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    private static final int LINEAR_LIMIT = SUB_BUCKET_COUNT * 2;
+
+    /** The highest tracked magnitude; 2^43 ns is about 2.4 hours. */
+    private static final int MAX_MAGNITUDE = 42;
+
+    private static final int BUCKET_COUNT = LINEAR_LIMIT + (MAX_MAGNITUDE - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+    /** The bucket counts. */
+    protected final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+
+    /** The number of recorded values. */
+    protected final LongAdder count = new LongAdder();
+
+    /** The sum of recorded values in nanoseconds. */
+    protected final LongAdder sum = new LongAdder();
+
+    /** The highest recorded value in nanoseconds. */
+    protected final AtomicLong max = new AtomicLong();
+
+    /**
+     * Constructs an empty LatencyHistogram.
+     */
+    public LatencyHistogram() {
+        // nothing
+    }
+
+    /**
+     * Records a value.
+     *
+     * @param nanos the latency in nanoseconds; negative values are recorded as 0
+     */
+    public void record(final long nanos) {
+        final long value = Math.max(nanos, 0L);
+        counts.incrementAndGet(indexOf(value));
+        count.increment();
+        sum.add(value);
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    /**
+     * Takes a point-in-time copy of this histogram.
+     * Concurrent updates may be partially included.
+     *
+     * @return the snapshot
+     */
+    public Snapshot snapshot() {
+        final long[] values = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            values[i] = counts.get(i);
+            total += values[i];
+        }
+        return new Snapshot(values, total, sum.sum(), max.get());
+    }
+
+    /**
+     * Clears all recorded values.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0L);
+        }
+        count.reset();
+        sum.reset();
+        max.set(0L);
+    }
+
+    /**
+     * Returns the number of recorded values.
+     *
+     * @return the count
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    static int indexOf(final long value) {
+        if (value < LINEAR_LIMIT) {
+            return (int) value;
+        }
+        final int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        if (magnitude > MAX_MAGNITUDE) {
+            return BUCKET_COUNT - 1;
+        }
+        final int shift = magnitude - SUB_BUCKET_BITS;
+        final int top = (int) (value >>> shift);
+        return LINEAR_LIMIT + (shift - 1) * SUB_BUCKET_COUNT + top - SUB_BUCKET_COUNT;
+    }
+
+    static long highestValueOf(final int index) {
+        if (index < LINEAR_LIMIT) {
+            return index;
+        }
+        final int shift = (index - LINEAR_LIMIT) / SUB_BUCKET_COUNT + 1;
+        final long top = (index - LINEAR_LIMIT) % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT;
+        return ((top + 1) << shift) - 1;
+    }
+
+    /**
+     * Immutable copy of the histogram counts.
+     */
+    public static class Snapshot {
+
+        private final long[] counts;
+
+        private final long count;
+
+        private final long sum;
+
+        private final long max;
+
+        Snapshot(final long[] counts, final long count, final long sum, final long max) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        /**
+         * Returns the number of values.
+         *
+         * @return the count
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Returns the mean in microseconds.
+         *
+         * @return the mean, or 0 if empty
+         */
+        public long getMeanMicros() {
+            return count == 0 ? 0 : sum / count / 1000L;
+        }
+
+        /**
+         * Returns the highest value in microseconds.
+         *
+         * @return the maximum
+         */
+        public long getMaxMicros() {
+            return max / 1000L;
+        }
+
+        /**
+         * Returns the value at the specified percentile in microseconds.
+         * As in HdrHistogram, the highest value equivalent to the bucket is returned.
+         *
+         * @param percentile the percentile between 0 and 100
+         * @return the value, or 0 if empty
+         */
+        public long getPercentileMicros(final double percentile) {
+            if (count == 0) {
+                return 0L;
+            }
+            final long rank = Math.max(1L, (long) Math.ceil(percentile / 100.0 * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(highestValueOf(i), max) / 1000L;
+                }
+            }
+            return max / 1000L;
+        }
+    }
+}
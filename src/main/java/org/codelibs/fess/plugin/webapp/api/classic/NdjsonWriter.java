@@ -0,0 +1,170 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.classic;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.codelibs.core.lang.StringUtil;
+
+/**
+ * Writes documents as newline-delimited JSON to a client.
+ * Documents are encoded straight into a byte buffer of the chunk size, which is written to the
+ * output stream whenever it fills up, and the stream is flushed at a fixed interval so that a slow
+ * export still reaches the client. A failed write means that the client has disconnected; the
+ * writer then stops accepting documents so that the caller can end the export early.
+ */
+public class NdjsonWriter {
+
+    /** The buffered UTF-8 writer. */
+    protected final JsonResponseWriter writer;
+
+    /** The JSON encoding context writing to {@link #writer}. */
+    protected final JsonEncoder.Context json;
+
+    /** The minimum time between flushes in nanoseconds. */
+    protected final long flushIntervalNanos;
+
+    /** The time of the last flush from System.nanoTime(). */
+    protected long lastFlushTime;
+
+    /** The number of documents written. */
+    protected long count;
+
+    /** Whether a write to the client failed. */
+    protected boolean disconnected;
+
+    /**
+     * Constructs an NdjsonWriter.
+     *
+     * @param out the output stream of the response
+     * @param encoder the JSON encoder
+     * @param chunkSize the buffer size in bytes
+     * @param flushInterval the minimum time between flushes in milliseconds
+     */
+    public NdjsonWriter(final OutputStream out, final JsonEncoder encoder, final int chunkSize, final long flushInterval) {
+        this.writer = new JsonResponseWriter(out, chunkSize);
+        this.json = encoder.createContext(writer);
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushInterval);
+        this.lastFlushTime = System.nanoTime();
+    }
+
+    /**
+     * Writes a document as one line. Entries with a blank name or a null value are skipped.
+     *
+     * @param doc the document
+     * @return true if the document was written, or false if the client has disconnected
+     */
+    public boolean write(final Map<String, Object> doc) {
+        if (disconnected) {
+            return false;
+        }
+        try {
+            writer.append('{');
+            boolean first = true;
+            for (final Map.Entry<String, Object> entry : doc.entrySet()) {
+                final String name = entry.getKey();
+                if (StringUtil.isNotBlank(name) && entry.getValue() != null) {
+                    if (!first) {
+                        writer.append(',');
+                    } else {
+                        first = false;
+                    }
+                    json.writeString(name);
+                    writer.append(':');
+                    json.writeValue(entry.getValue());
+                }
+            }
+            writer.append('}').append('\n');
+            count++;
+
+            final long now = System.nanoTime();
+            if (now - lastFlushTime >= flushIntervalNanos) {
+                writer.flush();
+                lastFlushTime = now;
+            }
+            return true;
+        } catch (final IOException e) {
+            disconnected = true;
+            return false;
+        }
+    }
+
+    /**
+     * Writes an error as the last line, for a failure after the export has started,
+     * when the JSON response envelope can no longer be written.
+     * The line has the shape of the envelope, {@code {"response":{"status":...,"message":...}}}.
+     *
+     * @param status the error status
+     * @param message the error message
+     * @return true if the line was written, or false if the client has disconnected
+     */
+    public boolean writeError(final int status, final String message) {
+        if (disconnected) {
+            return false;
+        }
+        try {
+            writer.append("{\"response\":{\"status\":").append(status);
+            if (message != null) {
+                writer.append(",\"message\":");
+                json.writeString(message);
+            }
+            writer.append("}}\n");
+            return true;
+        } catch (final IOException e) {
+            disconnected = true;
+            return false;
+        }
+    }
+
+    /**
+     * Writes the remaining output to the client and closes the output stream.
+     *
+     * @return true if all documents were delivered to the output stream, or false if the client has disconnected
+     */
+    public boolean finish() {
+        if (disconnected) {
+            return false;
+        }
+        try {
+            writer.close();
+            return true;
+        } catch (final IOException e) {
+            disconnected = true;
+            return false;
+        }
+    }
+
+    /**
+     * Returns the number of documents written.
+     *
+     * @return the document count
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Checks if a write to the client failed.
+     *
+     * @return true if the client has disconnected
+     */
+    public boolean isDisconnected() {
+        return disconnected;
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.classic;
+
+/**
+ * Opt-in cache of serialized response bodies.
+ * The cache is bounded by the total size of keys and bodies, configured by the system property
+ * {@code api.classic.cache.<name>.max_bytes} instead of a number of entries.
+ */
+public class ResponseCache extends ApiCache<ResponseCache.Entry> {
+
+    /** The default time to live in seconds. */
+    protected static final int DEFAULT_TTL = 60;
+
+    /** The default maximum size in bytes. */
+    protected static final int DEFAULT_MAX_BYTES = 64 * 1024 * 1024;
+
+    /**
+     * Constructs a ResponseCache.
+     *
+     * @param name the cache name used in the system property names
+     */
+    public ResponseCache(final String name) {
+        super(name, DEFAULT_TTL, DEFAULT_MAX_BYTES);
+    }
+
+    @Override
+    protected String getMaxSizePropertyName() {
+        return "max_bytes";
+    }
+
+    @Override
+    protected int weigh(final String key, final Entry value) {
+        int size = key.length() * 2 + value.body.length;
+        if (value.queryId != null) {
+            size += value.queryId.length() * 2;
+        }
+        for (final String docId : value.docIds) {
+            size += docId.length() * 2;
+        }
+        return size;
+    }
+
+    /**
+     * Serialized response body together with the query ID it contains and the document IDs of its results,
+     * so that the query ID can be stored in the session of each request the body is sent to.
+     */
+    public static class Entry {
+
+        private final byte[] body;
+
+        private final String queryId;
+
+        private final String[] docIds;
+
+        /**
+         * Constructs an Entry without a query ID.
+         *
+         * @param body the serialized response body
+         */
+        public Entry(final byte[] body) {
+            this(body, null, new String[0]);
+        }
+
+        /**
+         * Constructs an Entry.
+         *
+         * @param body the serialized response body
+         * @param queryId the query ID in the body, or null
+         * @param docIds the document IDs of the results in the body
+         */
+        public Entry(final byte[] body, final String queryId, final String[] docIds) {
+            this.body = body;
+            this.queryId = queryId;
+            this.docIds = docIds;
+        }
+
+        /**
+         * Returns the serialized response body.
+         *
+         * @return the body, which must not be modified
+         */
+        public byte[] getBody() {
+            return body;
+        }
+
+        /**
+         * Returns the query ID in the body.
+         *
+         * @return the query ID, or null
+         */
+        public String getQueryId() {
+            return queryId;
+        }
+
+        /**
+         * Returns the document IDs of the results in the body.
+         *
+         * @return the document IDs, which must not be modified
+         */
+        public String[] getDocIds() {
+            return docIds;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.classic;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.codelibs.core.lang.StringUtil;
+import org.codelibs.fess.query.QueryFieldConfig;
+import org.codelibs.fess.util.ComponentUtil;
+
+/**
+ * Memoized filter of the document fields returned by the API.
+ * The result of {@link QueryFieldConfig#isApiResponseField(String)} for each field name is kept in an immutable table
+ * together with the encoded JSON key of the field, so that writing a document field costs one lookup and a byte copy.
+ * The table grows by copy on write as new field names are seen, up to a maximum number of names,
+ * and is discarded when the QueryFieldConfig component is replaced or {@link #reset()} is called.
+ */
+public class ResponseFieldFilter {
+
+    /** The default maximum number of field names in the table. */
+    protected static final int DEFAULT_MAX_FIELDS = 1024;
+
+    /** The table value of fields that are not returned. */
+    private static final byte[] EXCLUDED = {};
+
+    /** The maximum number of field names in the table. */
+    protected final int maxFields;
+
+    /** The current table. */
+    private volatile Table table;
+
+    /**
+     * Constructs a ResponseFieldFilter with the default maximum number of field names.
+     */
+    public ResponseFieldFilter() {
+        this(DEFAULT_MAX_FIELDS);
+    }
+
+    /**
+     * Constructs a ResponseFieldFilter.
+     *
+     * @param maxFields the maximum number of field names in the table
+     */
+    public ResponseFieldFilter(final int maxFields) {
+        this.maxFields = maxFields;
+    }
+
+    /**
+     * Returns the encoded JSON key of a field, the quoted and escaped name followed by a colon,
+     * if the field is returned by the API.
+     *
+     * @param name the field name
+     * @return the UTF-8 bytes of the key, or null if the field is not returned
+     */
+    public byte[] getEncodedKey(final String name) {
+        if (name == null) {
+            return null;
+        }
+        final QueryFieldConfig queryFieldConfig = ComponentUtil.getQueryFieldConfig();
+        Table current = table;
+        if (current == null || current.queryFieldConfig != queryFieldConfig) {
+            current = new Table(queryFieldConfig, Collections.emptyMap());
+            table = current;
+        }
+        byte[] key = current.keyMap.get(name);
+        if (key == null) {
+            key = createEncodedKey(queryFieldConfig, name);
+            addKey(current, name, key);
+        }
+        return key == EXCLUDED ? null : key;
+    }
+
+    /**
+     * Checks if a field is returned by the API.
+     *
+     * @param name the field name
+     * @return true if the field is returned
+     */
+    public boolean isResponseField(final String name) {
+        return getEncodedKey(name) != null;
+    }
+
+    /**
+     * Discards the table so that it is rebuilt on next use.
+     */
+    public void reset() {
+        table = null;
+    }
+
+    /**
+     * Returns the number of field names in the table.
+     *
+     * @return the field name count
+     */
+    public int size() {
+        final Table current = table;
+        return current == null ? 0 : current.keyMap.size();
+    }
+
+    /**
+     * Creates the table value of a field.
+     *
+     * @param queryFieldConfig the query field configuration
+     * @param name the field name
+     * @return the encoded key, or {@link #EXCLUDED} if the field is not returned
+     */
+    protected byte[] createEncodedKey(final QueryFieldConfig queryFieldConfig, final String name) {
+        if (StringUtil.isBlank(name) || !queryFieldConfig.isApiResponseField(name)) {
+            return EXCLUDED;
+        }
+        final StringBuilder buf = new StringBuilder(name.length() + 3);
+        try {
+            JsonEncoder.writeString(name, buf);
+        } catch (final IOException e) {
+            throw new IllegalStateException(e);
+        }
+        buf.append(':');
+        return buf.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private synchronized void addKey(final Table current, final String name, final byte[] key) {
+        if (table != current || current.keyMap.size() >= maxFields || current.keyMap.containsKey(name)) {
+            return;
+        }
+        final Map<String, byte[]> keyMap = new HashMap<>(current.keyMap);
+        keyMap.put(name, key);
+        table = new Table(current.queryFieldConfig, Collections.unmodifiableMap(keyMap));
+    }
+
+    /**
+     * Encoded keys by field name for a query field configuration.
+     */
+    private static class Table {
+        final QueryFieldConfig queryFieldConfig;
+
+        final Map<String, byte[]> keyMap;
+
+        Table(final QueryFieldConfig queryFieldConfig, final Map<String, byte[]> keyMap) {
+            this.queryFieldConfig = queryFieldConfig;
+            this.keyMap = keyMap;
+        }
+    }
+}
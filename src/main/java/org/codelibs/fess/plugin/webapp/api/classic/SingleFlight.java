@@ -0,0 +1,90 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.classic;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Deduplicates concurrent calls with the same key.
+ * The first caller runs the call and the callers arriving while it is in flight wait for it and share its result
+ * or its exception. Nothing is kept after the call completes.
+ *
+ * @param <K> the key type
+ * @param <V> the result type
+ */
+public class SingleFlight<K, V> {
+
+    /** The calls in flight by key. */
+    protected final Map<K, CompletableFuture<V>> inFlightMap = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs an empty SingleFlight.
+     */
+    public SingleFlight() {
+        // nothing
+    }
+
+    /**
+     * Runs the call for the key, or waits for the same call already in flight.
+     *
+     * @param key the key identifying equivalent calls
+     * @param call the call to run
+     * @param onJoin invoked when the caller joins a call in flight instead of running it, or null
+     * @return the result of the call
+     * @throws Exception the exception thrown by the call
+     */
+    public V execute(final K key, final Callable<V> call, final Runnable onJoin) throws Exception {
+        final CompletableFuture<V> future = new CompletableFuture<>();
+        final CompletableFuture<V> inFlight = inFlightMap.putIfAbsent(key, future);
+        if (inFlight != null) {
+            if (onJoin != null) {
+                onJoin.run();
+            }
+            try {
+                return inFlight.get();
+            } catch (final ExecutionException e) {
+                if (e.getCause() instanceof final Exception cause) {
+                    throw cause;
+                }
+                throw e;
+            }
+        }
+
+        try {
+            final V value = call.call();
+            future.complete(value);
+            return value;
+        } catch (final Throwable t) {
+            future.completeExceptionally(t);
+            throw t;
+        } finally {
+            inFlightMap.remove(key, future);
+        }
+    }
+
+    /**
+     * Returns the number of calls in flight.
+     *
+     * @return the call count
+     */
+    public int getInFlightCount() {
+        return inFlightMap.size();
+    }
+}
@@ -18,12 +18,18 @@ package org.codelibs.fess.plugin.webapp.api.classic;
 import static org.codelibs.core.stream.StreamUtil.stream;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
 
 import org.apache.commons.lang3.StringUtils;
-import org.apache.commons.text.StringEscapeUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.codelibs.core.lang.StringUtil;
@@ -37,7 +43,10 @@ import org.codelibs.fess.helper.RoleQueryHelper;
 import org.codelibs.fess.helper.SearchHelper;
 import org.codelibs.fess.helper.SuggestHelper;
 import org.codelibs.fess.mylasta.direction.FessConfig;
+import org.codelibs.fess.suggest.Suggester;
+import org.codelibs.fess.suggest.converter.ReadingConverter;
 import org.codelibs.fess.suggest.entity.SuggestItem;
+import org.codelibs.fess.suggest.normalizer.Normalizer;
 import org.codelibs.fess.suggest.request.suggest.SuggestRequestBuilder;
 import org.codelibs.fess.suggest.request.suggest.SuggestResponse;
 import org.codelibs.fess.util.ComponentUtil;
@@ -56,6 +65,16 @@ import jakarta.servlet.http.HttpServletResponse;
 public class SuggestApiManager extends ClassicJsonApiManager {
     private static final Logger logger = LogManager.getLogger(SuggestApiManager.class);
 
+    /**
+     * The suggest calls in flight, shared by concurrent identical requests.
+     */
+    protected SingleFlight<String, SuggestResponse> suggestFlight = new SingleFlight<>();
+
+    /**
+     * The cache of suggest responses, also used to answer a longer query from the complete result of a shorter one.
+     */
+    protected ApiCache<SuggestResponse> suggestResponseCache = new ApiCache<>("suggest", 10, 10000);
+
     /**
      * Constructs a SuggestApiManager with "/suggest" path prefix.
      */
@@ -72,6 +91,7 @@ public class SuggestApiManager extends ClassicJsonApiManager {
         if (logger.isInfoEnabled()) {
             logger.info("Load {}", this.getClass().getSimpleName());
         }
+        apiMetrics.addCache(suggestResponseCache);
         ComponentUtil.getWebApiManagerFactory().add(this);
     }
 
@@ -84,6 +104,47 @@ public class SuggestApiManager extends ClassicJsonApiManager {
     @Override
     public void process(final HttpServletRequest request, final HttpServletResponse response, final FilterChain chain)
             throws IOException, ServletException {
+        final ApiMetrics.Sample sample = startMetricsSample(request, "suggest");
+        final AdmissionController.Permit permit = admissionController.acquire("suggest");
+        if (permit == null) {
+            try {
+                writeRejectedResponse(response);
+            } finally {
+                sample.end();
+            }
+            return;
+        }
+        if (asyncProcessor.isEnabled(request)) {
+            try {
+                asyncProcessor.start("suggest", request, response, (req, res) -> processSuggestRequest(req, res, sample),
+                        this::writeAsyncTimeoutResponse, (req, res) -> writeRejectedResponse(res), () -> {
+                            permit.release();
+                            sample.end();
+                        });
+                return;
+            } catch (final RuntimeException e) {
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Failed to start async processing, so the request is processed synchronously.", e);
+                }
+            }
+        }
+        try {
+            processSuggestRequest(request, response, sample);
+        } finally {
+            permit.release();
+            sample.end();
+        }
+    }
+
+    /**
+     * Processes suggest requests and returns suggestions in JSON format.
+     *
+     * @param request the HTTP servlet request
+     * @param response the HTTP servlet response
+     * @param sample the metrics sample of the request
+     */
+    protected void processSuggestRequest(final HttpServletRequest request, final HttpServletResponse response,
+            final ApiMetrics.Sample sample) {
         final FessConfig fessConfig = ComponentUtil.getFessConfig();
         if (!fessConfig.isAcceptedSearchReferer(request.getHeader("referer"))) {
             writeJsonResponse(99, StringUtil.EMPTY, "Referer is invalid.");
@@ -92,7 +153,7 @@ public class SuggestApiManager extends ClassicJsonApiManager {
 
         int status = 0;
         String errMsg = StringUtil.EMPTY;
-        final StringBuilder buf = new StringBuilder(255); // TODO replace response stream
+        ResponseBody body = null;
         final RoleQueryHelper roleQueryHelper = ComponentUtil.getRoleQueryHelper();
         final SearchHelper searchHelper = ComponentUtil.getSearchHelper();
 
@@ -104,7 +165,8 @@ public class SuggestApiManager extends ClassicJsonApiManager {
             final SuggestRequestBuilder builder = suggestHelper.suggester().suggest();
             builder.setQuery(parameter.getQuery());
             stream(parameter.getSuggestFields()).of(stream -> stream.forEach(builder::addField));
-            roleQueryHelper.build(SearchRequestType.SUGGEST).stream().forEach(builder::addRole);
+            final Set<String> roles = roleQueryHelper.build(SearchRequestType.SUGGEST);
+            roles.stream().forEach(builder::addRole);
             builder.setSize(parameter.getNum());
             stream(langs).of(stream -> stream.forEach(builder::addLang));
 
@@ -114,48 +176,47 @@ public class SuggestApiManager extends ClassicJsonApiManager {
                 builder.addTag(key);
             }
 
-            builder.addKind(SuggestItem.Kind.USER.toString());
+            final List<String> kinds = new ArrayList<>();
+            kinds.add(SuggestItem.Kind.USER.toString());
             if (ComponentUtil.getFessConfig().isSuggestSearchLog()) {
-                builder.addKind(SuggestItem.Kind.QUERY.toString());
+                kinds.add(SuggestItem.Kind.QUERY.toString());
             }
             if (ComponentUtil.getFessConfig().isSuggestDocuments()) {
-                builder.addKind(SuggestItem.Kind.DOCUMENT.toString());
+                kinds.add(SuggestItem.Kind.DOCUMENT.toString());
             }
-
-            final SuggestResponse suggestResponse = builder.execute().getResponse();
-
-            buf.append("\"result\":{");
-            buf.append("\"took\":\"").append(suggestResponse.getTookMs()).append('\"');
-
-            buf.append(",\"total\":\"").append(suggestResponse.getTotal()).append('\"');
-
-            buf.append(",\"num\":\"").append(suggestResponse.getNum()).append('\"');
-
-            if (!suggestResponse.getItems().isEmpty()) {
-                buf.append(",\"hits\":[");
-
-                boolean first = true;
-                for (final SuggestItem item : suggestResponse.getItems()) {
-                    if (!first) {
-                        buf.append(',');
+            kinds.forEach(builder::addKind);
+
+            final boolean cacheEnabled = suggestResponseCache.isEnabled();
+            final boolean coalescingEnabled = fessConfig.getSystemPropertyAsBoolean(COALESCING_ENABLED_PROPERTY, false);
+            final String query = parameter.getQuery() != null ? parameter.getQuery() : StringUtil.EMPTY;
+            final String contextKey =
+                    cacheEnabled || coalescingEnabled ? createSuggestContextKey(parameter, langs, roles, key, kinds) : null;
+            SuggestResponse suggestResponse = null;
+            if (cacheEnabled) {
+                suggestResponse = getCachedSuggestResponse(contextKey, query, parameter.getNum(), langs);
+            }
+            if (suggestResponse == null) {
+                final Callable<SuggestResponse> call = () -> {
+                    final SuggestResponse res = builder.execute().getResponse();
+                    if (cacheEnabled) {
+                        suggestResponseCache.put(createSuggestKey(contextKey, query), res);
                     }
-                    first = false;
-
-                    buf.append("{\"text\":\"").append(StringEscapeUtils.escapeJson(item.getText())).append('\"');
-                    buf.append(",\"tags\":[");
-                    for (int i = 0; i < item.getTags().length; i++) {
-                        if (i > 0) {
-                            buf.append(',');
-                        }
-                        buf.append('\"').append(StringEscapeUtils.escapeJson(item.getTags()[i])).append('\"');
+                    return res;
+                };
+                sample.startBackend();
+                try {
+                    if (coalescingEnabled) {
+                        suggestResponse = suggestFlight.execute(createSuggestKey(contextKey, query), call, sample::coalesced);
+                    } else {
+                        suggestResponse = call.call();
                     }
-                    buf.append(']');
-                    buf.append('}');
+                } finally {
+                    sample.endBackend();
                 }
-                buf.append(']');
             }
+            final SuggestResponse result = suggestResponse;
 
-            buf.append('}');
+            body = buf -> writeSuggestResponse(buf, result);
         } catch (final Exception e) {
             status = 1;
             errMsg = e.getMessage();
@@ -171,7 +232,200 @@ public class SuggestApiManager extends ClassicJsonApiManager {
             }
         }
 
-        writeJsonResponse(status, buf.toString(), errMsg);
+        writeJsonResponse(status, body, errMsg);
+    }
+
+    /**
+     * Returns a cached response for the query.
+     * If the query itself is not cached, the complete result of a shorter prefix of its last word is filtered instead,
+     * provided that every reading of the last word extends a reading of the prefix so that no suggestion can be missed.
+     * The filtered result keeps the ranking of the shorter query and is cached for the query.
+     *
+     * @param contextKey the key of the request context from {@link #createSuggestContextKey}
+     * @param query the query
+     * @param num the maximum number of suggestions
+     * @param langs the languages
+     * @return the response, or null if it cannot be answered from the cache
+     * @throws IOException if an I/O error occurs
+     */
+    protected SuggestResponse getCachedSuggestResponse(final String contextKey, final String query, final int num, final String[] langs)
+            throws IOException {
+        final String cacheKey = createSuggestKey(contextKey, query);
+        final SuggestResponse cached = suggestResponseCache.get(cacheKey);
+        if (cached != null || query.isEmpty() || isWhitespace(query.charAt(query.length() - 1))) {
+            return cached;
+        }
+
+        // a prefix search is applied to the last word only, so only its prefixes can be reused
+        for (int end = query.length() - 1; end > 0 && !isWhitespace(query.charAt(end - 1)); end--) {
+            final String prefix = query.substring(0, end);
+            final SuggestResponse shorter = suggestResponseCache.peek(createSuggestKey(contextKey, prefix));
+            if (shorter == null) {
+                continue;
+            }
+            if (shorter.getTotal() > num) {
+                // a shorter prefix matches at least as many suggestions
+                return null;
+            }
+            final String[] words = splitWords(query);
+            final List<String> readings = toReadings(words[words.length - 1], langs);
+            final List<String> prefixReadings = toReadings(lastWord(prefix), langs);
+            if (!readings.stream().allMatch(r -> prefixReadings.stream().anyMatch(r::startsWith))) {
+                return null;
+            }
+            final SuggestResponse filtered = filterSuggestResponse(shorter, words.length - 1, readings);
+            suggestResponseCache.put(cacheKey, filtered);
+            suggestResponseCache.recordDerivedHit();
+            return filtered;
+        }
+        return null;
+    }
+
+    /**
+     * Keeps the suggestions whose reading of a word starts with one of the readings.
+     *
+     * @param response the response to filter
+     * @param wordIndex the index of the word in the query
+     * @param readings the readings of the word
+     * @return the filtered response
+     */
+    protected static SuggestResponse filterSuggestResponse(final SuggestResponse response, final int wordIndex,
+            final List<String> readings) {
+        final List<SuggestItem> items = new ArrayList<>();
+        for (final SuggestItem item : response.getItems()) {
+            final String[][] itemReadings = item.getReadings();
+            if (itemReadings != null && wordIndex < itemReadings.length && itemReadings[wordIndex] != null
+                    && Arrays.stream(itemReadings[wordIndex]).anyMatch(r -> readings.stream().anyMatch(r::startsWith))) {
+                items.add(item);
+            }
+        }
+        return new SuggestResponse(response.getIndex(), 0L, response.getWords(), items.size(), items);
+    }
+
+    /**
+     * Converts a query word to its readings in the same way as the suggest query does.
+     *
+     * @param word the word
+     * @param langs the languages
+     * @return the readings
+     * @throws IOException if an I/O error occurs
+     */
+    protected List<String> toReadings(final String word, final String[] langs) throws IOException {
+        final Suggester suggester = ComponentUtil.getSuggestHelper().suggester();
+        final Normalizer normalizer = suggester.getNormalizer();
+        final ReadingConverter readingConverter = suggester.getReadingConverter();
+        final String normalized = normalizer != null ? normalizer.normalize(word, StringUtil.EMPTY, langs) : word;
+        return readingConverter != null ? readingConverter.convert(normalized, StringUtil.EMPTY, langs) : List.of(normalized);
+    }
+
+    private static String[] splitWords(final String query) {
+        return query.replace('\u3000', ' ').trim().split(" +");
+    }
+
+    private static String lastWord(final String query) {
+        final String[] words = splitWords(query);
+        return words[words.length - 1];
+    }
+
+    private static boolean isWhitespace(final char c) {
+        return c == ' ' || c == '\u3000';
+    }
+
+    /**
+     * Creates the key of the request context shared by suggest requests that differ only in the query.
+     * The key consists of the fields, languages, roles, tags, kinds, virtual host key and size in a canonical order.
+     *
+     * @param parameter the suggest request parameters
+     * @param langs the languages
+     * @param roles the roles of the user
+     * @param virtualHostKey the virtual host key
+     * @param kinds the kinds of suggestions
+     * @return the context key
+     * @throws IOException if an I/O error occurs
+     */
+    protected String createSuggestContextKey(final RequestParameter parameter, final String[] langs, final Collection<String> roles,
+            final String virtualHostKey, final Collection<String> kinds) throws IOException {
+        final StringBuilder buf = new StringBuilder(128);
+        buf.append('[');
+        appendSortedValues(buf, parameter.getSuggestFields() != null ? Arrays.asList(parameter.getSuggestFields()) : null);
+        appendSortedValues(buf, langs != null ? Arrays.asList(langs) : null);
+        appendSortedValues(buf, roles);
+        appendSortedValues(buf, parameter.getTags() != null ? Arrays.asList(parameter.getTags()) : null);
+        appendSortedValues(buf, kinds);
+        JsonEncoder.writeString(virtualHostKey != null ? virtualHostKey : StringUtil.EMPTY, buf);
+        buf.append(',').append(parameter.getNum()).append(',');
+        return buf.toString();
+    }
+
+    /**
+     * Creates the key identifying equivalent suggest requests.
+     *
+     * @param contextKey the key of the request context from {@link #createSuggestContextKey}
+     * @param query the query
+     * @return the key
+     * @throws IOException if an I/O error occurs
+     */
+    protected String createSuggestKey(final String contextKey, final String query) throws IOException {
+        final StringBuilder buf = new StringBuilder(contextKey.length() + query.length() + 8);
+        buf.append(contextKey);
+        JsonEncoder.writeString(query, buf);
+        buf.append(']');
+        return buf.toString();
+    }
+
+    private static void appendSortedValues(final StringBuilder buf, final Collection<String> values) throws IOException {
+        buf.append('[');
+        if (values != null) {
+            for (final String value : new TreeSet<>(values)) {
+                JsonEncoder.writeString(value, buf);
+                buf.append(',');
+            }
+        }
+        buf.append("],");
+    }
+
+    /**
+     * Writes the body of a suggest response.
+     *
+     * @param buf the writer to append the body content to
+     * @param suggestResponse the suggest response
+     * @throws IOException if an I/O error occurs
+     */
+    protected void writeSuggestResponse(final JsonResponseWriter buf, final SuggestResponse suggestResponse) throws IOException {
+        final JsonEncoder.Context json = jsonEncoder.createContext(buf);
+        buf.append("\"result\":{");
+        buf.append("\"took\":\"").append(suggestResponse.getTookMs()).append('\"');
+
+        buf.append(",\"total\":\"").append(suggestResponse.getTotal()).append('\"');
+
+        buf.append(",\"num\":\"").append(suggestResponse.getNum()).append('\"');
+
+        if (!suggestResponse.getItems().isEmpty()) {
+            buf.append(",\"hits\":[");
+
+            boolean first = true;
+            for (final SuggestItem item : suggestResponse.getItems()) {
+                if (!first) {
+                    buf.append(',');
+                }
+                first = false;
+
+                buf.append("{\"text\":");
+                json.writeValue(item.getText());
+                buf.append(",\"tags\":[");
+                for (int i = 0; i < item.getTags().length; i++) {
+                    if (i > 0) {
+                        buf.append(',');
+                    }
+                    json.writeValue(item.getTags()[i]);
+                }
+                buf.append(']');
+                buf.append('}');
+            }
+            buf.append(']');
+        }
+
+        buf.append('}');
     }
 
     /**
@@ -350,6 +604,24 @@ public class SuggestApiManager extends ClassicJsonApiManager {
         }
     }
 
+    /**
+     * Returns the cache of suggest responses.
+     *
+     * @return the suggest response cache
+     */
+    public ApiCache<SuggestResponse> getSuggestResponseCache() {
+        return suggestResponseCache;
+    }
+
+    /**
+     * Sets the cache of suggest responses.
+     *
+     * @param suggestResponseCache the suggest response cache
+     */
+    public void setSuggestResponseCache(final ApiCache<SuggestResponse> suggestResponseCache) {
+        this.suggestResponseCache = suggestResponseCache;
+    }
+
     @Override
     protected void writeHeaders(final HttpServletResponse response) {
         ComponentUtil.getFessConfig().getApiJsonResponseHeaderList().forEach(e -> response.setHeader(e.getFirst(), e.getSecond()));
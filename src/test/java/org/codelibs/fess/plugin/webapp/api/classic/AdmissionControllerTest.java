@@ -0,0 +1,158 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.classic;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.codelibs.fess.api.WebApiManagerFactory;
+import org.codelibs.fess.mylasta.direction.FessConfig;
+import org.codelibs.fess.util.ComponentUtil;
+import org.codelibs.fess.webapp.classic_api.UnitWebappTestCase;
+import org.junit.jupiter.api.TestInfo;
+
+public class AdmissionControllerTest extends UnitWebappTestCase {
+
+    private final Map<String, String> systemProperties = new HashMap<>();
+
+    @Override
+    protected boolean isSuppressTestCaseTransaction() {
+        return true;
+    }
+
+    @Override
+    public void setUp(final TestInfo testInfo) throws Exception {
+        ComponentUtil.register(new WebApiManagerFactory(), "webApiManagerFactory");
+        super.setUp(testInfo);
+        ComponentUtil.setFessConfig(new FessConfig.SimpleImpl() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public String getSystemProperty(final String key) {
+                return systemProperties.get(key);
+            }
+
+            @Override
+            public String getSystemProperty(final String key, final String defaultValue) {
+                return systemProperties.getOrDefault(key, defaultValue);
+            }
+        });
+    }
+
+    @Override
+    public void tearDown(final TestInfo testInfo) throws Exception {
+        ComponentUtil.setFessConfig(null);
+        super.tearDown(testInfo);
+    }
+
+    public void test_acquire() throws IOException {
+        final AdmissionController controller = new AdmissionController();
+        assertSame(AdmissionController.Permit.NONE, controller.acquire("search"));
+        assertNull(controller.getLimiter("search"));
+
+        systemProperties.put("api.classic.admission.enabled", "true");
+        systemProperties.put("api.classic.admission.max_concurrency", "2");
+        systemProperties.put("api.classic.admission.max_concurrency.ping", "1");
+        systemProperties.put("api.classic.admission.max_queue", "0");
+        final AdmissionController.Permit search1 = controller.acquire("search");
+        final AdmissionController.Permit search2 = controller.acquire("search");
+        assertNotNull(search1);
+        assertNotNull(search2);
+        assertNull(controller.acquire("search"));
+        final AdmissionController.Permit ping = controller.acquire("ping");
+        assertNotNull(ping);
+        assertNull(controller.acquire("ping"));
+
+        search1.release();
+        search1.release();
+        assertEquals(1, controller.getLimiter("search").getInFlight());
+        assertNotNull(controller.acquire("search"));
+        assertEquals(1L, controller.getLimiter("search").getRejectedCount());
+
+        final StringBuilder buf = new StringBuilder();
+        controller.writeJson(buf);
+        assertEquals("{\"ping\":{\"limit\":1,\"in_flight\":1,\"queued\":0,\"rejected\":1},"
+                + "\"search\":{\"limit\":2,\"in_flight\":2,\"queued\":0,\"rejected\":1}}", buf.toString());
+
+        controller.reset();
+        assertNull(controller.getLimiter("search"));
+    }
+
+    public void test_acquire_queue() throws Exception {
+        final AdmissionController.Limiter limiter = new AdmissionController.Limiter(1, 1, TimeUnit.SECONDS.toNanos(10), Long.MAX_VALUE);
+        final AdmissionController.Permit first = limiter.acquire();
+        final CompletableFuture<AdmissionController.Permit> queued = CompletableFuture.supplyAsync(limiter::acquire);
+        for (int i = 0; i < 100 && limiter.queued == 0; i++) {
+            Thread.sleep(10L);
+        }
+        assertEquals(1, limiter.queued);
+        assertNull(limiter.acquire());
+
+        first.release();
+        assertNotNull(queued.get(10, TimeUnit.SECONDS));
+        assertEquals(1, limiter.getInFlight());
+
+        final AdmissionController.Limiter timeoutLimiter =
+                new AdmissionController.Limiter(1, 1, TimeUnit.MILLISECONDS.toNanos(10), Long.MAX_VALUE);
+        assertNotNull(timeoutLimiter.acquire());
+        assertNull(timeoutLimiter.acquire());
+        assertEquals(1L, timeoutLimiter.getRejectedCount());
+    }
+
+    public void test_adaptive() {
+        final long target = TimeUnit.MILLISECONDS.toNanos(100);
+        final AdmissionController.Limiter limiter = new AdmissionController.Limiter(10, 0, 0L, target);
+        assertEquals(10, limiter.getLimit());
+        long now = 0L;
+        limiter.acquire();
+        limiter.release(target * 2, now);
+        assertEquals(9, limiter.getLimit());
+        // slow requests completing within the same latency window decrease the limit only once
+        for (int i = 0; i < 5; i++) {
+            limiter.acquire();
+            limiter.release(target * 2, now + target - 1);
+        }
+        assertEquals(9, limiter.getLimit());
+        for (int i = 0; i < 30; i++) {
+            now += target;
+            limiter.acquire();
+            limiter.release(target * 2, now);
+        }
+        assertEquals(1, limiter.getLimit());
+
+        limiter.acquire().release();
+        assertEquals(2, limiter.getLimit());
+
+        final AdmissionController.Permit permit = limiter.acquire();
+        for (int i = 0; i < 20; i++) {
+            limiter.acquire().release();
+        }
+        permit.release();
+        // grows only while at least half of the limit is in use
+        assertEquals(6, limiter.getLimit());
+
+        final AdmissionController.Limiter small = new AdmissionController.Limiter(2, 0, 0L, target);
+        final AdmissionController.Permit held = small.acquire();
+        for (int i = 0; i < 5; i++) {
+            small.acquire().release();
+        }
+        held.release();
+        assertEquals(2, small.getLimit());
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.classic;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.codelibs.fess.api.WebApiManagerFactory;
+import org.codelibs.fess.mylasta.direction.FessConfig;
+import org.codelibs.fess.util.ComponentUtil;
+import org.codelibs.fess.webapp.classic_api.UnitWebappTestCase;
+import org.junit.jupiter.api.TestInfo;
+
+public class ApiCacheTest extends UnitWebappTestCase {
+
+    private final Map<String, String> systemProperties = new HashMap<>();
+
+    @Override
+    protected boolean isSuppressTestCaseTransaction() {
+        return true;
+    }
+
+    @Override
+    public void setUp(final TestInfo testInfo) throws Exception {
+        ComponentUtil.register(new WebApiManagerFactory(), "webApiManagerFactory");
+        super.setUp(testInfo);
+        ComponentUtil.setFessConfig(new FessConfig.SimpleImpl() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public String getSystemProperty(final String key) {
+                return systemProperties.get(key);
+            }
+
+            @Override
+            public String getSystemProperty(final String key, final String defaultValue) {
+                return systemProperties.getOrDefault(key, defaultValue);
+            }
+        });
+    }
+
+    public void test_peek() throws IOException {
+        final ApiCache<String> cache = new ApiCache<>("suggest", 10, 100);
+        assertNull(cache.peek("a"));
+        cache.put("a", "x");
+        assertEquals("x", cache.peek("a"));
+        assertEquals(0L, cache.getStats().requestCount());
+
+        cache.recordDerivedHit();
+        final StringBuilder buf = new StringBuilder();
+        cache.writeJson(buf);
+        assertEquals("{\"entries\":1,\"hits\":0,\"derived_hits\":1,\"misses\":0,\"evictions\":0}", buf.toString());
+
+        cache.reset();
+        buf.setLength(0);
+        cache.writeJson(buf);
+        assertEquals("{\"entries\":0,\"hits\":0,\"derived_hits\":0,\"misses\":0,\"evictions\":0}", buf.toString());
+    }
+
+    public void test_maxEntries() {
+        systemProperties.put("api.classic.cache.suggest.max_entries", "20");
+        final ApiCache<String> cache = new ApiCache<>("suggest", 10, 100);
+        for (int i = 0; i < 100; i++) {
+            cache.put("key" + i, "value" + i);
+        }
+        assertTrue(cache.size() <= 20);
+        assertEquals("value99", cache.get("key99"));
+    }
+}
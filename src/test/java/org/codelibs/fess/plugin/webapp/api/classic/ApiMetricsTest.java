@@ -0,0 +1,116 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.classic;
+
+import java.io.IOException;
+
+import org.codelibs.fess.api.WebApiManagerFactory;
+import org.codelibs.fess.util.ComponentUtil;
+import org.codelibs.fess.webapp.classic_api.UnitWebappTestCase;
+import org.junit.jupiter.api.TestInfo;
+
+public class ApiMetricsTest extends UnitWebappTestCase {
+
+    @Override
+    protected boolean isSuppressTestCaseTransaction() {
+        return true;
+    }
+
+    @Override
+    public void setUp(final TestInfo testInfo) throws Exception {
+        ComponentUtil.register(new WebApiManagerFactory(), "webApiManagerFactory");
+        super.setUp(testInfo);
+    }
+
+    public void test_sample_record() {
+        final ApiMetrics metrics = new ApiMetrics();
+        final ApiMetrics.Sample sample = metrics.start("search");
+        sample.startBackend();
+        sample.endBackend();
+        sample.startBackend();
+        sample.endBackend();
+        sample.serialized(0, 1000L);
+        sample.end();
+        sample.end();
+
+        final ApiMetrics.EndpointMetrics endpoint = metrics.getEndpoint("search");
+        assertEquals(1L, endpoint.getRequestCount());
+        assertEquals(1L, endpoint.getTotal().getCount());
+        assertEquals(1L, endpoint.getBackend().getCount());
+        assertEquals(1L, endpoint.getSerialization().getCount());
+        assertEquals(0L, endpoint.getErrorCount(0));
+        assertEquals(0L, endpoint.getCoalescedCount());
+    }
+
+    public void test_sample_errors() {
+        final ApiMetrics metrics = new ApiMetrics();
+        metrics.start("ping").end();
+        final ApiMetrics.Sample sample1 = metrics.start("ping");
+        sample1.serialized(9, 10L);
+        sample1.end();
+        final ApiMetrics.Sample sample2 = metrics.start("ping");
+        sample2.setStatus(9);
+        sample2.end();
+        final ApiMetrics.Sample sample3 = metrics.start("ping");
+        sample3.coalesced();
+        sample3.serialized(1, 10L);
+        sample3.end();
+
+        final ApiMetrics.EndpointMetrics endpoint = metrics.getEndpoint("ping");
+        assertEquals(4L, endpoint.getRequestCount());
+        assertEquals(2L, endpoint.getErrorCount(9));
+        assertEquals(1L, endpoint.getErrorCount(1));
+        assertEquals(1L, endpoint.getCoalescedCount());
+        assertEquals(0L, endpoint.getBackend().getCount());
+        assertEquals(2L, endpoint.getSerialization().getCount());
+    }
+
+    public void test_sample_none() {
+        final ApiMetrics.Sample sample = ApiMetrics.Sample.NONE;
+        sample.startBackend();
+        sample.endBackend();
+        sample.coalesced();
+        sample.end();
+    }
+
+    public void test_writeJson() throws IOException {
+        final ApiMetrics metrics = new ApiMetrics();
+        metrics.getEndpoint("suggest").record(1, 2_000_000L, 1_000_000L, -1L);
+        metrics.getEndpoint("suggest").recordCoalesced();
+        metrics.getEndpoint("label").record(0, 3_000L, -1L, 1_000L);
+
+        final StringBuilder buf = new StringBuilder();
+        metrics.writeJson(buf);
+        assertEquals("{\"label\":{\"requests\":1,\"coalesced\":0,\"errors\":{}," //
+                + "\"total_us\":{\"count\":1,\"mean\":3,\"p50\":3,\"p90\":3,\"p99\":3,\"p999\":3,\"max\":3}," //
+                + "\"backend_us\":{\"count\":0,\"mean\":0,\"p50\":0,\"p90\":0,\"p99\":0,\"p999\":0,\"max\":0}," //
+                + "\"serialization_us\":{\"count\":1,\"mean\":1,\"p50\":1,\"p90\":1,\"p99\":1,\"p999\":1,\"max\":1}}," //
+                + "\"suggest\":{\"requests\":1,\"coalesced\":1,\"errors\":{\"1\":1}," //
+                + "\"total_us\":{\"count\":1,\"mean\":2000,\"p50\":2000,\"p90\":2000,\"p99\":2000,\"p999\":2000,\"max\":2000}," //
+                + "\"backend_us\":{\"count\":1,\"mean\":1000,\"p50\":1000,\"p90\":1000,\"p99\":1000,\"p999\":1000,\"max\":1000}," //
+                + "\"serialization_us\":{\"count\":0,\"mean\":0,\"p50\":0,\"p90\":0,\"p99\":0,\"p999\":0,\"max\":0}}}", buf.toString());
+    }
+
+    public void test_reset() {
+        final ApiMetrics metrics = new ApiMetrics();
+        metrics.getEndpoint("search").record(1, 10L, 5L, 5L);
+        metrics.reset();
+        final ApiMetrics.EndpointMetrics endpoint = metrics.getEndpoint("search");
+        assertEquals(0L, endpoint.getRequestCount());
+        assertEquals(0L, endpoint.getErrorCount(1));
+        assertEquals(0L, endpoint.getTotal().getCount());
+    }
+}
@@ -0,0 +1,458 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.classic;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.codelibs.fess.api.WebApiManagerFactory;
+import org.codelibs.fess.mylasta.direction.FessConfig;
+import org.codelibs.fess.util.ComponentUtil;
+import org.codelibs.fess.webapp.classic_api.UnitWebappTestCase;
+import org.dbflute.utflute.mocklet.MockletHttpServletRequestImpl;
+import org.dbflute.utflute.mocklet.MockletHttpServletResponseImpl;
+import org.dbflute.utflute.mocklet.MockletServletContextImpl;
+import org.junit.jupiter.api.TestInfo;
+import org.lastaflute.di.core.factory.SingletonLaContainerFactory;
+
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.ServletContext;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletResponse;
+
+public class AsyncProcessorTest extends UnitWebappTestCase {
+
+    private final Map<String, String> systemProperties = new HashMap<>();
+
+    private AsyncProcessor processor;
+
+    @Override
+    protected boolean isSuppressTestCaseTransaction() {
+        return true;
+    }
+
+    @Override
+    public void setUp(final TestInfo testInfo) throws Exception {
+        ComponentUtil.register(new WebApiManagerFactory(), "webApiManagerFactory");
+        super.setUp(testInfo);
+        ComponentUtil.setFessConfig(new FessConfig.SimpleImpl() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public String getSystemProperty(final String key) {
+                return systemProperties.get(key);
+            }
+
+            @Override
+            public String getSystemProperty(final String key, final String defaultValue) {
+                return systemProperties.getOrDefault(key, defaultValue);
+            }
+        });
+        processor = new AsyncProcessor();
+    }
+
+    @Override
+    public void tearDown(final TestInfo testInfo) throws Exception {
+        processor.destroy();
+        ComponentUtil.setFessConfig(null);
+        super.tearDown(testInfo);
+    }
+
+    public void test_isEnabled() {
+        final TestRequest request = new TestRequest();
+        assertFalse(processor.isEnabled(request));
+        systemProperties.put("api.classic.async.enabled", "true");
+        assertTrue(processor.isEnabled(request));
+        assertFalse(processor.isEnabled(new MockletHttpServletRequestImpl(new MockletServletContextImpl("/fess"), "/json")));
+        processor.destroy();
+        assertFalse(processor.isEnabled(request));
+    }
+
+    public void test_start() throws Exception {
+        systemProperties.put("api.classic.async.timeout", "5000");
+        final AtomicInteger ended = new AtomicInteger();
+        final TestRequest request = new TestRequest();
+        final MockletHttpServletResponseImpl response = new MockletHttpServletResponseImpl(request);
+        processor.start("search", request, response, (req, res) -> {
+            res.setContentType("application/json; charset=UTF-8");
+            res.setHeader("X-Test", "a");
+            res.getOutputStream().write("{\"status\":0}".getBytes(StandardCharsets.UTF_8));
+        }, (req, res) -> fail(), (req, res) -> fail(), ended::incrementAndGet);
+        assertTrue(request.asyncContext.completed.await(10, TimeUnit.SECONDS));
+        waitForEnd(ended, 1);
+        assertEquals(5000L, request.asyncContext.getTimeout());
+        assertEquals("{\"status\":0}", new String(response.getResponseBytes(), StandardCharsets.UTF_8));
+        assertEquals("application/json; charset=UTF-8", response.getContentType());
+        assertEquals("a", response.getHeader("X-Test"));
+    }
+
+    public void test_start_timeout() throws Exception {
+        final TestRequest request = new TestRequest();
+        final MockletHttpServletResponseImpl response = new MockletHttpServletResponseImpl(request);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch finished = new CountDownLatch(1);
+        final AtomicInteger ended = new AtomicInteger();
+        processor.start("search", request, response, (req, res) -> {
+            res.setHeader("X-Test", "a");
+            res.getOutputStream().write("late".getBytes(StandardCharsets.UTF_8));
+            started.countDown();
+            try {
+                Thread.sleep(10000L);
+            } finally {
+                finished.countDown();
+            }
+        }, (req, res) -> {
+            res.setStatus(503);
+            res.getOutputStream().write("timeout".getBytes(StandardCharsets.UTF_8));
+        }, (req, res) -> fail(), ended::incrementAndGet);
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        request.asyncContext.fireTimeout();
+        assertTrue(request.asyncContext.completed.await(10, TimeUnit.SECONDS));
+        assertTrue(finished.await(10, TimeUnit.SECONDS));
+        assertEquals("timeout", new String(response.getResponseBytes(), StandardCharsets.UTF_8));
+        assertEquals(503, response.getStatus());
+        assertNull(response.getHeader("X-Test"));
+        waitForEnd(ended, 1);
+    }
+
+    public void test_start_timeoutBeforeStart() throws Exception {
+        systemProperties.put("api.classic.async.pool_size", "1");
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger ended = new AtomicInteger();
+        final TestRequest first = new TestRequest();
+        processor.start("search", first, new MockletHttpServletResponseImpl(first), (req, res) -> release.await(10, TimeUnit.SECONDS),
+                (req, res) -> fail(), (req, res) -> fail(), ended::incrementAndGet);
+        final TestRequest second = new TestRequest();
+        final AtomicBoolean ran = new AtomicBoolean();
+        processor.start("search", second, new MockletHttpServletResponseImpl(second), (req, res) -> ran.set(true), (req, res) -> {},
+                (req, res) -> fail(), ended::incrementAndGet);
+        second.asyncContext.fireTimeout();
+        assertTrue(second.asyncContext.completed.await(10, TimeUnit.SECONDS));
+        waitForEnd(ended, 1);
+
+        release.countDown();
+        assertTrue(first.asyncContext.completed.await(10, TimeUnit.SECONDS));
+        waitForEnd(ended, 2);
+        assertFalse(ran.get());
+    }
+
+    public void test_start_virtualThreads() throws Exception {
+        systemProperties.put("api.classic.async.virtual_threads", "true");
+        systemProperties.put("api.classic.async.max_concurrency.search", "1");
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final AtomicBoolean virtual = new AtomicBoolean();
+        final List<TestRequest> requests = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            final TestRequest request = new TestRequest();
+            requests.add(request);
+            processor.start("search", request, new MockletHttpServletResponseImpl(request), (req, res) -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                virtual.set(Thread.currentThread().isVirtual());
+                release.await(10, TimeUnit.SECONDS);
+                running.decrementAndGet();
+            }, (req, res) -> fail(), (req, res) -> fail(), null);
+        }
+        final TestRequest suggestRequest = new TestRequest();
+        processor.start("suggest", suggestRequest, new MockletHttpServletResponseImpl(suggestRequest), (req, res) -> {},
+                (req, res) -> fail(), (req, res) -> fail(), null);
+        assertTrue(suggestRequest.asyncContext.completed.await(10, TimeUnit.SECONDS));
+
+        release.countDown();
+        for (final TestRequest request : requests) {
+            assertTrue(request.asyncContext.completed.await(10, TimeUnit.SECONDS));
+        }
+        assertEquals(1, maxRunning.get());
+        assertTrue(virtual.get());
+        assertEquals(1, processor.getSemaphore("search").availablePermits());
+        assertEquals(256, processor.getSemaphore("suggest").availablePermits());
+    }
+
+    public void test_start_timeoutWhileStreaming() throws Exception {
+        systemProperties.put("api.classic.async.timeout", "5000");
+        final TestRequest request = new TestRequest();
+        final MockletHttpServletResponseImpl response = new MockletHttpServletResponseImpl(request);
+        final CountDownLatch streaming = new CountDownLatch(1);
+        final CountDownLatch timedOut = new CountDownLatch(1);
+        final AtomicInteger ended = new AtomicInteger();
+        final byte[] body = new byte[AsyncProcessor.StreamingResponse.PENDING_BODY_SIZE + 1];
+        processor.start("search", request, response, (req, res) -> {
+            res.setHeader("X-Test", "a");
+            res.getOutputStream().write(body);
+            streaming.countDown();
+            timedOut.await(10, TimeUnit.SECONDS);
+            res.getOutputStream().write('!');
+        }, (req, res) -> fail(), (req, res) -> fail(), ended::incrementAndGet);
+        assertTrue(streaming.await(10, TimeUnit.SECONDS));
+        assertEquals(body.length, response.getResponseBytes().length);
+        assertEquals("a", response.getHeader("X-Test"));
+
+        request.asyncContext.fireTimeout();
+        assertEquals(0L, request.asyncContext.completed.getCount());
+        timedOut.countDown();
+        waitForEnd(ended, 1);
+        assertEquals(body.length, response.getResponseBytes().length);
+    }
+
+    public void test_start_notStarted() throws Exception {
+        final AtomicInteger ended = new AtomicInteger();
+        final TestRequest request = new TestRequest() {
+            @Override
+            public AsyncContext startAsync(final ServletRequest servletRequest, final ServletResponse servletResponse) {
+                throw new IllegalStateException("not supported");
+            }
+        };
+        try {
+            processor.start("search", request, new MockletHttpServletResponseImpl(request), (req, res) -> fail(), (req, res) -> fail(),
+                    (req, res) -> fail(), ended::incrementAndGet);
+            fail();
+        } catch (final IllegalStateException e) {
+            // expected
+        }
+        assertEquals(0, ended.get());
+    }
+
+    public void test_start_rejected() throws Exception {
+        systemProperties.put("api.classic.async.pool_size", "1");
+        systemProperties.put("api.classic.async.queue_size", "1");
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger ended = new AtomicInteger();
+        final List<TestRequest> requests = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            final TestRequest request = new TestRequest();
+            requests.add(request);
+            processor.start("search", request, new MockletHttpServletResponseImpl(request),
+                    (req, res) -> release.await(10, TimeUnit.SECONDS), (req, res) -> fail(), (req, res) -> fail(), ended::incrementAndGet);
+        }
+        final TestRequest request = new TestRequest();
+        final MockletHttpServletResponseImpl response = new MockletHttpServletResponseImpl(request);
+        final AsyncProcessor.Binding previous = AsyncProcessor.bind(request, response);
+        try {
+            processor.start("search", request, response, (req, res) -> fail(), (req, res) -> fail(), (req, res) -> {
+                res.setStatus(503);
+                res.getOutputStream().write("rejected".getBytes(StandardCharsets.UTF_8));
+            }, ended::incrementAndGet);
+            assertTrue(request.asyncContext.completed.await(10, TimeUnit.SECONDS));
+            assertEquals("rejected", new String(response.getResponseBytes(), StandardCharsets.UTF_8));
+            assertEquals(503, response.getStatus());
+            waitForEnd(ended, 1);
+            if (SingletonLaContainerFactory.hasContainer() && SingletonLaContainerFactory.getExternalContext() != null) {
+                assertSame(request, SingletonLaContainerFactory.getExternalContext().getRequest());
+                assertSame(response, SingletonLaContainerFactory.getExternalContext().getResponse());
+            }
+        } finally {
+            previous.restore();
+        }
+
+        release.countDown();
+        for (final TestRequest r : requests) {
+            assertTrue(r.asyncContext.completed.await(10, TimeUnit.SECONDS));
+        }
+        waitForEnd(ended, 3);
+    }
+
+    public void test_StreamingResponse() throws Exception {
+        final TestRequest request = new TestRequest();
+        final MockletHttpServletResponseImpl response = new MockletHttpServletResponseImpl(request);
+        final AtomicBoolean acquired = new AtomicBoolean();
+        final AsyncProcessor.StreamingResponse streaming =
+                new AsyncProcessor.StreamingResponse(response, () -> acquired.compareAndSet(false, true));
+        streaming.setContentType("text/plain; charset=UTF-8");
+        streaming.getWriter().write("テスト");
+        streaming.addHeader("Vary", "Accept");
+        streaming.flushBuffer();
+        assertFalse(streaming.isCommitted());
+        assertFalse(streaming.isOwner());
+        assertEquals(0, response.getResponseBytes().length);
+        assertNull(response.getHeader("Vary"));
+
+        streaming.commit();
+        assertTrue(streaming.isOwner());
+        assertEquals("テスト", new String(response.getResponseBytes(), StandardCharsets.UTF_8));
+        assertEquals("Accept", response.getHeader("Vary"));
+        streaming.setHeader("X-Test", "a");
+        assertEquals("a", response.getHeader("X-Test"));
+
+        streaming.discard();
+        streaming.getOutputStream().write('!');
+        streaming.setHeader("X-Late", "b");
+        assertEquals("テスト", new String(response.getResponseBytes(), StandardCharsets.UTF_8));
+        assertNull(response.getHeader("X-Late"));
+        try {
+            streaming.getOutputStream().setWriteListener(null);
+            fail();
+        } catch (final IllegalStateException e) {
+            // expected
+        }
+    }
+
+    public void test_StreamingResponse_acquireOnLargeBody() throws Exception {
+        final TestRequest request = new TestRequest();
+        final MockletHttpServletResponseImpl response = new MockletHttpServletResponseImpl(request);
+        final AsyncProcessor.StreamingResponse streaming = new AsyncProcessor.StreamingResponse(response, () -> true);
+        streaming.setHeader("X-Test", "a");
+        streaming.getOutputStream().write(new byte[AsyncProcessor.StreamingResponse.PENDING_BODY_SIZE]);
+        assertFalse(streaming.isOwner());
+        streaming.getOutputStream().write(1);
+        assertTrue(streaming.isOwner());
+        assertEquals(AsyncProcessor.StreamingResponse.PENDING_BODY_SIZE + 1, response.getResponseBytes().length);
+        assertEquals("a", response.getHeader("X-Test"));
+    }
+
+    public void test_StreamingResponse_discarded() throws Exception {
+        final TestRequest request = new TestRequest();
+        final MockletHttpServletResponseImpl response = new MockletHttpServletResponseImpl(request);
+        final AsyncProcessor.StreamingResponse streaming = new AsyncProcessor.StreamingResponse(response, () -> false);
+        streaming.setHeader("X-Test", "a");
+        streaming.getOutputStream().write(new byte[AsyncProcessor.StreamingResponse.PENDING_BODY_SIZE + 1]);
+        streaming.setHeader("X-Late", "b");
+        streaming.commit();
+        assertFalse(streaming.isOwner());
+        assertEquals(0, response.getResponseBytes().length);
+        assertNull(response.getHeader("X-Test"));
+        assertNull(response.getHeader("X-Late"));
+    }
+
+    private void waitForEnd(final AtomicInteger ended, final int expected) throws InterruptedException {
+        for (int i = 0; i < 100 && ended.get() < expected; i++) {
+            Thread.sleep(100L);
+        }
+        assertEquals(expected, ended.get());
+    }
+
+    private static class TestRequest extends MockletHttpServletRequestImpl {
+        private TestAsyncContext asyncContext;
+
+        TestRequest() {
+            super(new MockletServletContextImpl("/fess"), "/json");
+        }
+
+        @Override
+        public boolean isAsyncSupported() {
+            return true;
+        }
+
+        @Override
+        public DispatcherType getDispatcherType() {
+            return DispatcherType.REQUEST;
+        }
+
+        @Override
+        public AsyncContext startAsync(final ServletRequest servletRequest, final ServletResponse servletResponse) {
+            asyncContext = new TestAsyncContext(servletRequest, servletResponse);
+            return asyncContext;
+        }
+    }
+
+    private static class TestAsyncContext implements AsyncContext {
+        private final ServletRequest request;
+
+        private final ServletResponse response;
+
+        private final List<AsyncListener> listeners = new ArrayList<>();
+
+        private final CountDownLatch completed = new CountDownLatch(1);
+
+        private long timeout;
+
+        TestAsyncContext(final ServletRequest request, final ServletResponse response) {
+            this.request = request;
+            this.response = response;
+        }
+
+        void fireTimeout() throws Exception {
+            for (final AsyncListener listener : listeners) {
+                listener.onTimeout(new AsyncEvent(this));
+            }
+        }
+
+        @Override
+        public ServletRequest getRequest() {
+            return request;
+        }
+
+        @Override
+        public ServletResponse getResponse() {
+            return response;
+        }
+
+        @Override
+        public boolean hasOriginalRequestAndResponse() {
+            return true;
+        }
+
+        @Override
+        public void dispatch() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void dispatch(final String path) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void dispatch(final ServletContext context, final String path) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void complete() {
+            completed.countDown();
+        }
+
+        @Override
+        public void start(final Runnable run) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void addListener(final AsyncListener listener) {
+            listeners.add(listener);
+        }
+
+        @Override
+        public void addListener(final AsyncListener listener, final ServletRequest servletRequest, final ServletResponse servletResponse) {
+            listeners.add(listener);
+        }
+
+        @Override
+        public <T extends AsyncListener> T createListener(final Class<T> clazz) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void setTimeout(final long timeout) {
+            this.timeout = timeout;
+        }
+
+        @Override
+        public long getTimeout() {
+            return timeout;
+        }
+    }
+}
@@ -17,7 +17,10 @@ package org.codelibs.fess.plugin.webapp.api.classic;
 
 import org.junit.jupiter.api.TestInfo;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
 import java.util.Arrays;
 import java.util.Date;
@@ -25,6 +28,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.zip.GZIPInputStream;
 
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
@@ -34,9 +38,13 @@ import jakarta.servlet.http.HttpServletResponse;
 import org.codelibs.core.CoreLibConstants;
 import org.codelibs.fess.Constants;
 import org.codelibs.fess.api.WebApiManagerFactory;
+import org.codelibs.fess.helper.SystemHelper;
 import org.codelibs.fess.mylasta.direction.FessConfig;
 import org.codelibs.fess.util.ComponentUtil;
 import org.codelibs.fess.webapp.classic_api.UnitWebappTestCase;
+import org.dbflute.utflute.mocklet.MockletHttpServletRequestImpl;
+import org.dbflute.utflute.mocklet.MockletHttpServletResponseImpl;
+import org.dbflute.utflute.mocklet.MockletServletContextImpl;
 
 public class ClassicJsonApiManagerTest extends UnitWebappTestCase {
 
@@ -44,6 +52,10 @@ public class ClassicJsonApiManagerTest extends UnitWebappTestCase {
 
     private TestClassicJsonApiManager manager;
 
+    private final Map<String, String> systemProperties = new HashMap<>();
+
+    private String fessVersion = "15.0.0";
+
     @Override
     protected String prepareConfigFile() {
         return "test_app.xml";
@@ -63,9 +75,30 @@ public class ClassicJsonApiManagerTest extends UnitWebappTestCase {
             public String getApiJsonResponseExceptionIncluded() {
                 return Constants.FALSE;
             }
+
+            @Override
+            public boolean isApiJsonpEnabled() {
+                return false;
+            }
+
+            @Override
+            public String getSystemProperty(final String key) {
+                return systemProperties.get(key);
+            }
+
+            @Override
+            public String getSystemProperty(final String key, final String defaultValue) {
+                return systemProperties.getOrDefault(key, defaultValue);
+            }
         });
         webApiManagerFactory = new WebApiManagerFactory();
         ComponentUtil.register(webApiManagerFactory, "webApiManagerFactory");
+        ComponentUtil.register(new SystemHelper() {
+            @Override
+            public String getProductVersion() {
+                return fessVersion;
+            }
+        }, "systemHelper");
         manager = new TestClassicJsonApiManager();
         super.setUp(testInfo);
     }
@@ -280,6 +313,92 @@ public class ClassicJsonApiManagerTest extends UnitWebappTestCase {
         assertEquals("/**/callback0", result);
     }
 
+    public void test_writeJsonResponse_body() {
+        MockletHttpServletResponseImpl response = createResponse();
+        manager.testWriteJsonResponse(response, 0, buf -> buf.append("\"result\":[").append(1).append(']'));
+        assertEquals("{\"response\":{\"version\":\"15.0.0\",\"status\":0,\"result\":[1]}}", new String(response.getResponseBytes(), StandardCharsets.UTF_8));
+        assertEquals("application/json; charset=UTF-8", response.getContentType());
+    }
+
+    public void test_writeJsonResponse_noBody() {
+        MockletHttpServletResponseImpl response = createResponse();
+        manager.testWriteJsonResponse(response, 0, null);
+        assertEquals("{\"response\":{\"version\":\"15.0.0\",\"status\":0}}", new String(response.getResponseBytes(), StandardCharsets.UTF_8));
+    }
+
+    public void test_writeJsonResponse_multibyteBody() {
+        MockletHttpServletResponseImpl response = createResponse();
+        manager.testWriteJsonResponse(response, 0, buf -> buf.append("\"result\":\"テスト😀\""));
+        assertEquals("{\"response\":{\"version\":\"15.0.0\",\"status\":0,\"result\":\"テスト😀\"}}",
+                new String(response.getResponseBytes(), StandardCharsets.UTF_8));
+    }
+
+    public void test_getEnvelopePrefix() {
+        final byte[] prefix = manager.getEnvelopePrefix();
+        assertEquals("{\"response\":{\"version\":\"15.0.0\",\"status\":", new String(prefix, StandardCharsets.UTF_8));
+        assertSame(prefix, manager.getEnvelopePrefix());
+
+        fessVersion = "15.1.0";
+        assertEquals("{\"response\":{\"version\":\"15.1.0\",\"status\":", new String(manager.getEnvelopePrefix(), StandardCharsets.UTF_8));
+    }
+
+    public void test_getOutputStream_compression() throws IOException {
+        MockletServletContextImpl servletContext = new MockletServletContextImpl("/fess");
+        MockletHttpServletRequestImpl request = new MockletHttpServletRequestImpl(servletContext, "/json");
+        request.addHeader("Accept-Encoding", "gzip, deflate");
+        MockletHttpServletResponseImpl response = new MockletHttpServletResponseImpl(request);
+        assertFalse(manager.getOutputStream(request, response) instanceof CompressingOutputStream);
+        assertNull(response.getHeader("Vary"));
+
+        systemProperties.put("api.classic.compression.enabled", "true");
+        systemProperties.put("api.classic.compression.min_size", "16");
+        response = new MockletHttpServletResponseImpl(request);
+        try (JsonResponseWriter writer = new JsonResponseWriter(manager.getOutputStream(request, response))) {
+            writer.append("{\"result\":\"").append("a".repeat(100)).append("\"}");
+        }
+        assertEquals("gzip", response.getHeader("Content-Encoding"));
+        assertEquals("Accept-Encoding", response.getHeader("Vary"));
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(response.getResponseBytes()))) {
+            assertEquals("{\"result\":\"" + "a".repeat(100) + "\"}", new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+
+        MockletHttpServletRequestImpl identityRequest = new MockletHttpServletRequestImpl(servletContext, "/json");
+        response = new MockletHttpServletResponseImpl(identityRequest);
+        assertFalse(manager.getOutputStream(identityRequest, response) instanceof CompressingOutputStream);
+        assertEquals("Accept-Encoding", response.getHeader("Vary"));
+    }
+
+    public void test_getStreamingOutputStream() throws IOException {
+        final MockletServletContextImpl servletContext = new MockletServletContextImpl("/fess");
+        final MockletHttpServletRequestImpl request = new MockletHttpServletRequestImpl(servletContext, "/json");
+        request.addHeader("Accept-Encoding", "gzip");
+        final MockletHttpServletResponseImpl response = new MockletHttpServletResponseImpl(request);
+        systemProperties.put("api.classic.compression.enabled", "true");
+        systemProperties.put("api.classic.compression.min_size", "1024");
+        final OutputStream out = manager.getStreamingOutputStream(request, response);
+        out.write("{\"n\":1}\n".getBytes(StandardCharsets.UTF_8));
+        out.flush();
+        // a small flushed body reaches the client without waiting for the minimum size
+        assertEquals("gzip", response.getHeader("Content-Encoding"));
+        assertTrue(response.getResponseBytes().length > 0);
+        out.close();
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(response.getResponseBytes()))) {
+            assertEquals("{\"n\":1}\n", new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    public void test_toResponseBody_blank() {
+        assertNull(manager.toResponseBody(null));
+        assertNull(manager.toResponseBody(" "));
+        assertNotNull(manager.toResponseBody("\"result\":[]"));
+    }
+
+    private MockletHttpServletResponseImpl createResponse() {
+        MockletServletContextImpl servletContext = new MockletServletContextImpl("/fess");
+        MockletHttpServletRequestImpl request = new MockletHttpServletRequestImpl(servletContext, "/json");
+        return new MockletHttpServletResponseImpl(request);
+    }
+
     // Test implementation of abstract ClassicJsonApiManager for testing purposes
     private static class TestClassicJsonApiManager extends ClassicJsonApiManager {
         private String mimeType = "application/json";
@@ -314,6 +433,10 @@ public class ClassicJsonApiManagerTest extends UnitWebappTestCase {
             return escapeJson(obj);
         }
 
+        public void testWriteJsonResponse(HttpServletResponse response, int status, ResponseBody body) {
+            writeJsonResponse(response, status, body);
+        }
+
         public String getMimeType() {
             return mimeType;
         }
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.classic;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import org.codelibs.fess.api.WebApiManagerFactory;
+import org.codelibs.fess.util.ComponentUtil;
+import org.codelibs.fess.webapp.classic_api.UnitWebappTestCase;
+import org.dbflute.utflute.mocklet.MockletHttpServletRequestImpl;
+import org.dbflute.utflute.mocklet.MockletHttpServletResponseImpl;
+import org.dbflute.utflute.mocklet.MockletServletContextImpl;
+import org.junit.jupiter.api.TestInfo;
+
+public class CompressingOutputStreamTest extends UnitWebappTestCase {
+
+    @Override
+    protected boolean isSuppressTestCaseTransaction() {
+        return true;
+    }
+
+    @Override
+    public void setUp(final TestInfo testInfo) throws Exception {
+        ComponentUtil.register(new WebApiManagerFactory(), "webApiManagerFactory");
+        super.setUp(testInfo);
+    }
+
+    public void test_acceptsGzip() {
+        assertTrue(CompressingOutputStream.acceptsGzip("gzip"));
+        assertTrue(CompressingOutputStream.acceptsGzip("deflate, GZIP;q=0.5, br"));
+        assertTrue(CompressingOutputStream.acceptsGzip("x-gzip"));
+        assertTrue(CompressingOutputStream.acceptsGzip("*"));
+        assertFalse(CompressingOutputStream.acceptsGzip(null));
+        assertFalse(CompressingOutputStream.acceptsGzip(""));
+        assertFalse(CompressingOutputStream.acceptsGzip("deflate, br"));
+        assertFalse(CompressingOutputStream.acceptsGzip("gzip;q=0"));
+        assertFalse(CompressingOutputStream.acceptsGzip("*, gzip;q=0"));
+        assertFalse(CompressingOutputStream.acceptsGzip("gzip;q=abc"));
+    }
+
+    public void test_belowMinSize() throws IOException {
+        final MockletHttpServletResponseImpl response = createResponse();
+        try (CompressingOutputStream out = new CompressingOutputStream(response, 100, 6)) {
+            out.write("{\"a\":1}".getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            assertFalse(out.isCompressing());
+        }
+        assertNull(response.getHeader("Content-Encoding"));
+        assertEquals("{\"a\":1}", new String(response.getResponseBytes(), StandardCharsets.UTF_8));
+    }
+
+    public void test_compressed() throws IOException {
+        final MockletHttpServletResponseImpl response = createResponse();
+        final String body = "{\"content\":\"" + "compressible text ".repeat(200) + "\"}\n";
+        try (CompressingOutputStream out = new CompressingOutputStream(response, 100, 9)) {
+            out.write('{');
+            out.write(body.substring(1).getBytes(StandardCharsets.UTF_8));
+            assertTrue(out.isCompressing());
+            out.write(body.getBytes(StandardCharsets.UTF_8));
+        }
+        assertEquals("gzip", response.getHeader("Content-Encoding"));
+        assertTrue(response.getResponseBytes().length < body.length());
+        assertEquals(body + body, decompress(response.getResponseBytes()));
+    }
+
+    public void test_flush() throws IOException {
+        final MockletHttpServletResponseImpl response = createResponse();
+        final CompressingOutputStream out = new CompressingOutputStream(response, 0, 1);
+        out.write("{\"n\":1}\n".getBytes(StandardCharsets.UTF_8));
+        out.flush();
+        final int flushed = response.getResponseBytes().length;
+        assertTrue(flushed > 10);
+        out.close();
+        assertTrue(response.getResponseBytes().length > flushed);
+        assertEquals("{\"n\":1}\n", decompress(response.getResponseBytes()));
+    }
+
+    private static String decompress(final byte[] bytes) throws IOException {
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static MockletHttpServletResponseImpl createResponse() {
+        final MockletServletContextImpl servletContext = new MockletServletContextImpl("/fess");
+        final MockletHttpServletRequestImpl request = new MockletHttpServletRequestImpl(servletContext, "/json");
+        return new MockletHttpServletResponseImpl(request);
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.classic;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.codelibs.fess.api.WebApiManagerFactory;
+import org.codelibs.fess.mylasta.direction.FessConfig;
+import org.codelibs.fess.util.ComponentUtil;
+import org.codelibs.fess.webapp.classic_api.UnitWebappTestCase;
+import org.junit.jupiter.api.TestInfo;
+import org.opensearch.action.search.SearchAction;
+import org.opensearch.action.search.SearchRequestBuilder;
+import org.opensearch.search.sort.FieldSortBuilder;
+import org.opensearch.search.sort.ScoreSortBuilder;
+import org.opensearch.search.sort.SortBuilders;
+import org.opensearch.search.sort.SortOrder;
+
+public class CursorSearcherTest extends UnitWebappTestCase {
+
+    @Override
+    protected boolean isSuppressTestCaseTransaction() {
+        return true;
+    }
+
+    @Override
+    public void setUp(final TestInfo testInfo) throws Exception {
+        ComponentUtil.register(new WebApiManagerFactory(), "webApiManagerFactory");
+        super.setUp(testInfo);
+        ComponentUtil.setFessConfig(new FessConfig.SimpleImpl() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public String getIndexFieldDocId() {
+                return "doc_id";
+            }
+        });
+    }
+
+    public void test_encodeCursor() throws IOException {
+        final Object[] sortValues = { 1.5d, 1700000000000L, 3, "abcテ", true, null };
+        final String cursor = CursorSearcher.encodeCursor(sortValues);
+        assertTrue(cursor, cursor.matches("[A-Za-z0-9_-]+"));
+        assertEquals(Arrays.asList(1.5d, 1700000000000L, 3, "abcテ", true, null), Arrays.asList(CursorSearcher.decodeCursor(cursor)));
+    }
+
+    public void test_decodeCursor_invalid() {
+        for (final String cursor : new String[] { "", "!!!", "e30", "W10", "WzEs" }) {
+            try {
+                CursorSearcher.decodeCursor(cursor);
+                fail(cursor);
+            } catch (final IOException e) {
+                // expected
+            }
+        }
+    }
+
+    public void test_applyCursor() {
+        final CursorSearcher searcher = new CursorSearcher();
+        SearchRequestBuilder builder = new SearchRequestBuilder(null, SearchAction.INSTANCE).setFrom(40);
+        searcher.applyCursor(builder, null);
+        List<?> sorts = builder.request().source().sorts();
+        assertEquals(2, sorts.size());
+        assertTrue(sorts.get(0) instanceof ScoreSortBuilder);
+        assertEquals("doc_id", ((FieldSortBuilder) sorts.get(1)).getFieldName());
+        assertEquals(0, builder.request().source().from());
+        assertNull(builder.request().source().searchAfter());
+
+        builder = new SearchRequestBuilder(null, SearchAction.INSTANCE).addSort(SortBuilders.fieldSort("timestamp").order(SortOrder.DESC));
+        searcher.applyCursor(builder, new Object[] { 1700000000000L, "doc1" });
+        sorts = builder.request().source().sorts();
+        assertEquals(2, sorts.size());
+        assertEquals("timestamp", ((FieldSortBuilder) sorts.get(0)).getFieldName());
+        assertEquals("doc_id", ((FieldSortBuilder) sorts.get(1)).getFieldName());
+        assertEquals(Arrays.asList(1700000000000L, "doc1"), Arrays.asList(builder.request().source().searchAfter()));
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.classic;
+
+import java.util.Set;
+
+import org.codelibs.fess.api.WebApiManagerFactory;
+import org.codelibs.fess.util.ComponentUtil;
+import org.codelibs.fess.webapp.classic_api.UnitWebappTestCase;
+import org.junit.jupiter.api.TestInfo;
+
+public class DocIdSetCacheTest extends UnitWebappTestCase {
+
+    @Override
+    protected boolean isSuppressTestCaseTransaction() {
+        return true;
+    }
+
+    @Override
+    public void setUp(final TestInfo testInfo) throws Exception {
+        ComponentUtil.register(new WebApiManagerFactory(), "webApiManagerFactory");
+        super.setUp(testInfo);
+    }
+
+    public void test_get() {
+        final DocIdSetCache cache = new DocIdSetCache(2);
+        final String[] docIds1 = { "a", "b", "c" };
+        final Set<String> set1 = cache.get("q1", docIds1);
+        assertEquals(Set.of("a", "b", "c"), set1);
+        assertSame(set1, cache.get("q1", docIds1));
+        final String[] docIds1b = docIds1.clone();
+        final Set<String> set1b = cache.get("q1", docIds1b);
+        assertNotSame(set1, set1b);
+        assertEquals(set1, set1b);
+
+        final String[] docIds2 = { "d", "d" };
+        final Set<String> set2 = cache.get("q2", docIds2);
+        assertEquals(Set.of("d"), set2);
+        assertEquals(2, cache.size());
+        assertSame(set1b, cache.get("q1", docIds1b));
+        cache.get("q3", new String[0]);
+        assertEquals(2, cache.size());
+        assertSame(set1b, cache.get("q1", docIds1b));
+        assertNotSame(set2, cache.get("q2", docIds2));
+
+        try {
+            set1.add("x");
+            fail();
+        } catch (final UnsupportedOperationException e) {
+            // expected
+        }
+
+        cache.clear();
+        assertEquals(0, cache.size());
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.classic;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.codelibs.fess.api.WebApiManagerFactory;
+import org.codelibs.fess.mylasta.direction.FessConfig;
+import org.codelibs.fess.util.ComponentUtil;
+import org.codelibs.fess.webapp.classic_api.UnitWebappTestCase;
+import org.junit.jupiter.api.TestInfo;
+import org.opensearch.script.Script;
+import org.opensearch.script.ScriptType;
+
+public class FavoriteCountUpdaterTest extends UnitWebappTestCase {
+
+    private static final Script SCRIPT = new Script(ScriptType.INLINE, "painless", "ctx._source.favorite_count+=params.delta",
+            Collections.emptyMap());
+
+    private final Map<String, String> systemProperties = new HashMap<>();
+
+    @Override
+    protected boolean isSuppressTestCaseTransaction() {
+        return true;
+    }
+
+    @Override
+    public void setUp(final TestInfo testInfo) throws Exception {
+        ComponentUtil.register(new WebApiManagerFactory(), "webApiManagerFactory");
+        super.setUp(testInfo);
+        ComponentUtil.setFessConfig(new FessConfig.SimpleImpl() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public String getSystemProperty(final String key) {
+                return systemProperties.get(key);
+            }
+
+            @Override
+            public String getSystemProperty(final String key, final String defaultValue) {
+                return systemProperties.getOrDefault(key, defaultValue);
+            }
+        });
+        systemProperties.put("api.classic.favorite.write_behind.flush_interval", "3600000");
+    }
+
+    @Override
+    public void tearDown(final TestInfo testInfo) throws Exception {
+        ComponentUtil.setFessConfig(null);
+        super.tearDown(testInfo);
+    }
+
+    public void test_flush() {
+        final TestUpdater updater = new TestUpdater();
+        assertFalse(updater.isEnabled());
+        systemProperties.put("api.classic.favorite.write_behind.enabled", "true");
+        assertTrue(updater.isEnabled());
+
+        for (int i = 0; i < 3; i++) {
+            updater.increment("doc1", SCRIPT);
+        }
+        updater.increment("doc2", SCRIPT);
+        assertEquals(4L, updater.getPendingCount());
+        assertEquals(0, updater.batches.size());
+
+        assertEquals(2, updater.flush());
+        assertEquals(0L, updater.getPendingCount());
+        assertEquals(1, updater.batches.size());
+        assertEquals("{doc1=3, doc2=1}", updater.batches.get(0).toString());
+        assertEquals(0, updater.flush());
+
+        // the outcome of a failed bulk request is unknown, so it is not retried
+        updater.failure = true;
+        updater.increment("doc1", SCRIPT);
+        assertEquals(0, updater.flush());
+        assertEquals(0L, updater.getPendingCount());
+        updater.failure = false;
+        updater.increment("doc1", SCRIPT);
+
+        updater.destroy();
+        assertFalse(updater.isEnabled());
+        assertEquals(0L, updater.getPendingCount());
+        assertEquals(2, updater.batches.size());
+        assertEquals("{doc1=1}", updater.batches.get(1).toString());
+
+        updater.increment("doc3", SCRIPT);
+        assertEquals(0L, updater.getPendingCount());
+        assertEquals("{doc3=1}", updater.batches.get(2).toString());
+    }
+
+    public void test_flush_failedItems() {
+        final TestUpdater updater = new TestUpdater();
+        try {
+            updater.failedIds.add("doc1");
+            updater.increment("doc1", SCRIPT);
+            updater.increment("doc2", SCRIPT);
+            assertEquals(1, updater.flush());
+            assertEquals(1L, updater.getPendingCount());
+            assertSame(SCRIPT, updater.scripts.get("doc1"));
+
+            updater.increment("doc1", SCRIPT);
+            assertEquals(0, updater.flush());
+            assertEquals("{doc1=2}", updater.batches.get(1).toString());
+            assertEquals(2L, updater.getPendingCount());
+            // dropped after the maximum number of attempts
+            assertEquals(0, updater.flush());
+            assertEquals(0L, updater.getPendingCount());
+            assertEquals(3, updater.batches.size());
+        } finally {
+            updater.failedIds.clear();
+            updater.destroy();
+        }
+    }
+
+    public void test_batchSize() throws Exception {
+        systemProperties.put("api.classic.favorite.write_behind.batch_size", "3");
+        final CountDownLatch latch = new CountDownLatch(1);
+        final TestUpdater updater = new TestUpdater() {
+            @Override
+            protected Set<String> write(final Map<String, Update> updates) {
+                final Set<String> failed = super.write(updates);
+                latch.countDown();
+                return failed;
+            }
+        };
+        try {
+            updater.increment("doc1", SCRIPT);
+            updater.increment("doc2", SCRIPT);
+            assertEquals(0, updater.batches.size());
+            updater.increment("doc1", SCRIPT);
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+            assertEquals("{doc1=2, doc2=1}", updater.batches.get(0).toString());
+        } finally {
+            updater.destroy();
+        }
+    }
+
+    private static class TestUpdater extends FavoriteCountUpdater {
+        final List<Map<String, Long>> batches = new ArrayList<>();
+
+        final Map<String, Script> scripts = new HashMap<>();
+
+        final Set<String> failedIds = new HashSet<>();
+
+        volatile boolean failure;
+
+        @Override
+        protected Set<String> write(final Map<String, Update> updates) {
+            if (failure) {
+                throw new IllegalStateException("failure");
+            }
+            final Map<String, Long> batch = new TreeMap<>();
+            updates.forEach((id, update) -> {
+                batch.put(id, update.delta);
+                scripts.put(id, update.script);
+            });
+            synchronized (batches) {
+                batches.add(batch);
+            }
+            final Set<String> failed = new HashSet<>(failedIds);
+            failed.retainAll(updates.keySet());
+            return failed;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.classic;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.codelibs.fess.api.WebApiManagerFactory;
+import org.codelibs.fess.mylasta.direction.FessConfig;
+import org.codelibs.fess.util.ComponentUtil;
+import org.codelibs.fess.webapp.classic_api.UnitWebappTestCase;
+import org.junit.jupiter.api.TestInfo;
+
+public class FavoritesCacheTest extends UnitWebappTestCase {
+
+    private final Map<String, String> systemProperties = new HashMap<>();
+
+    @Override
+    protected boolean isSuppressTestCaseTransaction() {
+        return true;
+    }
+
+    @Override
+    public void setUp(final TestInfo testInfo) throws Exception {
+        ComponentUtil.register(new WebApiManagerFactory(), "webApiManagerFactory");
+        super.setUp(testInfo);
+        ComponentUtil.setFessConfig(new FessConfig.SimpleImpl() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public String getSystemProperty(final String key) {
+                return systemProperties.get(key);
+            }
+
+            @Override
+            public String getSystemProperty(final String key, final String defaultValue) {
+                return systemProperties.getOrDefault(key, defaultValue);
+            }
+        });
+    }
+
+    @Override
+    public void tearDown(final TestInfo testInfo) throws Exception {
+        ComponentUtil.setFessConfig(null);
+        super.tearDown(testInfo);
+    }
+
+    public void test_getUrlList() {
+        final FavoritesCache cache = new FavoritesCache();
+        assertFalse(cache.isEnabled());
+        systemProperties.put("api.classic.cache.favorites.enabled", "true");
+        assertTrue(cache.isEnabled());
+
+        cache.addUrl("user1", "http://a/");
+        assertEquals(0L, cache.size());
+
+        final FavoritesCache.UserFavorites favorites = cache.getUserFavorites("user1");
+        assertSame(favorites, cache.getUserFavorites("user1"));
+        final List<List<String>> lookups = new ArrayList<>();
+        assertEquals(List.of("http://b/"), favorites.getUrlList(List.of("http://a/", "http://b/", "http://c/"), list -> {
+            lookups.add(list);
+            return List.of("http://b/");
+        }));
+        assertEquals(List.of(List.of("http://a/", "http://b/", "http://c/")), lookups);
+
+        cache.addUrl("user1", "http://c/");
+        final List<String> urlList = List.of("http://b/", "http://c/", "http://d/");
+        assertEquals(urlList, favorites.getUrlList(urlList, list -> {
+            lookups.add(list);
+            return list;
+        }));
+        assertEquals(List.of(List.of("http://d/")), lookups.subList(1, lookups.size()));
+
+        assertEquals(List.of("http://b/"), favorites.getUrlList(List.of("http://a/", "http://b/"), list -> {
+            throw new IllegalStateException("not cached: " + list);
+        }));
+        assertEquals(1L, cache.size());
+    }
+
+    public void test_getDocList() {
+        final FavoritesCache.UserFavorites favorites = new FavoritesCache.UserFavorites();
+        final String[] docIds = { "a", "b" };
+        assertNull(favorites.getDocList("q1", docIds));
+
+        final List<Map<String, Object>> docList = List.of(Map.of("doc_id", "a"), Map.of("doc_id", "b"));
+        favorites.putDocList("q1", docIds, docList);
+        assertEquals(docList, favorites.getDocList("q1", docIds));
+        assertNull(favorites.getDocList("q1", docIds.clone()));
+        assertNull(favorites.getDocList("q2", docIds));
+
+        for (int i = 0; i < FavoritesCache.MAX_PAGES; i++) {
+            favorites.putDocList("p" + i, docIds, docList);
+        }
+        assertNull(favorites.getDocList("q1", docIds));
+        assertNotNull(favorites.getDocList("p0", docIds));
+    }
+}
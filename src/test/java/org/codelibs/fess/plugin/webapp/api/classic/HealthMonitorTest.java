@@ -0,0 +1,128 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.classic;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.codelibs.fess.api.WebApiManagerFactory;
+import org.codelibs.fess.entity.PingResponse;
+import org.codelibs.fess.mylasta.direction.FessConfig;
+import org.codelibs.fess.util.ComponentUtil;
+import org.codelibs.fess.webapp.classic_api.UnitWebappTestCase;
+import org.junit.jupiter.api.TestInfo;
+
+public class HealthMonitorTest extends UnitWebappTestCase {
+
+    private final Map<String, String> systemProperties = new HashMap<>();
+
+    @Override
+    protected boolean isSuppressTestCaseTransaction() {
+        return true;
+    }
+
+    @Override
+    public void setUp(final TestInfo testInfo) throws Exception {
+        ComponentUtil.register(new WebApiManagerFactory(), "webApiManagerFactory");
+        super.setUp(testInfo);
+        ComponentUtil.setFessConfig(new FessConfig.SimpleImpl() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public String getSystemProperty(final String key) {
+                return systemProperties.get(key);
+            }
+
+            @Override
+            public String getSystemProperty(final String key, final String defaultValue) {
+                return systemProperties.getOrDefault(key, defaultValue);
+            }
+        });
+    }
+
+    @Override
+    public void tearDown(final TestInfo testInfo) throws Exception {
+        ComponentUtil.setFessConfig(null);
+        super.tearDown(testInfo);
+    }
+
+    public void test_Snapshot() throws IOException {
+        final long checkedAt = 1700000000123L;
+        final HealthMonitor.Snapshot snapshot = new HealthMonitor.Snapshot(0, "{\"cluster_name\":\"fess\"}", null, checkedAt, 2_500_000L);
+        final StringBuilder date = new StringBuilder();
+        IsoDateEncoder.write(checkedAt, ZoneId.systemDefault(), date);
+        assertEquals("\"message\":{\"cluster_name\":\"fess\"},\"checked_at\":" + date + ",\"latency\":2",
+                new String(snapshot.getBody(), StandardCharsets.UTF_8));
+        assertEquals(0, snapshot.getStatus());
+        assertNull(snapshot.getError());
+
+        assertEquals("\"checked_at\":" + date + ",\"latency\":2", new String(snapshot.getCheckFields(), StandardCharsets.UTF_8));
+        assertNull(snapshot.getErrorMessage(t -> {
+            throw new AssertionError(t);
+        }));
+
+        final HealthMonitor.Snapshot failure = new HealthMonitor.Snapshot(9, null, new IllegalStateException(), checkedAt, 0L);
+        assertNull(failure.getBody());
+        assertNotNull(failure.getError());
+        assertEquals("\"checked_at\":" + date + ",\"latency\":0", new String(failure.getCheckFields(), StandardCharsets.UTF_8));
+        final AtomicInteger created = new AtomicInteger();
+        assertEquals("E1", failure.getErrorMessage(t -> "E" + created.incrementAndGet()));
+        assertEquals("E1", failure.getErrorMessage(t -> "E" + created.incrementAndGet()));
+        assertEquals(1, created.get());
+    }
+
+    public void test_getSnapshot() throws Exception {
+        systemProperties.put("api.classic.ping.snapshot.refresh_interval", "10");
+        final AtomicInteger pings = new AtomicInteger();
+        final CountDownLatch latch = new CountDownLatch(3);
+        final HealthMonitor monitor = new HealthMonitor() {
+            @Override
+            protected PingResponse ping() {
+                pings.incrementAndGet();
+                latch.countDown();
+                throw new IllegalStateException("unavailable");
+            }
+        };
+        try {
+            assertFalse(monitor.isEnabled());
+            systemProperties.put("api.classic.ping.snapshot.enabled", "true");
+            assertTrue(monitor.isEnabled());
+
+            final HealthMonitor.Snapshot snapshot = monitor.getSnapshot();
+            assertEquals(9, snapshot.getStatus());
+            assertEquals("unavailable", snapshot.getError().getMessage());
+            assertTrue(pings.get() >= 1);
+            assertFalse(monitor.isStale(snapshot));
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+
+            systemProperties.put("api.classic.ping.snapshot.max_staleness", "0");
+            assertTrue(monitor.isStale(new HealthMonitor.Snapshot(0, "{}", null, System.currentTimeMillis() - 10, 0L)));
+        } finally {
+            monitor.destroy();
+        }
+        assertFalse(monitor.isEnabled());
+        Thread.sleep(20L);
+        final int count = pings.get();
+        Thread.sleep(50L);
+        assertEquals(count, pings.get());
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.classic;
+
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+
+import org.codelibs.core.CoreLibConstants;
+import org.codelibs.fess.webapp.classic_api.UnitWebappTestCase;
+
+public class IsoDateEncoderTest extends UnitWebappTestCase {
+
+    private static final String[] ZONE_IDS = { "UTC", "Asia/Tokyo", "America/New_York", "America/St_Johns", "Asia/Kolkata",
+            "Australia/Lord_Howe", "Pacific/Chatham", "Europe/London", "GMT-03:30" };
+
+    @Override
+    protected boolean isSuppressTestCaseTransaction() {
+        return true;
+    }
+
+    public void test_write_random() throws IOException {
+        final Random random = new Random(1L);
+        final long min = -2208988800000L; // 1900-01-01T00:00:00Z
+        final long max = 253402300799999L; // 9999-12-31T23:59:59.999Z
+        for (final String zoneId : ZONE_IDS) {
+            for (int i = 0; i < 10000; i++) {
+                assertWrite(min + Math.floorMod(random.nextLong(), max - min), zoneId);
+            }
+        }
+    }
+
+    public void test_write_boundaries() throws IOException {
+        final long[] times = { 0L, -1L, 1L, 999L, -2208988800000L, 253402300799999L, 951782400000L, 951868799999L, 1710054000000L,
+                1710050400000L, 1730613600000L, 1730617200000L };
+        for (final String zoneId : ZONE_IDS) {
+            for (final long time : times) {
+                assertWrite(time, zoneId);
+                assertWrite(time - 1, zoneId);
+            }
+        }
+    }
+
+    public void test_write_outOfRange() throws IOException {
+        final long[] times = { -62135596800000L, -12219292800000L, -30000000000000L, 253402300800000L, 400000000000000L };
+        for (final String zoneId : ZONE_IDS) {
+            for (final long time : times) {
+                assertWrite(time, zoneId);
+            }
+        }
+    }
+
+    public void test_encode_defaultTimeZone() throws IOException {
+        final TimeZone defaultTimeZone = TimeZone.getDefault();
+        try {
+            for (final String zoneId : ZONE_IDS) {
+                TimeZone.setDefault(TimeZone.getTimeZone(zoneId));
+                final Date date = new Date(1700000000123L);
+                final SimpleDateFormat sdf = new SimpleDateFormat(CoreLibConstants.DATE_FORMAT_ISO_8601_EXTEND, Locale.ROOT);
+                final StringBuilder buf = new StringBuilder();
+                new JsonEncoder().encode(date, buf);
+                assertEquals("\"" + sdf.format(date) + "\"", buf.toString());
+            }
+        } finally {
+            TimeZone.setDefault(defaultTimeZone);
+        }
+    }
+
+    private void assertWrite(final long time, final String zoneId) throws IOException {
+        final TimeZone timeZone = TimeZone.getTimeZone(zoneId);
+        final SimpleDateFormat sdf = new SimpleDateFormat(CoreLibConstants.DATE_FORMAT_ISO_8601_EXTEND, Locale.ROOT);
+        sdf.setTimeZone(timeZone);
+        final StringBuilder buf = new StringBuilder();
+        IsoDateEncoder.write(time, ZoneId.of(zoneId), buf);
+        assertEquals(zoneId + ":" + time, "\"" + sdf.format(new Date(time)) + "\"", buf.toString());
+    }
+}
@@ -17,24 +17,54 @@ package org.codelibs.fess.plugin.webapp.api.classic;
 
 import org.junit.jupiter.api.TestInfo;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.Cookie;
 import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
 
 import org.codelibs.fess.api.WebApiManagerFactory;
 import org.codelibs.fess.entity.SearchRequestParams.SearchRequestType;
+import org.codelibs.fess.helper.RoleQueryHelper;
+import org.codelibs.fess.helper.UserInfoHelper;
+import org.codelibs.fess.helper.VirtualHostHelper;
 import org.codelibs.fess.mylasta.direction.FessConfig;
+import org.codelibs.fess.query.QueryFieldConfig;
 import org.codelibs.fess.util.ComponentUtil;
 import org.codelibs.fess.webapp.classic_api.UnitWebappTestCase;
 import org.dbflute.utflute.mocklet.MockletHttpServletRequestImpl;
+import org.dbflute.utflute.mocklet.MockletHttpServletResponseImpl;
 import org.dbflute.utflute.mocklet.MockletServletContextImpl;
+import org.lastaflute.web.util.LaRequestUtil;
+import org.lastaflute.web.util.LaResponseUtil;
 
 public class JsonApiManagerTest extends UnitWebappTestCase {
 
     private WebApiManagerFactory webApiManagerFactory;
 
+    private final Map<String, String> systemProperties = new HashMap<>();
+
     @Override
     protected String prepareConfigFile() {
         return "test_app.xml";
@@ -64,6 +94,81 @@ public class JsonApiManagerTest extends UnitWebappTestCase {
             public Integer getPagingSearchPageMaxSizeAsInteger() {
                 return 100;
             }
+
+            @Override
+            public String getIndexFieldId() {
+                return "_id";
+            }
+
+            @Override
+            public String getIndexFieldDocId() {
+                return "doc_id";
+            }
+
+            @Override
+            public String getIndexFieldTitle() {
+                return "title";
+            }
+
+            @Override
+            public String getIndexFieldFilename() {
+                return "filename";
+            }
+
+            @Override
+            public String getIndexFieldUrl() {
+                return "url";
+            }
+
+            @Override
+            public String getIndexFieldDigest() {
+                return "digest";
+            }
+
+            @Override
+            public String getIndexFieldConfigId() {
+                return "config_id";
+            }
+
+            @Override
+            public String getResponseFieldContentTitle() {
+                return "content_title";
+            }
+
+            @Override
+            public String getResponseFieldContentDescription() {
+                return "content_description";
+            }
+
+            @Override
+            public String getResponseFieldUrlLink() {
+                return "url_link";
+            }
+
+            @Override
+            public String getResponseFieldSitePath() {
+                return "site_path";
+            }
+
+            @Override
+            public boolean isUserFavorite() {
+                return true;
+            }
+
+            @Override
+            public boolean isAcceptedSearchReferer(final String referer) {
+                return true;
+            }
+
+            @Override
+            public String getSystemProperty(final String key) {
+                return systemProperties.get(key);
+            }
+
+            @Override
+            public String getSystemProperty(final String key, final String defaultValue) {
+                return systemProperties.getOrDefault(key, defaultValue);
+            }
         });
         webApiManagerFactory = new WebApiManagerFactory();
         ComponentUtil.register(webApiManagerFactory, "webApiManagerFactory");
@@ -81,6 +186,196 @@ public class JsonApiManagerTest extends UnitWebappTestCase {
         assertEquals("/json", jsonApiManager.getPathPrefix());
     }
 
+    public void test_apiMetrics_shared() {
+        JsonApiManager jsonApiManager = getComponent("jsonApiManager");
+        SuggestApiManager suggestApiManager = getComponent("suggestApiManager");
+        assertSame(jsonApiManager.getApiMetrics(), suggestApiManager.getApiMetrics());
+    }
+
+    public void test_getMetricsSample() {
+        JsonApiManager jsonApiManager = new JsonApiManager();
+        MockletServletContextImpl servletContext = new MockletServletContextImpl("/fess");
+        MockletHttpServletRequestImpl request = new MockletHttpServletRequestImpl(servletContext, "/json");
+        assertSame(ApiMetrics.Sample.NONE, jsonApiManager.getMetricsSample(request));
+
+        ApiMetrics.Sample sample = jsonApiManager.startMetricsSample(request, "search");
+        assertSame(sample, jsonApiManager.getMetricsSample(request));
+        sample.end();
+        assertEquals(1L, jsonApiManager.getApiMetrics().getEndpoint("search").getRequestCount());
+    }
+
+    public void test_submit_bindsRequest() throws Exception {
+        JsonApiManager jsonApiManager = new JsonApiManager();
+        try {
+            MockletServletContextImpl servletContext = new MockletServletContextImpl("/fess");
+            MockletHttpServletRequestImpl request = new MockletHttpServletRequestImpl(servletContext, "/json");
+            Future<HttpServletRequest> future = jsonApiManager.submit(request, () -> LaRequestUtil.getOptionalRequest().orElse(null));
+            assertSame(request, future.get(10, TimeUnit.SECONDS));
+        } finally {
+            jsonApiManager.destroy();
+        }
+    }
+
+    public void test_getRelatedResult() {
+        JsonApiManager jsonApiManager = new JsonApiManager();
+        try {
+            String[] result = jsonApiManager.getRelatedResult(CompletableFuture.completedFuture(new String[] { "a", "b" }),
+                    System.nanoTime(), "related queries");
+            assertEquals(2, result.length);
+            assertEquals("a", result[0]);
+
+            result = jsonApiManager.getRelatedResult(CompletableFuture.failedFuture(new IllegalStateException("test")),
+                    System.nanoTime() + TimeUnit.SECONDS.toNanos(10), "related contents");
+            assertEquals(0, result.length);
+        } finally {
+            jsonApiManager.destroy();
+        }
+    }
+
+    public void test_getRelatedResult_timeout() {
+        JsonApiManager jsonApiManager = new JsonApiManager();
+        try {
+            Future<String[]> future = jsonApiManager.submit(null, () -> {
+                Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+                return new String[] { "slow" };
+            });
+            long start = System.nanoTime();
+            String[] result = jsonApiManager.getRelatedResult(future, start + TimeUnit.MILLISECONDS.toNanos(50), "related contents");
+            assertEquals(0, result.length);
+            assertTrue(future.isCancelled());
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(10));
+        } finally {
+            jsonApiManager.destroy();
+        }
+    }
+
+    public void test_createSearchCacheKey() throws Exception {
+        final Set<String> roles = new HashSet<>(Set.of("Rguest", "Gusers"));
+        final String[] virtualHostKey = { "" };
+        ComponentUtil.register(new RoleQueryHelper() {
+            @Override
+            public Set<String> build(final SearchRequestType searchRequestType) {
+                return roles;
+            }
+        }, "roleQueryHelper");
+        ComponentUtil.register(new VirtualHostHelper() {
+            @Override
+            public String getVirtualHostKey() {
+                return virtualHostKey[0];
+            }
+        }, "virtualHostHelper");
+
+        JsonApiManager jsonApiManager = new JsonApiManager();
+        try {
+            MockletServletContextImpl servletContext = new MockletServletContextImpl("/fess");
+            MockletHttpServletRequestImpl request1 = new MockletHttpServletRequestImpl(servletContext, "/json");
+            request1.addParameter("type", "search");
+            request1.addParameter("q", "fess");
+            request1.addParameter("fields.label", "doc");
+            request1.addParameter("callback", "cb1");
+            MockletHttpServletRequestImpl request2 = new MockletHttpServletRequestImpl(servletContext, "/json");
+            request2.addParameter("fields.label", "doc");
+            request2.addParameter("q", "fess");
+            request2.addParameter("start", "0");
+            request2.addParameter("_", "1700000000000");
+            String key1 = createSearchCacheKey(jsonApiManager, request1);
+            assertEquals(key1, createSearchCacheKey(jsonApiManager, request2));
+            assertTrue(key1, key1.contains("\"Gusers\",\"Rguest\""));
+
+            roles.add("Radmin");
+            assertFalse(key1.equals(createSearchCacheKey(jsonApiManager, request1)));
+            roles.remove("Radmin");
+
+            virtualHostKey[0] = "site1";
+            assertFalse(key1.equals(createSearchCacheKey(jsonApiManager, request1)));
+            virtualHostKey[0] = "";
+
+            request2.addParameter("num", "50");
+            assertFalse(key1.equals(createSearchCacheKey(jsonApiManager, request2)));
+            request1.addParameter("q", "search");
+            assertFalse(key1.equals(createSearchCacheKey(jsonApiManager, request1)));
+        } finally {
+            jsonApiManager.destroy();
+        }
+    }
+
+    public void test_storeQueryId() {
+        final Map<String, List<Map<String, Object>>> stored = new HashMap<>();
+        ComponentUtil.register(new UserInfoHelper() {
+            @Override
+            public void storeQueryId(final String queryId, final List<Map<String, Object>> documentItems) {
+                stored.put(queryId, documentItems);
+            }
+        }, "userInfoHelper");
+
+        JsonApiManager jsonApiManager = new JsonApiManager();
+        try {
+            jsonApiManager.storeQueryId(new ResponseCache.Entry(new byte[0], "q1", new String[] { "d1", "d2" }));
+            assertEquals(List.of(Map.of("doc_id", "d1"), Map.of("doc_id", "d2")), stored.get("q1"));
+
+            jsonApiManager.storeQueryId(new ResponseCache.Entry(new byte[0]));
+            jsonApiManager.storeQueryId(new ResponseCache.Entry(new byte[0], "q2", new String[0]));
+            assertEquals(1, stored.size());
+        } finally {
+            jsonApiManager.destroy();
+        }
+    }
+
+    public void test_searchShared_storesQueryIdOfJoiningRequest() throws Exception {
+        final Map<String, List<Map<String, Object>>> stored = new HashMap<>();
+        ComponentUtil.register(new UserInfoHelper() {
+            @Override
+            public void storeQueryId(final String queryId, final List<Map<String, Object>> documentItems) {
+                stored.put(queryId, documentItems);
+            }
+        }, "userInfoHelper");
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch joined = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        JsonApiManager jsonApiManager = new JsonApiManager() {
+            @Override
+            protected ResponseCache.Entry searchAsEntry(final HttpServletRequest request, final JsonRequestParams params,
+                    final String cacheKey) throws Exception {
+                started.countDown();
+                release.await();
+                return new ResponseCache.Entry(new byte[0], "q1", new String[] { "d1" });
+            }
+        };
+        try {
+            final CompletableFuture<ResponseCache.Entry> leader = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return jsonApiManager.searchShared(null, null, "key", null, null);
+                } catch (final Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            assertTrue(stored.isEmpty());
+            final CompletableFuture<ResponseCache.Entry> follower = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return jsonApiManager.searchShared(null, null, "key", null, joined::countDown);
+                } catch (final Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            assertTrue(joined.await(10, TimeUnit.SECONDS));
+            release.countDown();
+
+            assertEquals("q1", leader.get(10, TimeUnit.SECONDS).getQueryId());
+            assertEquals("q1", follower.get(10, TimeUnit.SECONDS).getQueryId());
+            assertEquals(List.of(Map.of("doc_id", "d1")), stored.get("q1"));
+        } finally {
+            release.countDown();
+            jsonApiManager.destroy();
+        }
+    }
+
+    private String createSearchCacheKey(JsonApiManager jsonApiManager, HttpServletRequest request) throws Exception {
+        FessConfig fessConfig = ComponentUtil.getFessConfig();
+        return jsonApiManager.createSearchCacheKey(request, new JsonApiManager.JsonRequestParams(request, fessConfig));
+    }
+
     public void test_JsonRequestParams_construction() {
         MockletServletContextImpl servletContext = new MockletServletContextImpl("/fess");
         MockletHttpServletRequestImpl request = new MockletHttpServletRequestImpl(servletContext, "/json");
@@ -342,6 +637,232 @@ public class JsonApiManagerTest extends UnitWebappTestCase {
         assertEquals(100, params.getPageSize()); // Should fall back to max
     }
 
+    public void test_ScrollRequestParams_pageSize() {
+        MockletServletContextImpl servletContext = new MockletServletContextImpl("/fess");
+        MockletHttpServletRequestImpl request = new MockletHttpServletRequestImpl(servletContext, "/json");
+        FessConfig fessConfig = ComponentUtil.getFessConfig();
+        assertEquals(100, new JsonApiManager.ScrollRequestParams(request, fessConfig).getPageSize());
+
+        request.setParameter("num", "500");
+        assertEquals(500, new JsonApiManager.ScrollRequestParams(request, fessConfig).getPageSize());
+        request.setParameter("num", "5000");
+        assertEquals(1000, new JsonApiManager.ScrollRequestParams(request, fessConfig).getPageSize());
+        request.setParameter("num", "abc");
+        assertEquals(100, new JsonApiManager.ScrollRequestParams(request, fessConfig).getPageSize());
+
+        systemProperties.put("api.classic.scroll.page_size", "200");
+        systemProperties.put("api.classic.scroll.max_page_size", "300");
+        request.setParameter("num", "0");
+        assertEquals(200, new JsonApiManager.ScrollRequestParams(request, fessConfig).getPageSize());
+        request.setParameter("num", "500");
+        assertEquals(300, new JsonApiManager.ScrollRequestParams(request, fessConfig).getPageSize());
+    }
+
+    public void test_parseMultiSearchBody() throws Exception {
+        JsonApiManager jsonApiManager = new JsonApiManager();
+        try {
+            String body = "[{\"q\":\"fess\",\"num\":5,\"fields.label\":[\"a\",\"b\"],\"lang\":null},{\"q\":\"search\",\"sdh\":true}]";
+            List<Map<String, String[]>> entries =
+                    jsonApiManager.parseMultiSearchBody(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)));
+            assertEquals(2, entries.size());
+            assertEquals(3, entries.get(0).size());
+            assertEquals(List.of("fess"), Arrays.asList(entries.get(0).get("q")));
+            assertEquals(List.of("5"), Arrays.asList(entries.get(0).get("num")));
+            assertEquals(List.of("a", "b"), Arrays.asList(entries.get(0).get("fields.label")));
+            assertEquals(List.of("true"), Arrays.asList(entries.get(1).get("sdh")));
+
+            assertEquals(0, jsonApiManager.parseMultiSearchBody(new ByteArrayInputStream("[]".getBytes(StandardCharsets.UTF_8))).size());
+        } finally {
+            jsonApiManager.destroy();
+        }
+    }
+
+    public void test_parseMultiSearchBody_invalid() {
+        JsonApiManager jsonApiManager = new JsonApiManager();
+        try {
+            String[] bodies = { "", "{\"q\":\"fess\"}", "[\"fess\"]", "[{\"q\":{\"a\":1}}]", "[{\"q\":[[1]]}]", "[{\"q\":\"fess\"}" };
+            for (String body : bodies) {
+                try {
+                    jsonApiManager.parseMultiSearchBody(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)));
+                    fail(body);
+                } catch (IOException e) {
+                    // expected
+                }
+            }
+        } finally {
+            jsonApiManager.destroy();
+        }
+    }
+
+    public void test_MultiSearchEntryRequest() {
+        MockletServletContextImpl servletContext = new MockletServletContextImpl("/fess");
+        MockletHttpServletRequestImpl request = new MockletHttpServletRequestImpl(servletContext, "/json");
+        request.addParameter("type", "msearch");
+        request.setAttribute("shared", "value");
+        request.setAttribute("removed", "value");
+
+        Map<String, String[]> params = new LinkedHashMap<>();
+        params.put("q", new String[] { "fess" });
+        params.put("fields.label", new String[] { "a", "b" });
+        JsonApiManager.MultiSearchEntryRequest entryRequest = new JsonApiManager.MultiSearchEntryRequest(request, params);
+        assertEquals("fess", entryRequest.getParameter("q"));
+        assertNull(entryRequest.getParameter("type"));
+        assertEquals(List.of("a", "b"), Arrays.asList(entryRequest.getParameterValues("fields.label")));
+        assertEquals(List.of("q", "fields.label"), Collections.list(entryRequest.getParameterNames()));
+        assertEquals(2, entryRequest.getParameterMap().size());
+
+        entryRequest.setAttribute("local", "entry");
+        entryRequest.setAttribute("shared", "entry");
+        entryRequest.removeAttribute("removed");
+        assertEquals("entry", entryRequest.getAttribute("local"));
+        assertEquals("entry", entryRequest.getAttribute("shared"));
+        assertNull(entryRequest.getAttribute("removed"));
+        assertTrue(Collections.list(entryRequest.getAttributeNames()).contains("local"));
+        assertFalse(Collections.list(entryRequest.getAttributeNames()).contains("removed"));
+        assertNull(request.getAttribute("local"));
+        assertEquals("value", request.getAttribute("shared"));
+        assertEquals("value", request.getAttribute("removed"));
+    }
+
+    public void test_processMultiSearchRequest_entryTouchesResponse() throws Exception {
+        final Set<Thread> userCodeThreads = ConcurrentHashMap.newKeySet();
+        ComponentUtil.register(new UserInfoHelper() {
+            @Override
+            public String getUserCode() {
+                userCodeThreads.add(Thread.currentThread());
+                return "u1";
+            }
+        }, "userInfoHelper");
+        systemProperties.put("api.classic.msearch.concurrency", "1");
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final List<String> statuses = Collections.synchronizedList(new ArrayList<>());
+        final List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+
+        JsonApiManager jsonApiManager = new JsonApiManager() {
+            @Override
+            protected byte[] searchBatchEntry(final HttpServletRequest request) throws Exception {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    final HttpServletResponse current = LaResponseUtil.getResponse();
+                    current.addCookie(new Cookie("fsid", "worker"));
+                    current.setHeader("X-Entry", request.getParameter("q"));
+                    current.getWriter().write("worker");
+                    Thread.sleep(10);
+                    return ("\"q\":\"" + request.getParameter("q") + "\"").getBytes(StandardCharsets.UTF_8);
+                } finally {
+                    running.decrementAndGet();
+                }
+            }
+
+            @Override
+            protected String createErrorMessage(final Throwable t) {
+                errors.add(t);
+                return super.createErrorMessage(t);
+            }
+
+            @Override
+            protected void writeJsonResponse(final int status, final ResponseBody body) {
+                statuses.add(String.valueOf(status));
+            }
+        };
+        try {
+            MockletServletContextImpl servletContext = new MockletServletContextImpl("/fess");
+            MockletHttpServletRequestImpl mockRequest = new MockletHttpServletRequestImpl(servletContext, "/json");
+            byte[] body = "[{\"q\":\"a\"},{\"q\":\"b\"},{\"q\":\"c\"}]".getBytes(StandardCharsets.UTF_8);
+            HttpServletRequest request = new HttpServletRequestWrapper(mockRequest) {
+                @Override
+                public String getMethod() {
+                    return "POST";
+                }
+
+                @Override
+                public ServletInputStream getInputStream() {
+                    final ByteArrayInputStream in = new ByteArrayInputStream(body);
+                    return new ServletInputStream() {
+                        @Override
+                        public int read() {
+                            return in.read();
+                        }
+
+                        @Override
+                        public boolean isFinished() {
+                            return in.available() == 0;
+                        }
+
+                        @Override
+                        public boolean isReady() {
+                            return true;
+                        }
+
+                        @Override
+                        public void setReadListener(final ReadListener readListener) {
+                            throw new IllegalStateException();
+                        }
+                    };
+                }
+            };
+            MockletHttpServletResponseImpl response = new MockletHttpServletResponseImpl(mockRequest);
+
+            jsonApiManager.processMultiSearchRequest(request, response, null);
+            assertEquals(List.of("0"), statuses);
+            assertTrue(errors.isEmpty());
+            assertEquals(Set.of(Thread.currentThread()), userCodeThreads);
+            assertEquals(1, maxRunning.get());
+            assertNull(response.getHeader("X-Entry"));
+        } finally {
+            jsonApiManager.destroy();
+        }
+    }
+
+    public void test_decodeSearchAfter() throws Exception {
+        JsonApiManager jsonApiManager = new JsonApiManager();
+        try {
+            assertNull(jsonApiManager.decodeSearchAfter(""));
+            assertNull(jsonApiManager.decodeSearchAfter("*"));
+            String cursor = CursorSearcher.encodeCursor(new Object[] { 2.0d, "doc1" });
+            assertEquals(List.of(2.0d, "doc1"), Arrays.asList(jsonApiManager.decodeSearchAfter(cursor)));
+            try {
+                jsonApiManager.decodeSearchAfter("invalid");
+                fail();
+            } catch (IOException e) {
+                // expected
+            }
+        } finally {
+            jsonApiManager.destroy();
+        }
+    }
+
+    public void test_JsonRequestParams_responseFields() {
+        QueryFieldConfig queryFieldConfig = new QueryFieldConfig();
+        queryFieldConfig.setApiResponseFields(new String[] { "title", "url", "content_title", "content_description", "url_link", "score" });
+        queryFieldConfig.setResponseFields(new String[] { "_id", "doc_id", "title", "url", "filename", "digest", "content", "config_id" });
+        ComponentUtil.register(queryFieldConfig, "queryFieldConfig");
+
+        MockletServletContextImpl servletContext = new MockletServletContextImpl("/fess");
+        MockletHttpServletRequestImpl request = new MockletHttpServletRequestImpl(servletContext, "/json");
+        FessConfig fessConfig = ComponentUtil.getFessConfig();
+        JsonApiManager.JsonRequestParams params = new JsonApiManager.JsonRequestParams(request, fessConfig);
+        assertNull(params.getResponseFieldSet());
+        assertEquals(8, params.getResponseFields().length);
+
+        request.addParameter("fl", "score, url content");
+        request.addParameter("fl", "title,url");
+        params = new JsonApiManager.JsonRequestParams(request, fessConfig);
+        assertEquals(List.of("score", "url", "title"), List.copyOf(params.getResponseFieldSet()));
+        assertEquals(List.of("_id", "doc_id", "title", "url"), Arrays.asList(params.getResponseFields()));
+
+        request.setParameter("fl", "content_description,url_link");
+        params = new JsonApiManager.JsonRequestParams(request, fessConfig);
+        assertEquals(List.of("content_description", "url_link"), List.copyOf(params.getResponseFieldSet()));
+        assertEquals(List.of("_id", "doc_id", "url", "digest", "config_id"), Arrays.asList(params.getResponseFields()));
+
+        request.setParameter("fl", "content");
+        params = new JsonApiManager.JsonRequestParams(request, fessConfig);
+        assertTrue(params.getResponseFieldSet().isEmpty());
+        assertEquals(List.of("_id", "doc_id"), Arrays.asList(params.getResponseFields()));
+    }
+
     public void test_JsonRequestParams_startPosition_invalid() {
         MockletServletContextImpl servletContext = new MockletServletContextImpl("/fess");
         MockletHttpServletRequestImpl request = new MockletHttpServletRequestImpl(servletContext, "/json");
@@ -353,6 +874,16 @@ public class JsonApiManagerTest extends UnitWebappTestCase {
         assertEquals(0, params.getStartPosition()); // Should fall back to default
     }
 
+    public void test_getFavoriteDocIds() {
+        final JsonApiManager manager = new JsonApiManager();
+        final FessConfig fessConfig = ComponentUtil.getFessConfig();
+        final List<Map<String, Object>> docList = List.of(Map.of("url", "http://a/", "doc_id", "a"),
+                Map.of("url", "http://b/", "doc_id", "b"), Map.of("doc_id", "c"), Map.of("url", "http://d/"),
+                Map.of("url", "http://e/", "doc_id", "e"));
+        assertEquals(List.of("a", "e"), manager.getFavoriteDocIds(fessConfig, docList, List.of("http://e/", "http://a/", "http://d/")));
+        assertTrue(manager.getFavoriteDocIds(fessConfig, docList, List.of()).isEmpty());
+    }
+
     // Test helper class to expose protected methods
     public static class TestableJsonApiManager extends JsonApiManager {
         public String testDetailedMessage(Throwable t) {
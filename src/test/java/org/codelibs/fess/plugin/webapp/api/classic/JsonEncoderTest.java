@@ -0,0 +1,144 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.classic;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.commons.text.StringEscapeUtils;
+import org.codelibs.fess.webapp.classic_api.UnitWebappTestCase;
+
+public class JsonEncoderTest extends UnitWebappTestCase {
+
+    private JsonEncoder encoder;
+
+    @Override
+    protected boolean isSuppressTestCaseTransaction() {
+        return true;
+    }
+
+    @Override
+    public void setUp(final org.junit.jupiter.api.TestInfo testInfo) throws Exception {
+        super.setUp(testInfo);
+        encoder = new JsonEncoder();
+    }
+
+    public void test_writeString_allBmpCharacters() throws IOException {
+        final StringBuilder text = new StringBuilder();
+        for (int c = 0; c <= 0xffff; c++) {
+            text.append((char) c);
+        }
+        assertWriteString(text.toString());
+    }
+
+    public void test_writeString_random() throws IOException {
+        final Random random = new Random(1L);
+        for (int i = 0; i < 1000; i++) {
+            final char[] chars = new char[random.nextInt(50)];
+            for (int j = 0; j < chars.length; j++) {
+                chars[j] = random.nextBoolean() ? (char) random.nextInt(128) : (char) random.nextInt(0x10000);
+            }
+            assertWriteString(new String(chars));
+        }
+        assertWriteString("emoji:😀 </script> \"q\" \\ \u007f");
+        assertWriteString("");
+    }
+
+    public void test_encode_scalars() throws IOException {
+        assertEquals("null", encode(null));
+        assertEquals("42", encode(42));
+        assertEquals("-123456789012", encode(-123456789012L));
+        assertEquals("3.14", encode(3.14f));
+        assertEquals("2.71828", encode(2.71828));
+        assertEquals("true", encode(true));
+        assertEquals("\"1.5\"", encode(new BigDecimal("1.5")));
+        assertEquals("\"x\"", encode(new StringBuilder("x")));
+    }
+
+    public void test_encode_arrays() throws IOException {
+        assertEquals("[\"a\",null,\"c\"]", encode(new String[] { "a", null, "c" }));
+        assertEquals("[1,\"b\"]", encode(new Object[] { 1, "b" }));
+        assertEquals("[1,-2,3]", encode(new long[] { 1, -2, 3 }));
+        assertEquals("[]", encode(new int[0]));
+        assertEquals("[[1,2],[]]", encode(new int[][] { { 1, 2 }, {} }));
+    }
+
+    public void test_encode_collections() throws IOException {
+        assertEquals("[\"a\",\"b\"]", encode(Arrays.asList("a", "b")));
+        assertEquals("[\"a\",\"b\"]", encode(new LinkedList<>(Arrays.asList("a", "b"))));
+        assertEquals("[\"x\",\"y\"]", encode(new LinkedHashSet<>(Arrays.asList("x", "y"))));
+    }
+
+    public void test_encode_nested() throws IOException {
+        final Map<Object, Object> inner = new LinkedHashMap<>();
+        inner.put("n", 1);
+        inner.put("list", Arrays.asList("a", Arrays.asList(true, null), new String[] { "b" }));
+        final Map<Object, Object> outer = new LinkedHashMap<>();
+        outer.put("inner", inner);
+        outer.put(null, "k");
+        outer.put("empty", new LinkedHashMap<>());
+        outer.put("last", "z");
+        assertEquals("{\"inner\":{\"n\":1,\"list\":[\"a\",[true,null],[\"b\"]]},null:\"k\",\"empty\":{},\"last\":\"z\"}", encode(outer));
+    }
+
+    public void test_encode_deeplyNested() throws IOException {
+        List<Object> list = new ArrayList<>();
+        final List<Object> root = list;
+        for (int i = 0; i < 100000; i++) {
+            final List<Object> child = new ArrayList<>();
+            list.add(child);
+            list = child;
+        }
+        final String result = encode(root);
+        assertEquals(200002, result.length());
+        assertTrue(result.startsWith("[[[") && result.endsWith("]]]"));
+    }
+
+    public void test_register_custom() throws IOException {
+        encoder.register(BigDecimal.class, (value, context) -> context.writeRaw(value.toPlainString()));
+        encoder.register(CharSequence.class, (value, context) -> context.writeString("cs:" + value));
+        assertEquals("[1.50,\"cs:x\",\"s\"]", encode(Arrays.asList(new BigDecimal("1.50"), new StringBuilder("x"), "s")));
+    }
+
+    public void test_context_reuse() throws IOException {
+        final StringBuilder buf = new StringBuilder();
+        final JsonEncoder.Context context = encoder.createContext(buf);
+        context.writeValue(Arrays.asList(1, 2));
+        buf.append(',');
+        context.writeValue(Map.of("k", "v"));
+        assertEquals("[1,2],{\"k\":\"v\"}", buf.toString());
+    }
+
+    private String encode(final Object value) throws IOException {
+        final StringBuilder buf = new StringBuilder();
+        encoder.encode(value, buf);
+        return buf.toString();
+    }
+
+    private void assertWriteString(final String text) throws IOException {
+        final StringBuilder buf = new StringBuilder();
+        JsonEncoder.writeString(text, buf);
+        assertEquals("\"" + StringEscapeUtils.escapeJson(text) + "\"", buf.toString());
+    }
+}
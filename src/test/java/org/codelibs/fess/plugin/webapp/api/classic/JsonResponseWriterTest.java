@@ -0,0 +1,111 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.classic;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.codelibs.fess.webapp.classic_api.UnitWebappTestCase;
+
+public class JsonResponseWriterTest extends UnitWebappTestCase {
+
+    @Override
+    protected boolean isSuppressTestCaseTransaction() {
+        return true;
+    }
+
+    public void test_append_ascii() throws IOException {
+        assertEncoded("{\"response\":{\"status\":0}}");
+    }
+
+    public void test_append_multibyte() throws IOException {
+        assertEncoded("テスト文字列 éß 中文");
+    }
+
+    public void test_append_surrogatePair() throws IOException {
+        assertEncoded("emoji:😀!");
+    }
+
+    public void test_append_unpairedSurrogate() throws IOException {
+        assertEncoded("a\ud83db");
+        assertEncoded("a\ude00b");
+        assertEncoded("end\ud83d");
+    }
+
+    public void test_append_surrogatePairAcrossCalls() throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JsonResponseWriter writer = new JsonResponseWriter(out)) {
+            writer.append('\ud83d');
+            writer.append("\ude00");
+        }
+        assertEquals("😀", out.toString(StandardCharsets.UTF_8));
+    }
+
+    public void test_append_numbers() throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JsonResponseWriter writer = new JsonResponseWriter(out)) {
+            writer.append(0).append(',').append(-42).append(',').append(Integer.MAX_VALUE).append(',');
+            writer.append(Long.MIN_VALUE).append(',').append(Long.MAX_VALUE).append(',').append(true).append(',').append(false);
+        }
+        assertEquals("0,-42," + Integer.MAX_VALUE + "," + Long.MIN_VALUE + "," + Long.MAX_VALUE + ",true,false",
+                out.toString(StandardCharsets.UTF_8));
+    }
+
+    public void test_append_null() throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JsonResponseWriter writer = new JsonResponseWriter(out)) {
+            writer.append((CharSequence) null);
+        }
+        assertEquals("null", out.toString(StandardCharsets.UTF_8));
+    }
+
+    public void test_append_smallBuffer() throws IOException {
+        final char[] chars = new char[10000];
+        Arrays.fill(chars, 'あ');
+        final String text = "abc" + new String(chars) + "😀xyz";
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JsonResponseWriter writer = new JsonResponseWriter(out, 5)) {
+            writer.append(text);
+        }
+        assertTrue(Arrays.equals(text.getBytes(StandardCharsets.UTF_8), out.toByteArray()));
+    }
+
+    public void test_write_bytes() throws IOException {
+        final byte[] bytes = new byte[100];
+        Arrays.fill(bytes, (byte) 'x');
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JsonResponseWriter writer = new JsonResponseWriter(out, 16)) {
+            writer.append('[').write(bytes).append(']');
+        }
+        assertEquals("[" + new String(bytes, StandardCharsets.UTF_8) + "]", out.toString(StandardCharsets.UTF_8));
+    }
+
+    private void assertEncoded(final String text) throws IOException {
+        final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        try (Writer writer = new OutputStreamWriter(expected, StandardCharsets.UTF_8)) {
+            writer.write(text);
+        }
+        final ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        try (JsonResponseWriter writer = new JsonResponseWriter(actual)) {
+            writer.append(text);
+        }
+        assertTrue(text, Arrays.equals(expected.toByteArray(), actual.toByteArray()));
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.classic;
+
+import org.codelibs.fess.api.WebApiManagerFactory;
+import org.codelibs.fess.util.ComponentUtil;
+import org.codelibs.fess.webapp.classic_api.UnitWebappTestCase;
+import org.junit.jupiter.api.TestInfo;
+
+public class LatencyHistogramTest extends UnitWebappTestCase {
+
+    @Override
+    protected boolean isSuppressTestCaseTransaction() {
+        return true;
+    }
+
+    @Override
+    public void setUp(final TestInfo testInfo) throws Exception {
+        ComponentUtil.register(new WebApiManagerFactory(), "webApiManagerFactory");
+        super.setUp(testInfo);
+    }
+
+    public void test_indexOf_contiguous() {
+        int previous = -1;
+        for (long value = 0; value < 1_000_000L; value++) {
+            final int index = LatencyHistogram.indexOf(value);
+            assertTrue(index == previous || index == previous + 1);
+            assertTrue(value <= LatencyHistogram.highestValueOf(index));
+            previous = index;
+        }
+    }
+
+    public void test_highestValueOf_relativeError() {
+        for (long value = 64; value < Long.MAX_VALUE / 4; value = value * 3 / 2) {
+            final long highest = LatencyHistogram.highestValueOf(LatencyHistogram.indexOf(value));
+            if (value < (1L << 43)) {
+                assertTrue(highest >= value);
+                assertTrue(highest - value <= value / 32 + 1);
+            }
+        }
+        assertEquals(LatencyHistogram.indexOf(1L << 50), LatencyHistogram.indexOf(Long.MAX_VALUE));
+    }
+
+    public void test_snapshot_percentiles() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1_000_000L);
+        }
+        final LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(1000L, snapshot.getCount());
+        assertEquals(500_500L, snapshot.getMeanMicros());
+        assertEquals(1_000_000L, snapshot.getMaxMicros());
+        assertPercentile(500_000L, snapshot.getPercentileMicros(50.0));
+        assertPercentile(990_000L, snapshot.getPercentileMicros(99.0));
+        assertEquals(1_000_000L, snapshot.getPercentileMicros(100.0));
+    }
+
+    public void test_snapshot_empty() {
+        final LatencyHistogram.Snapshot snapshot = new LatencyHistogram().snapshot();
+        assertEquals(0L, snapshot.getCount());
+        assertEquals(0L, snapshot.getMeanMicros());
+        assertEquals(0L, snapshot.getPercentileMicros(99.0));
+    }
+
+    public void test_reset() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5L);
+        histogram.record(123_456L);
+        assertEquals(2L, histogram.getCount());
+        histogram.reset();
+        assertEquals(0L, histogram.getCount());
+        assertEquals(0L, histogram.snapshot().getMaxMicros());
+    }
+
+    private void assertPercentile(final long expected, final long actual) {
+        assertTrue(expected + " <= " + actual, expected <= actual);
+        assertTrue(expected + " ~ " + actual, actual - expected <= expected / 32 + 1);
+    }
+}
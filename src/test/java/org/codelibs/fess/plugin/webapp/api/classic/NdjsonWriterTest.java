@@ -0,0 +1,106 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.classic;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.codelibs.fess.api.WebApiManagerFactory;
+import org.codelibs.fess.util.ComponentUtil;
+import org.codelibs.fess.webapp.classic_api.UnitWebappTestCase;
+import org.junit.jupiter.api.TestInfo;
+
+public class NdjsonWriterTest extends UnitWebappTestCase {
+
+    @Override
+    protected boolean isSuppressTestCaseTransaction() {
+        return true;
+    }
+
+    @Override
+    public void setUp(final TestInfo testInfo) throws Exception {
+        ComponentUtil.register(new WebApiManagerFactory(), "webApiManagerFactory");
+        super.setUp(testInfo);
+    }
+
+    public void test_write() {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final NdjsonWriter writer = new NdjsonWriter(out, new JsonEncoder(), 16, 60000L);
+        final Map<String, Object> doc = new LinkedHashMap<>();
+        doc.put("title", "\u30c6\u30b9\u30c8");
+        doc.put("", "blank");
+        doc.put("empty", null);
+        doc.put("tags", List.of("a", "b"));
+        assertTrue(writer.write(doc));
+        assertTrue(writer.write(Map.of("n", 1)));
+        assertTrue(writer.finish());
+
+        assertEquals("{\"title\":\"\\u30C6\\u30B9\\u30C8\",\"tags\":[\"a\",\"b\"]}\n{\"n\":1}\n", out.toString(StandardCharsets.UTF_8));
+        assertEquals(2L, writer.getCount());
+        assertFalse(writer.isDisconnected());
+    }
+
+    public void test_writeError() {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final NdjsonWriter writer = new NdjsonWriter(out, new JsonEncoder(), 16, 60000L);
+        assertTrue(writer.write(Map.of("n", 1)));
+        assertTrue(writer.writeError(9, "Scroll \"failed\"."));
+        assertTrue(writer.finish());
+
+        assertEquals("{\"n\":1}\n{\"response\":{\"status\":9,\"message\":\"Scroll \\\"failed\\\".\"}}\n",
+                out.toString(StandardCharsets.UTF_8));
+        assertEquals(1L, writer.getCount());
+    }
+
+    public void test_write_flushInterval() {
+        final int[] flushes = { 0 };
+        final OutputStream out = new ByteArrayOutputStream() {
+            @Override
+            public void flush() {
+                flushes[0]++;
+            }
+        };
+        final NdjsonWriter writer = new NdjsonWriter(out, new JsonEncoder(), 1024, 0L);
+        writer.write(Map.of("n", 1));
+        writer.write(Map.of("n", 2));
+        assertEquals(2, flushes[0]);
+    }
+
+    public void test_write_disconnected() {
+        final OutputStream out = new OutputStream() {
+            @Override
+            public void write(final int b) throws IOException {
+                throw new IOException("Broken pipe");
+            }
+
+            @Override
+            public void write(final byte[] b, final int off, final int len) throws IOException {
+                throw new IOException("Broken pipe");
+            }
+        };
+        final NdjsonWriter writer = new NdjsonWriter(out, new JsonEncoder(), 16, 60000L);
+        assertFalse(writer.write(Map.of("content", "a value longer than the chunk size")));
+        assertTrue(writer.isDisconnected());
+        assertFalse(writer.write(Map.of("n", 1)));
+        assertFalse(writer.finish());
+        assertEquals(0L, writer.getCount());
+    }
+}
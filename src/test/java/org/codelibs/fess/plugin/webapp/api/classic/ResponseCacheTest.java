@@ -0,0 +1,125 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.classic;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.codelibs.fess.api.WebApiManagerFactory;
+import org.codelibs.fess.mylasta.direction.FessConfig;
+import org.codelibs.fess.util.ComponentUtil;
+import org.codelibs.fess.webapp.classic_api.UnitWebappTestCase;
+import org.junit.jupiter.api.TestInfo;
+
+public class ResponseCacheTest extends UnitWebappTestCase {
+
+    private final Map<String, String> systemProperties = new HashMap<>();
+
+    @Override
+    protected boolean isSuppressTestCaseTransaction() {
+        return true;
+    }
+
+    @Override
+    public void setUp(final TestInfo testInfo) throws Exception {
+        ComponentUtil.register(new WebApiManagerFactory(), "webApiManagerFactory");
+        super.setUp(testInfo);
+        ComponentUtil.setFessConfig(new FessConfig.SimpleImpl() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public String getSystemProperty(final String key) {
+                return systemProperties.get(key);
+            }
+
+            @Override
+            public String getSystemProperty(final String key, final String defaultValue) {
+                return systemProperties.getOrDefault(key, defaultValue);
+            }
+        });
+    }
+
+    public void test_isEnabled() {
+        final ResponseCache cache = new ResponseCache("search");
+        assertEquals("search", cache.getName());
+        assertFalse(cache.isEnabled());
+        systemProperties.put("api.classic.cache.search.enabled", "true");
+        assertTrue(cache.isEnabled());
+        assertFalse(new ResponseCache("suggest").isEnabled());
+    }
+
+    public void test_getAndPut() throws IOException {
+        final ResponseCache cache = new ResponseCache("search");
+        assertEquals(0L, cache.size());
+        assertNull(cache.get("a"));
+        cache.put("a", new ResponseCache.Entry(new byte[] { 1, 2, 3 }));
+        assertEquals(3, cache.get("a").getBody().length);
+        assertEquals(1L, cache.size());
+        assertEquals(1L, cache.getStats().hitCount());
+        assertEquals(1L, cache.getStats().missCount());
+
+        final StringBuilder buf = new StringBuilder();
+        cache.writeJson(buf);
+        assertEquals("{\"entries\":1,\"hits\":1,\"derived_hits\":0,\"misses\":1,\"evictions\":0}", buf.toString());
+
+        cache.invalidate();
+        assertNull(cache.get("a"));
+        assertEquals(0L, cache.size());
+    }
+
+    public void test_maxBytes() {
+        systemProperties.put("api.classic.cache.search.max_bytes", "1000");
+        final ResponseCache cache = new ResponseCache("search");
+        for (int i = 0; i < 100; i++) {
+            cache.put("key" + i, new ResponseCache.Entry(new byte[40]));
+        }
+        assertTrue(cache.size() < 25);
+        assertTrue(cache.getStats().evictionCount() > 75);
+        assertNotNull(cache.get("key99"));
+    }
+
+    public void test_weigh() {
+        final ResponseCache cache = new ResponseCache("search");
+        assertEquals(42, cache.weigh("a", new ResponseCache.Entry(new byte[40])));
+        assertEquals(62, cache.weigh("a", new ResponseCache.Entry(new byte[40], "q1", new String[] { "doc1", "doc2" })));
+
+        cache.put("a", new ResponseCache.Entry(new byte[40], "q1", new String[] { "doc1", "doc2" }));
+        final ResponseCache.Entry entry = cache.get("a");
+        assertEquals("q1", entry.getQueryId());
+        assertEquals(2, entry.getDocIds().length);
+    }
+
+    public void test_reset() {
+        final ResponseCache cache = new ResponseCache("search");
+        cache.put("a", new ResponseCache.Entry(new byte[40]));
+        systemProperties.put("api.classic.cache.search.max_bytes", "10");
+        cache.put("b", new ResponseCache.Entry(new byte[40]));
+        assertNotNull(cache.get("b"));
+
+        cache.reset();
+        assertEquals(0L, cache.size());
+        cache.put("c", new ResponseCache.Entry(new byte[40]));
+        assertNull(cache.get("c"));
+    }
+
+    public void test_ttl() throws Exception {
+        systemProperties.put("api.classic.cache.search.ttl", "0");
+        final ResponseCache cache = new ResponseCache("search");
+        cache.put("a", new ResponseCache.Entry(new byte[1]));
+        assertNull(cache.get("a"));
+    }
+}
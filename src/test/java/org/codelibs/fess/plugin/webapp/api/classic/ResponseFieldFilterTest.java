@@ -0,0 +1,75 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.classic;
+
+import java.nio.charset.StandardCharsets;
+
+import org.codelibs.fess.api.WebApiManagerFactory;
+import org.codelibs.fess.query.QueryFieldConfig;
+import org.codelibs.fess.util.ComponentUtil;
+import org.codelibs.fess.webapp.classic_api.UnitWebappTestCase;
+import org.junit.jupiter.api.TestInfo;
+
+public class ResponseFieldFilterTest extends UnitWebappTestCase {
+
+    @Override
+    protected boolean isSuppressTestCaseTransaction() {
+        return true;
+    }
+
+    @Override
+    public void setUp(final TestInfo testInfo) throws Exception {
+        ComponentUtil.register(new WebApiManagerFactory(), "webApiManagerFactory");
+        super.setUp(testInfo);
+        registerQueryFieldConfig("title", "url", "a\"b");
+    }
+
+    public void test_getEncodedKey() {
+        final ResponseFieldFilter filter = new ResponseFieldFilter();
+        assertEquals("\"title\":", new String(filter.getEncodedKey("title"), StandardCharsets.UTF_8));
+        assertEquals("\"a\\\"b\":", new String(filter.getEncodedKey("a\"b"), StandardCharsets.UTF_8));
+        assertSame(filter.getEncodedKey("title"), filter.getEncodedKey("title"));
+        assertNull(filter.getEncodedKey("content"));
+        assertNull(filter.getEncodedKey(""));
+        assertNull(filter.getEncodedKey(null));
+        assertTrue(filter.isResponseField("url"));
+        assertFalse(filter.isResponseField("content"));
+        assertEquals(5, filter.size());
+
+        registerQueryFieldConfig("content");
+        assertNull(filter.getEncodedKey("title"));
+        assertEquals("\"content\":", new String(filter.getEncodedKey("content"), StandardCharsets.UTF_8));
+        assertEquals(2, filter.size());
+
+        filter.reset();
+        assertEquals(0, filter.size());
+    }
+
+    public void test_maxFields() {
+        final ResponseFieldFilter filter = new ResponseFieldFilter(2);
+        assertNotNull(filter.getEncodedKey("title"));
+        assertNull(filter.getEncodedKey("content"));
+        assertNotNull(filter.getEncodedKey("url"));
+        assertNotNull(filter.getEncodedKey("url"));
+        assertEquals(2, filter.size());
+    }
+
+    private void registerQueryFieldConfig(final String... apiResponseFields) {
+        final QueryFieldConfig queryFieldConfig = new QueryFieldConfig();
+        queryFieldConfig.setApiResponseFields(apiResponseFields);
+        ComponentUtil.register(queryFieldConfig, "queryFieldConfig");
+    }
+}
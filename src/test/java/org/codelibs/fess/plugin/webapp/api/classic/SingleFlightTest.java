@@ -0,0 +1,110 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.plugin.webapp.api.classic;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.codelibs.fess.api.WebApiManagerFactory;
+import org.codelibs.fess.util.ComponentUtil;
+import org.codelibs.fess.webapp.classic_api.UnitWebappTestCase;
+import org.junit.jupiter.api.TestInfo;
+
+public class SingleFlightTest extends UnitWebappTestCase {
+
+    private static final int THREADS = 8;
+
+    @Override
+    protected boolean isSuppressTestCaseTransaction() {
+        return true;
+    }
+
+    @Override
+    public void setUp(final TestInfo testInfo) throws Exception {
+        ComponentUtil.register(new WebApiManagerFactory(), "webApiManagerFactory");
+        super.setUp(testInfo);
+    }
+
+    public void test_execute_shared() throws Exception {
+        final SingleFlight<String, String> flight = new SingleFlight<>();
+        final AtomicInteger calls = new AtomicInteger();
+        final CountDownLatch joined = new CountDownLatch(THREADS - 1);
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            final List<Future<String>> futures = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                futures.add(executor.submit(() -> flight.execute("key", () -> {
+                    calls.incrementAndGet();
+                    assertTrue(joined.await(10, TimeUnit.SECONDS));
+                    return "value";
+                }, joined::countDown)));
+            }
+            for (final Future<String> future : futures) {
+                assertEquals("value", future.get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, calls.get());
+        assertEquals(0, flight.getInFlightCount());
+    }
+
+    public void test_execute_exception() throws Exception {
+        final SingleFlight<String, String> flight = new SingleFlight<>();
+        final CountDownLatch joined = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final Future<String> leader = executor.submit(() -> flight.execute("key", () -> {
+                assertTrue(joined.await(10, TimeUnit.SECONDS));
+                throw new IllegalStateException("failed");
+            }, null));
+            final Future<String> follower = executor.submit(() -> {
+                while (flight.getInFlightCount() == 0) {
+                    Thread.sleep(1L);
+                }
+                return flight.execute("key", () -> "unexpected", joined::countDown);
+            });
+            for (final Future<String> future : List.of(leader, follower)) {
+                try {
+                    future.get(10, TimeUnit.SECONDS);
+                    fail("IllegalStateException expected");
+                } catch (final ExecutionException e) {
+                    assertTrue(e.getCause() instanceof IllegalStateException);
+                    assertEquals("failed", e.getCause().getMessage());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(0, flight.getInFlightCount());
+    }
+
+    public void test_execute_notRetained() throws Exception {
+        final SingleFlight<String, Integer> flight = new SingleFlight<>();
+        final AtomicInteger calls = new AtomicInteger();
+        assertEquals(Integer.valueOf(1), flight.execute("key", calls::incrementAndGet, null));
+        assertEquals(Integer.valueOf(2), flight.execute("key", calls::incrementAndGet, null));
+        assertEquals(Integer.valueOf(3), flight.execute("other", calls::incrementAndGet, null));
+        assertEquals(0, flight.getInFlightCount());
+    }
+}
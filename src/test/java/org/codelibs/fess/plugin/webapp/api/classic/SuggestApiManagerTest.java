@@ -17,9 +17,12 @@ package org.codelibs.fess.plugin.webapp.api.classic;
 
 import org.junit.jupiter.api.TestInfo;
 
+import java.io.IOException;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import jakarta.servlet.http.HttpServletRequest;
 
@@ -27,6 +30,8 @@ import org.codelibs.fess.api.WebApiManagerFactory;
 import org.codelibs.fess.entity.HighlightInfo;
 import org.codelibs.fess.entity.SearchRequestParams.SearchRequestType;
 import org.codelibs.fess.mylasta.direction.FessConfig;
+import org.codelibs.fess.suggest.entity.SuggestItem;
+import org.codelibs.fess.suggest.request.suggest.SuggestResponse;
 import org.codelibs.fess.util.ComponentUtil;
 import org.codelibs.fess.webapp.classic_api.UnitWebappTestCase;
 import org.dbflute.utflute.mocklet.MockletHttpServletRequestImpl;
@@ -36,6 +41,8 @@ public class SuggestApiManagerTest extends UnitWebappTestCase {
 
     private WebApiManagerFactory webApiManagerFactory;
 
+    private final Map<String, String> systemProperties = new HashMap<>();
+
     @Override
     protected String prepareConfigFile() {
         return "test_app.xml";
@@ -50,6 +57,16 @@ public class SuggestApiManagerTest extends UnitWebappTestCase {
     public void setUp(TestInfo testInfo) throws Exception {
         ComponentUtil.setFessConfig(new FessConfig.SimpleImpl() {
             private static final long serialVersionUID = 1L;
+
+            @Override
+            public String getSystemProperty(final String key) {
+                return systemProperties.get(key);
+            }
+
+            @Override
+            public String getSystemProperty(final String key, final String defaultValue) {
+                return systemProperties.getOrDefault(key, defaultValue);
+            }
         });
         webApiManagerFactory = new WebApiManagerFactory();
         ComponentUtil.register(webApiManagerFactory, "webApiManagerFactory");
@@ -67,6 +84,90 @@ public class SuggestApiManagerTest extends UnitWebappTestCase {
         assertEquals("/suggest", suggestApiManager.getPathPrefix());
     }
 
+    public void test_createSuggestKey() throws Exception {
+        SuggestApiManager suggestApiManager = new SuggestApiManager();
+        MockletServletContextImpl servletContext = new MockletServletContextImpl("/fess");
+        MockletHttpServletRequestImpl request1 = new MockletHttpServletRequestImpl(servletContext, "/suggest");
+        request1.setParameter("query", "fes");
+        request1.setParameter("fields", "title,content");
+        request1.setParameter("tags", "tag1,tag2");
+        MockletHttpServletRequestImpl request2 = new MockletHttpServletRequestImpl(servletContext, "/suggest");
+        request2.setParameter("query", "fes");
+        request2.setParameter("fields", "content,title");
+        request2.setParameter("tags", "tag2,tag1");
+        request2.setParameter("callback", "cb");
+
+        SuggestApiManager.RequestParameter params1 = SuggestApiManager.RequestParameter.parse(request1);
+        SuggestApiManager.RequestParameter params2 = SuggestApiManager.RequestParameter.parse(request2);
+        String[] langs = { "ja", "en" };
+        List<String> kinds = List.of("user", "query");
+        String context = suggestApiManager.createSuggestContextKey(params1, langs, List.of("Rguest", "Gusers"), "", kinds);
+        String key = suggestApiManager.createSuggestKey(context, params1.getQuery());
+        assertEquals("[[\"content\",\"title\",],[\"en\",\"ja\",],[\"Gusers\",\"Rguest\",],[\"tag1\",\"tag2\",],[\"query\",\"user\",],\"\",10,\"fes\"]",
+                key);
+        assertEquals(context, suggestApiManager.createSuggestContextKey(params2, new String[] { "en", "ja" }, Set.of("Rguest", "Gusers"),
+                null, List.of("query", "user")));
+        assertFalse(context.equals(suggestApiManager.createSuggestContextKey(params1, langs, List.of("Rguest"), "", kinds)));
+        assertFalse(
+                context.equals(suggestApiManager.createSuggestContextKey(params1, langs, List.of("Rguest", "Gusers"), "site1", kinds)));
+        assertFalse(context.equals(suggestApiManager.createSuggestContextKey(params1, langs, List.of("Rguest", "Gusers"), "",
+                List.of("user"))));
+        assertFalse(key.equals(suggestApiManager.createSuggestKey(context, "fess")));
+    }
+
+    public void test_filterSuggestResponse() {
+        SuggestResponse response = new SuggestResponse("index", 5L, List.of("fe"), 3L,
+                List.of(createItem("fess", "fess"), createItem("feed", "feed"), createItem("fes", "fes")));
+        SuggestResponse filtered = SuggestApiManager.filterSuggestResponse(response, 0, List.of("fes"));
+        assertEquals(2L, filtered.getTotal());
+        assertEquals(0L, filtered.getTookMs());
+        assertEquals("fess", filtered.getItems().get(0).getText());
+        assertEquals("fes", filtered.getItems().get(1).getText());
+    }
+
+    public void test_getCachedSuggestResponse() throws IOException {
+        systemProperties.put("api.classic.cache.suggest.enabled", "true");
+        SuggestApiManager suggestApiManager = new SuggestApiManager() {
+            @Override
+            protected List<String> toReadings(final String word, final String[] langs) {
+                return List.of(word);
+            }
+        };
+        ApiCache<SuggestResponse> cache = suggestApiManager.getSuggestResponseCache();
+        String[] langs = { "en" };
+        assertNull(suggestApiManager.getCachedSuggestResponse("[", "fes", 10, langs));
+
+        cache.put(suggestApiManager.createSuggestKey("[", "fe"),
+                new SuggestResponse("index", 5L, List.of("fe"), 2L, List.of(createItem("fess", "fess"), createItem("feed", "feed"))));
+        SuggestResponse derived = suggestApiManager.getCachedSuggestResponse("[", "fes", 10, langs);
+        assertEquals(1L, derived.getTotal());
+        assertEquals("fess", derived.getItems().get(0).getText());
+        assertSame(derived, suggestApiManager.getCachedSuggestResponse("[", "fes", 10, langs));
+        assertNotNull(suggestApiManager.getCachedSuggestResponse("[", "fessx", 10, langs));
+
+        // incomplete result, trailing whitespace and a different context are not reused
+        assertNull(suggestApiManager.getCachedSuggestResponse("[", "fee", 1, langs));
+        assertNull(suggestApiManager.getCachedSuggestResponse("[", "fe ", 10, langs));
+        assertNull(suggestApiManager.getCachedSuggestResponse("[[", "fes", 10, langs));
+    }
+
+    public void test_getCachedSuggestResponse_readings() throws IOException {
+        SuggestApiManager suggestApiManager = new SuggestApiManager() {
+            @Override
+            protected List<String> toReadings(final String word, final String[] langs) {
+                return "ab".equals(word) ? List.of("ab", "x") : List.of(word);
+            }
+        };
+        suggestApiManager.getSuggestResponseCache()
+                .put(suggestApiManager.createSuggestKey("[", "a"), new SuggestResponse("index", 5L, List.of("a"), 0L, List.of()));
+        assertNull(suggestApiManager.getCachedSuggestResponse("[", "ab", 10, new String[0]));
+    }
+
+    private static SuggestItem createItem(final String text, final String reading) {
+        return new SuggestItem(new String[] { text }, new String[][] { { reading } }, new String[] { "content" }, 1L, 0L, 1.0f,
+                new String[0], new String[0], new String[0], SuggestItem.Kind.DOCUMENT);
+    }
+
     public void test_RequestParameter_parse_basicParams() {
         MockletServletContextImpl servletContext = new MockletServletContextImpl("/fess");
         MockletHttpServletRequestImpl request = new MockletHttpServletRequestImpl(servletContext, "/suggest");